@@ -36,6 +36,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import com.example.android.de_app_slicing.propeditor.properties.Entities;
+import com.example.android.de_app_slicing.propeditor.properties.PropertyLayers;
 import com.example.android.de_app_slicing.propeditor.provider.CachedFileProvider;
 import com.example.android.de_app_slicing.propeditor.tasks.LogThread;
 import com.example.android.de_app_slicing.propeditor.util.DevicesUtils;
@@ -68,6 +69,7 @@ public class PropEditorApplication extends Application {
 	private final String TAG = getClass().getName();
 	private ProgressDialog mProgressDialog;
 	private Entities mProperties;
+	private PropertyLayers mPropertyLayers;
 	private String mWaitString;
 	private Locale mDefaultLocale;
 	private UnixCommands mUnixShell;
@@ -76,6 +78,13 @@ public class PropEditorApplication extends Application {
 
 	public static final String BUILD_PROP = "build.prop";
 	public static final String BUILD_PROP_PATH = "/system/build.prop";
+	/**
+	 * The properties files read at boot, from the lowest precedence to the
+	 * highest.
+	 */
+	public static final String[] PROP_LAYERS_PATHS = { "/default.prop",
+			"/system/etc/prop.default", BUILD_PROP_PATH, "/vendor/build.prop",
+			"/odm/build.prop", "/product/build.prop" };
 
 	private static int mSdkInt = 8;
 	private static int mVersionCode = -1;
@@ -335,6 +344,20 @@ public class PropEditorApplication extends Application {
 		return mProperties;
 	}
 
+	/**
+	 * Retrieve the properties of all the boot properties files. The layer of
+	 * the build.prop file uses the available properties, edited by the list.
+	 * 
+	 * @return The properties layers, loaded by LoadPropertyLayersTask.
+	 */
+	public PropertyLayers getPropertyLayers() {
+		if (mPropertyLayers == null) {
+			mPropertyLayers = new PropertyLayers(PROP_LAYERS_PATHS);
+			mPropertyLayers.setEntities(BUILD_PROP_PATH, getEntities());
+		}
+		return mPropertyLayers;
+	}
+
 	/**
 	 * Check for pro version.
 	 * 
@@ -43,8 +43,10 @@ import com.example.android.de_app_slicing.propeditor.models.Constants;
 import com.example.android.de_app_slicing.propeditor.properties.Entity;
 import com.example.android.de_app_slicing.propeditor.tasks.DefaultAsyncTaskResult;
 import com.example.android.de_app_slicing.propeditor.tasks.LoadPropertiesTask;
+import com.example.android.de_app_slicing.propeditor.tasks.LoadPropertyLayersTask;
 import com.example.android.de_app_slicing.propeditor.tasks.RestorePropertiesTask;
 import com.example.android.de_app_slicing.propeditor.tasks.SavePropertiesTask;
+import com.example.android.de_app_slicing.propeditor.tasks.SavePropertyLayersTask;
 import com.example.android.de_app_slicing.propeditor.util.Utilities;
 
 /**
@@ -140,11 +142,12 @@ public class PropEditorActivity extends BaseActivity implements
     }
 
     /**
-     * Load properties list, invoke the thread.
+     * Load properties list, invoke the thread. All the boot properties files
+     * are loaded at once, the list shows the build.prop layer.
      */
     private void loadPropertiesList() {
-        new LoadPropertiesTask(this, PropEditorApplication.BUILD_PROP_PATH,
-                mApplication.getEntities()).execute();
+        new LoadPropertyLayersTask(this, mApplication.getPropertyLayers())
+                .execute();
     }
 
     @Override
@@ -251,6 +254,19 @@ public class PropEditorActivity extends BaseActivity implements
         propertiesList.setFastScrollEnabled(mApplication.getEntities().size() > 50);
     }
 
+    /**
+     * Redraw the visible list rows after an entity was changed.
+     *
+     * @param entity  The changed entity, as it was before the change.
+     * @param key     The new property key.
+     * @param content The new property content.
+     */
+    public void refreshList(Entity entity, String key, String content) {
+        if (adapter != null) {
+            adapter.update(entity, key, content);
+        }
+    }
+
     /**
      * This method show the popup menu when the user do a long click on a list
      * item
@@ -355,8 +371,7 @@ public class PropEditorActivity extends BaseActivity implements
         if (anEntity instanceof Entity) {
             Entity entity = (Entity) anEntity;
             mApplication.getEntities().remove(entity);
-            reloadAdapter();
-            mApplication.getEntities().setModified(true);
+            adapter.remove(entity);
         }
     }
 
@@ -391,7 +406,7 @@ public class PropEditorActivity extends BaseActivity implements
      * Invoked when is chose the Reload menu item.
      */
     private void onMenuItemReload() {
-        if (mApplication.getEntities().isModified()) {
+        if (!mApplication.getPropertyLayers().getModifiedLayers().isEmpty()) {
             showConfirmationDialog(R.string.reload,
                     mApplication.getString(R.string.reload_confirmation),
                     CONFIRM_ID_RELOAD, null);
@@ -425,10 +440,12 @@ public class PropEditorActivity extends BaseActivity implements
     }
 
     /**
-     * Invoked when is chose the Save menu item.
+     * Invoked when is chose the Save menu item. Only the changed properties
+     * files are saved.
      */
     private void onMenuItemSave() {
-        new SavePropertiesTask(this, PropEditorApplication.BUILD_PROP_PATH, mApplication.getEntities()).execute();
+        new SavePropertyLayersTask(this, mApplication.getPropertyLayers())
+                .execute();
     }
 
     /**
@@ -22,7 +22,6 @@ import com.example.android.de_app_slicing.propeditor.R;
 import com.example.android.de_app_slicing.propeditor.activities.PropEditorActivity;
 import com.example.android.de_app_slicing.propeditor.properties.Entities;
 import com.example.android.de_app_slicing.propeditor.properties.Entity;
-import com.example.android.de_app_slicing.propeditor.util.Utilities;
 import android.content.Context;
 import android.view.View;
 import android.widget.EditText;
@@ -90,15 +89,10 @@ public class EditorDialog extends BaseDialog {
 			if (entity == null) {
 				entity = new Entity(key, content);
 				properties.add(entity);
-				properties.setModified(true);
 				((PropEditorActivity) parentActivity).reloadAdapter();
-			} else {
-				entity.setKey(key);
-				entity.setContent(content);
-				if (Utilities.stringEquals(key, entity.getKey())
-						|| Utilities.stringEquals(content, entity.getContent())) {
-					properties.setModified(true);
-				}
+			} else if (properties.update(entity, key, content)) {
+				((PropEditorActivity) parentActivity).refreshList(entity, key,
+						content);
 			}
 		}
 	}
@@ -94,6 +94,39 @@ public class PropertiesListAdapter extends BaseAdapter {
 		this.properties = properties;
 	}
 
+	/**
+	 * Remove an entity from the displayed properties and refresh the list,
+	 * without rebuilding the adapter.
+	 * 
+	 * @param entity
+	 *            The removed entity.
+	 */
+	public void remove(Entity entity) {
+		if (properties != null && properties != originalProperties) {
+			properties.remove(entity);
+		}
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * Change an entity of the displayed properties and refresh the list,
+	 * without rebuilding the adapter. The displayed properties are a
+	 * snapshot, which does not see the changes of the original ones.
+	 * 
+	 * @param entity
+	 *            The changed entity, as it was before the change.
+	 * @param key
+	 *            The new property key.
+	 * @param content
+	 *            The new property content.
+	 */
+	public void update(Entity entity, String key, String content) {
+		if (properties != null && properties != originalProperties) {
+			properties.update(entity, key, content);
+		}
+		notifyDataSetChanged();
+	}
+
 	/**
 	 * Get the properties of this adapter
 	 * 
@@ -18,6 +18,9 @@
  */
 package com.example.android.de_app_slicing.propeditor.list;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.example.android.de_app_slicing.propeditor.properties.Entities;
 import com.example.android.de_app_slicing.propeditor.properties.Entity;
 import android.widget.Filter;
@@ -51,7 +54,7 @@ public class PropertiesListFilter extends Filter {
 			if (filter.length() > 0) {
 				filter = filter.toLowerCase(adapter.getApplication()
 						.getDefaultLocale());
-				Entities newProperties = new Entities();
+				List<Entity> matches = new ArrayList<Entity>();
 				String key, value;
 				for (Entity entry : properties.getProperties()) {
 					key = entry.getKey();
@@ -69,9 +72,10 @@ public class PropertiesListFilter extends Filter {
 						value = "";
 					}
 					if (key.indexOf(filter) > -1 || value.indexOf(filter) > -1) {
-						newProperties.add(entry);
+						matches.add(entry);
 					}
 				}
+				Entities newProperties = new Entities(matches);
 				results.count = newProperties.size();
 				if (results.count > 0) {
 					results.values = newProperties;
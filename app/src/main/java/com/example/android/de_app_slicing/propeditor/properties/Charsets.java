@@ -0,0 +1,185 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.nio.charset.Charset;
+
+/**
+ * The charsets of the properties files and their detection.
+ * <p>
+ * A file is ISO 8859-1, as java.util.Properties reads it, unless it starts
+ * with a byte order mark or all its bytes above 0x7F form valid UTF-8
+ * sequences. A Latin-1 text is almost never valid UTF-8, since an accented
+ * letter is seldom followed by the right number of bytes from 0x80 to 0xBF.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+final class Charsets {
+	static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+	static final Charset UTF_16 = Charset.forName("UTF-16");
+
+	private Charsets() {
+	}
+
+	/**
+	 * Check if the bytes in the charset can be parsed as bytes: every ASCII
+	 * character is one byte and no byte of a longer sequence is ASCII. The
+	 * line ends, separators and backslashes are then found without decoding.
+	 */
+	static boolean isByteParsable(Charset charset) {
+		return ISO_8859_1.equals(charset) || UTF_8.equals(charset);
+	}
+
+	/**
+	 * Returns the length of the UTF-8 byte order mark at the start of the
+	 * bytes, or 0 if there is none.
+	 */
+	static int bomLength(byte[] source) {
+		return source.length >= 3 && (source[0] & 0xff) == 0xef
+				&& (source[1] & 0xff) == 0xbb && (source[2] & 0xff) == 0xbf ? 3
+				: 0;
+	}
+
+	/**
+	 * Detect the charset of the file bytes.
+	 * 
+	 * @param source
+	 *            The file bytes.
+	 * @return UTF-16 or UTF-8 if the bytes start with their byte order mark,
+	 *         UTF-8 if the bytes above 0x7F are valid UTF-8, ISO 8859-1
+	 *         otherwise.
+	 */
+	static Charset detect(byte[] source) {
+		if (source.length >= 2) {
+			int b0 = source[0] & 0xff;
+			int b1 = source[1] & 0xff;
+			if ((b0 == 0xfe && b1 == 0xff) || (b0 == 0xff && b1 == 0xfe)) {
+				return UTF_16;
+			}
+		}
+		if (bomLength(source) > 0) {
+			return UTF_8;
+		}
+		int i = 0;
+		int limit = source.length;
+		// the ASCII files are the common case
+		while (i < limit && source[i] >= 0) {
+			i++;
+		}
+		if (i == limit) {
+			return ISO_8859_1;
+		}
+		return isUtf8(source, i, limit) ? UTF_8 : ISO_8859_1;
+	}
+
+	/**
+	 * Build a string from the bytes in the specified charset. The UTF-8 bytes
+	 * are decoded like the PropertiesParser does: a malformed sequence gives
+	 * one ISO 8859-1 character per byte.
+	 */
+	static String newString(byte[] source, int off, int len, Charset charset) {
+		if (!UTF_8.equals(charset)) {
+			return new String(source, off, len, charset);
+		}
+		char[] chars = new char[len];
+		int out = 0;
+		int end = off + len;
+		int b, code;
+		while (off < end) {
+			b = source[off];
+			if (b >= 0) {
+				chars[out++] = (char) b;
+				off++;
+			} else if ((code = decode(source, off, end)) < 0) {
+				chars[out++] = (char) (b & 0xff);
+				off++;
+			} else {
+				out += Character.toChars(code, chars, out);
+				off += sequenceLength(b);
+			}
+		}
+		return new String(chars, 0, out);
+	}
+
+	/**
+	 * Check if the bytes are well formed UTF-8.
+	 */
+	private static boolean isUtf8(byte[] source, int pos, int limit) {
+		while (pos < limit) {
+			if (source[pos] >= 0) {
+				pos++;
+			} else if (decode(source, pos, limit) >= 0) {
+				pos += sequenceLength(source[pos]);
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the length of the UTF-8 sequence starting with the specified
+	 * byte, which is above 0x7F, or 0 if it can not start a sequence.
+	 */
+	static int sequenceLength(int b) {
+		b &= 0xff;
+		if (b < 0xc2) {
+			// a continuation byte or an overlong two bytes form
+			return 0;
+		} else if (b < 0xe0) {
+			return 2;
+		} else if (b < 0xf0) {
+			return 3;
+		} else if (b < 0xf5) {
+			return 4;
+		}
+		return 0;
+	}
+
+	/**
+	 * Decode the UTF-8 sequence starting at the specified position, whose
+	 * first byte is above 0x7F.
+	 * 
+	 * @return The code point or -1 if the sequence is not well formed: a
+	 *         truncated sequence, an overlong form, a surrogate or a code
+	 *         point above U+10FFFF.
+	 */
+	static int decode(byte[] source, int pos, int limit) {
+		int len = sequenceLength(source[pos]);
+		if (len == 0 || pos + len > limit) {
+			return -1;
+		}
+		int code = source[pos] & (0xff >> (len + 1));
+		int b;
+		for (int i = 1; i < len; i++) {
+			b = source[pos + i];
+			if ((b & 0xc0) != 0x80) {
+				return -1;
+			}
+			code = (code << 6) | (b & 0x3f);
+		}
+		if ((len == 3 && (code < 0x800 || (code >= 0xd800 && code <= 0xdfff)))
+				|| (len == 4 && (code < 0x10000 || code > 0x10ffff))) {
+			return -1;
+		}
+		return code;
+	}
+}
@@ -18,16 +18,42 @@
  */
 package com.example.android.de_app_slicing.propeditor.properties;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Reader;
+import java.io.OutputStream;
+import java.io.StringReader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This is a replacement for the java.util.Properties class.
+ * <p>
+ * It is safe to use from more threads: the changes take an exclusive lock,
+ * the queries a shared one. The store methods work on a snapshot, so they
+ * never block while an edit is made, they just do not see the edits made
+ * after they started. The list returned by getProperties() is a read only
+ * view of the current entities which never throws a
+ * ConcurrentModificationException: its iterators see the edits made while
+ * they are used.
  * 
  * @author Kaumil Trivedi
  * 
@@ -41,30 +67,274 @@ public class Entities implements Cloneable {
 	List<Entity> entities;
 	private boolean modified;
 	int count;
+	/**
+	 * Positions on the entities list of the PROPERTY entities, in ascending
+	 * order. Only the first count elements are used.
+	 */
+	int[] propertyIndex;
+	/**
+	 * The ordinal of the first PROPERTY entity defined for each key. It is
+	 * built on the first key lookup, so that loading does not need to decode
+	 * the keys.
+	 */
+	KeyIndex keyIndex;
+	/**
+	 * The key trie, built on the first namespace query.
+	 */
+	KeyTrie keyTrie;
+	/**
+	 * The file bytes read by the last load(ByteBuffer), referenced by the raw
+	 * ranges and the lazy entities.
+	 */
+	byte[] source;
+	/**
+	 * The range of the source bytes before the first line which belong to no
+	 * line, like the blanks of a file without any entity. They are written
+	 * back first, so such a file is stored unchanged.
+	 */
+	int orphanOff, orphanLen;
+	/**
+	 * The charset of the loaded file, used by default to store the entities.
+	 */
+	Charset charset = Charsets.ISO_8859_1;
+	/**
+	 * True if the loaded UTF-8 file started with a byte order mark, written
+	 * back when the entities are stored as UTF-8.
+	 */
+	boolean bom;
+	/**
+	 * The line break of the first line of the loaded file, used for the
+	 * lines written by store so they match the original lines, or null to
+	 * use the system line separator.
+	 */
+	String lineSeparator;
+	/**
+	 * The number of Entities using the same list and indexes. A clone shares
+	 * them with the original until one of the two is changed, then the
+	 * changed one makes its own copy.
+	 */
+	static class Share {
+		int owners = 1;
+	}
+
+	Share share;
+	/**
+	 * The owner token of the entity objects which only these Entities use, so
+	 * they can be changed in place. It is renewed by clone(): the entities
+	 * are then shared, and both sides copy an entity before changing it.
+	 */
+	private Object owner = new Object();
+	/**
+	 * The changes made by add, update and remove. The first journalPos
+	 * entries are applied, the rest can be redone.
+	 */
+	List<EntityChange> journal;
+	int journalPos;
+	/**
+	 * The journal position when the entities were last saved.
+	 */
+	int savedPos;
+	/**
+	 * The number of changes recorded, used to tell apart two states with the
+	 * same journal position.
+	 */
+	private int recorded;
+	/**
+	 * Number of entities written by store while holding the read lock.
+	 */
+	private static final int STORE_BLOCK = 256;
+	/**
+	 * Guards all the fields above. It is shared with the clones, which share
+	 * the entity objects.
+	 */
+	ReadWriteLock lock = new ReentrantReadWriteLock();
 
 	/**
 	 * On the constructor are initialized the lists.
 	 */
 	public Entities() {
 		entities = new ArrayList<Entity>();
+		propertyIndex = new int[16];
+		journal = new ArrayList<EntityChange>();
+		share = new Share();
 		count = 0;
 	}
 
+	/**
+	 * Build the entities of the specified list in one step, without
+	 * recording the additions: nothing can be undone and they are not
+	 * modified. The keys are indexed when they are first looked up.
+	 * 
+	 * @param list
+	 *            The entities, in the file order.
+	 */
+	public Entities(List<Entity> list) {
+		this();
+		entities = new ArrayList<Entity>(list);
+		propertyIndex = new int[entities.size() + 16];
+		for (int i = 0; i < entities.size(); i++) {
+			if (Type.PROPERTY == entities.get(i).getType()) {
+				propertyIndex[count++] = i;
+			}
+		}
+	}
+
+	/**
+	 * Make a private copy of the list and indexes if they are shared with a
+	 * clone. It is invoked before every change of them.
+	 */
+	private void ensureOwned() {
+		synchronized (share) {
+			if (share.owners == 1) {
+				return;
+			}
+			share.owners--;
+		}
+		share = new Share();
+		entities = entities instanceof EntityColumns ? ((EntityColumns) entities)
+				.copy() : new ArrayList<Entity>(entities);
+		propertyIndex = Arrays.copyOf(propertyIndex, propertyIndex.length);
+		if (keyIndex != null) {
+			keyIndex = keyIndex.copy();
+		}
+		// rebuilt when needed
+		keyTrie = null;
+	}
+
 	/**
 	 * Removes all elements from both lists, leaving them empty.
 	 */
 	public void clear() {
-		count = 0;
-		entities.clear();
+		lock.writeLock().lock();
+		try {
+			count = 0;
+			synchronized (share) {
+				if (share.owners > 1) {
+					share.owners--;
+					share = new Share();
+					entities = new ArrayList<Entity>();
+					propertyIndex = new int[16];
+				} else if (entities instanceof EntityColumns) {
+					// drop the lines table
+					entities = new ArrayList<Entity>();
+				} else {
+					entities.clear();
+				}
+			}
+			keyIndex = null;
+			keyTrie = null;
+			source = null;
+			orphanLen = 0;
+			lineSeparator = null;
+			journal.clear();
+			journalPos = 0;
+			savedPos = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 
 	/**
 	 * Get the properties list
 	 * 
-	 * @return The properties list
+	 * @return The properties list, read only
 	 */
 	public List<Entity> getProperties() {
-		return entities;
+		return propertiesView;
+	}
+
+	/**
+	 * Read only view of the current entities list. It is not an owner of the
+	 * shared list, so reading it never makes the next change copy the list.
+	 */
+	private class PropertiesView extends AbstractList<Entity> implements
+			RandomAccess {
+		@Override
+		public Entity get(int index) {
+			lock.readLock().lock();
+			try {
+				return entities.get(index);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public int size() {
+			lock.readLock().lock();
+			try {
+				return entities.size();
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public Iterator<Entity> iterator() {
+			return new Iterator<Entity>() {
+				private int cursor;
+				private Entity next;
+
+				@Override
+				public boolean hasNext() {
+					if (next == null) {
+						// fetched here, the list could be shorter by the
+						// time next() is called
+						lock.readLock().lock();
+						try {
+							if (cursor < entities.size()) {
+								next = entities.get(cursor);
+							}
+						} finally {
+							lock.readLock().unlock();
+						}
+					}
+					return next != null;
+				}
+
+				@Override
+				public Entity next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					Entity entity = next;
+					next = null;
+					cursor++;
+					return entity;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+
+	private final List<Entity> propertiesView = new PropertiesView();
+
+	/**
+	 * Returns the current entities list, which will not be changed until it
+	 * is released: it counts as one more owner of the shared list, so a
+	 * change made meanwhile makes a copy. The read lock should be held.
+	 * 
+	 * @return The share of the entities list, to be released.
+	 */
+	private Share freeze() {
+		synchronized (share) {
+			share.owners++;
+		}
+		return share;
+	}
+
+	/**
+	 * Release a list returned by freeze(), so the next change does not need
+	 * to copy it if it was not changed meanwhile.
+	 */
+	private static void release(Share frozen) {
+		synchronized (frozen) {
+			frozen.owners--;
+		}
 	}
 
 	/**
@@ -73,7 +343,12 @@ public class Entities implements Cloneable {
 	 * @return The number of elements in the properties list.
 	 */
 	public int size() {
-		return count;
+		lock.readLock().lock();
+		try {
+			return count;
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/**
@@ -82,7 +357,12 @@ public class Entities implements Cloneable {
 	 * @return true if the properties list has no elements, false otherwise.
 	 */
 	public boolean isEmpty() {
-		return count < 1;
+		lock.readLock().lock();
+		try {
+			return count < 1;
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/**
@@ -93,18 +373,15 @@ public class Entities implements Cloneable {
 	 * @return The entity at the specified location.
 	 */
 	public Entity getProperty(int location) {
-		Entity entity = null;
-		int i = 0, p;
-		for (p = 0; p < entities.size(); p++) {
-			entity = entities.get(p);
-			if (entity.getType() == Type.PROPERTY) {
-				if (i == location) {
-					break;
-				}
-				i++;
+		lock.readLock().lock();
+		try {
+			if (location < 0 || location >= count) {
+				return null;
 			}
+			return entities.get(propertyIndex[location]);
+		} finally {
+			lock.readLock().unlock();
 		}
-		return entity;
 	}
 
 	/**
@@ -114,523 +391,1425 @@ public class Entities implements Cloneable {
 	 *            The entity to add.
 	 */
 	public void add(Entity entity) {
-		if (entity != null) {
-			entities.add(entity);
-			if (Type.PROPERTY == entity.getType()) {
-				count++;
+		lock.writeLock().lock();
+		try {
+			if (entity != null) {
+				append(entity);
+				record(new EntityChange(EntityChange.Kind.ADD, entity,
+						entities.size() - 1, null, null, entity.getKey(), entity
+								.getContent()));
 			}
+		} finally {
+			lock.writeLock().unlock();
 		}
 	}
 
 	/**
-	 * Removes the first occurrence of the specified entity from the both lists.
-	 * 
-	 * @param entity
-	 *            The entity to remove.
+	 * Adds the entity at the end of the both lists without recording a change,
+	 * used while loading.
 	 */
-	public void remove(Entity entity) {
-		if (entity != null) {
-			entities.remove(entity);
-			if (Type.PROPERTY == entity.getType()) {
-				count--;
-				if (count < 0) {
-					count = 0;
-				}
+	void append(Entity entity) {
+		ensureOwned();
+		if (entity.owner == null) {
+			entity.owner = owner;
+		}
+		entities.add(entity);
+		if (Type.PROPERTY == entity.getType()) {
+			if (count == propertyIndex.length) {
+				propertyIndex = Arrays.copyOf(propertyIndex, count * 2);
+			}
+			propertyIndex[count++] = entities.size() - 1;
+			indexKey(count - 1);
+			if (keyTrie != null) {
+				keyTrie.add(entity);
 			}
 		}
 	}
 
 	/**
-	 * Removes the entity at the specified location from the both lists.
+	 * Start a columns entities list for the lines of the specified bytes, in
+	 * the charset of the entities, used while loading after clear().
 	 * 
-	 * @param location
+	 * @param source
+	 *            The loaded bytes.
+	 * @param length
+	 *            The number of bytes to be loaded, used to size the columns.
+	 * @return The new entities list.
 	 */
-	public void remove(int location) {
-		Entity entity = getProperty(location);
-		remove(entity);
+	EntityColumns useColumns(byte[] source, int length) {
+		EntityColumns columns = new EntityColumns(new LineTable(source,
+				charset, length));
+		this.source = source;
+		entities = columns;
+		return columns;
 	}
 
 	/**
-	 * 
+	 * Adds a line without backslashes at the end of the columns list started
+	 * by useColumns(), without building its entity.
 	 */
-	@Override
-	public synchronized Object clone() {
-		Entities ent = new Entities();
-		for (Entity entity : entities) {
-			ent.add(entity);
+	void appendLine(Type type, int rawOff, int rawLen) {
+		EntityColumns columns = (EntityColumns) entities;
+		columns.addLine(columns.table.add(type, rawOff, rawLen));
+		if (Type.PROPERTY == type) {
+			if (count == propertyIndex.length) {
+				propertyIndex = Arrays.copyOf(propertyIndex, count * 2);
+			}
+			propertyIndex[count++] = columns.size() - 1;
 		}
-		return ent;
 	}
 
 	/**
-	 * Loads properties from the specified InputStream.
+	 * Removes the specified entity from the both lists. If the instance is
+	 * not on the list, the first equal entity is removed.
 	 * 
-	 * @param inputStream
-	 *            The specified InputStream.
-	 * @throws IOException
+	 * @param entity
+	 *            The entity to remove.
 	 */
-	public void load(InputStream inputStream) throws IOException {
-		clear();
-		load0(new LineReader(inputStream));
-	}
-
-	private void load0(LineReader lr) throws IOException {
-		char[] convtBuf = new char[1024];
-		int limit;
-		int keyLen;
-		int valueStart;
-		char c;
-		boolean hasSep;
-		boolean precedingBackslash;
-		boolean isCommentLine;
-
-		while ((limit = lr.readLine()) >= 0) {
-			c = 0;
-			keyLen = 0;
-			valueStart = limit;
-			hasSep = false;
-
-			precedingBackslash = false;
-			isCommentLine = false;
-			while (keyLen < limit) {
-				c = lr.lineBuf[keyLen];
-				// need check if escaped.
-				if (c == '#' || c == '!') {
-					isCommentLine = true;
-					valueStart = keyLen + 1;
-				} else if ((c == '=' || c == ':') && !precedingBackslash) {
-					valueStart = keyLen + 1;
-					hasSep = true;
-					break;
-				} else if ((c == ' ' || c == '\t' || c == '\f')
-						&& !precedingBackslash) {
-					valueStart = keyLen + 1;
-					break;
-				}
-				if (c == '\\') {
-					precedingBackslash = !precedingBackslash;
-				} else {
-					precedingBackslash = false;
-				}
-				keyLen++;
-			}
-			while (valueStart < limit) {
-				c = lr.lineBuf[valueStart];
-				if (c != ' ' && c != '\t' && c != '\f') {
-					if (!hasSep && (c == '=' || c == ':')) {
-						hasSep = true;
-					} else {
-						break;
-					}
+	public void remove(Entity entity) {
+		lock.writeLock().lock();
+		try {
+			if (entity != null) {
+				int position = locate(entity);
+				if (position > -1) {
+					recordRemove(position);
 				}
-				valueStart++;
-			}
-			String key = loadConvert(lr.lineBuf, 0, keyLen, convtBuf);
-			String value = loadConvert(lr.lineBuf, valueStart, limit
-					- valueStart, convtBuf);
-			if (isCommentLine) {
-				add(new Entity(Type.COMMENT, key, value));
-			} else {
-				add(new Entity(key, value));
 			}
+		} finally {
+			lock.writeLock().unlock();
 		}
 	}
 
 	/**
-	 * Read in a "logical line" from an InputStream/Reader, skip all comment and
-	 * blank lines and filter out those leading whitespace characters ( , and )
-	 * from the beginning of a "natural line". Method returns the char length of
-	 * the "logical line" and stores the line in "lineBuf".
+	 * Returns the position on the entities list of the specified entity
+	 * instance or, if it is not on the list, of the first equal entity.
+	 * 
+	 * @param entity
+	 *            The entity to look for.
+	 * @return The position or -1 if no equal entity is on the list.
 	 */
-	class LineReader {
-		byte[] inByteBuf;
-		char[] inCharBuf;
-		char[] lineBuf = new char[1024];
-		int inLimit = 0;
-		int inOff = 0;
-		InputStream inStream;
-		Reader reader;
-
-		public LineReader(InputStream inStream) {
-			this.inStream = inStream;
-			inByteBuf = new byte[8192];
+	private int locate(Entity entity) {
+		int position = indexOfInstance(entity);
+		if (position < 0) {
+			if (Type.PROPERTY == entity.getType() && entity.getKey() != null) {
+				int ordinal = keyIndex().first(entity.getKey(), keys);
+				position = ordinal > -1 ? propertyIndex[ordinal] : -1;
+			} else {
+				position = entities.indexOf(entity);
+			}
 		}
+		return position;
+	}
 
-		public LineReader(Reader reader) {
-			this.reader = reader;
-			inCharBuf = new char[8192];
+	/**
+	 * Removes the entity at the specified location from the both lists.
+	 * 
+	 * @param location
+	 */
+	public void remove(int location) {
+		lock.writeLock().lock();
+		try {
+			if (location > -1 && location < count) {
+				recordRemove(propertyIndex[location]);
+			}
+		} finally {
+			lock.writeLock().unlock();
 		}
+	}
 
-		int readLine() throws IOException {
-			int len = 0;
-			char c = 0;
-
-			boolean skipWhiteSpace = true;
-			boolean isNewLine = true;
-			boolean appendedLineBegin = false;
-			boolean precedingBackslash = false;
-			boolean skipLF = false;
-
-			while (true) {
-				if (inOff >= inLimit) {
-					inLimit = (inStream == null) ? reader.read(inCharBuf)
-							: inStream.read(inByteBuf);
-					inOff = 0;
-					if (inLimit <= 0) {
-						if (len == 0) {
-							return -1;
-						}
-						return len;
-					}
-				}
-				if (inStream != null) {
-					// The line below is equivalent to calling a
-					// ISO8859-1 decoder.
-					c = (char) (0xff & inByteBuf[inOff++]);
-				} else {
-					c = inCharBuf[inOff++];
-				}
-				if (skipLF) {
-					skipLF = false;
-					if (c == '\n') {
-						continue;
-					}
-				}
-				if (skipWhiteSpace) {
-					if (c == ' ' || c == '\t' || c == '\f') {
-						continue;
-					}
-					if (!appendedLineBegin && (c == '\r' || c == '\n')) {
-						add(new Entity(Type.EMPTY, "", ""));
-						continue;
-					}
-					skipWhiteSpace = false;
-					appendedLineBegin = false;
-				}
-				if (isNewLine) {
-					isNewLine = false;
-				}
+	private void recordRemove(int position) {
+		Entity entity = removeAt(position);
+		record(new EntityChange(EntityChange.Kind.REMOVE, entity, position,
+				entity.getKey(), entity.getContent(), null, null));
+	}
 
-				if (c != '\n' && c != '\r') {
-					lineBuf[len++] = c;
-					if (len == lineBuf.length) {
-						int newLength = lineBuf.length * 2;
-						if (newLength < 0) {
-							newLength = Integer.MAX_VALUE;
-						}
-						char[] buf = new char[newLength];
-						System.arraycopy(lineBuf, 0, buf, 0, lineBuf.length);
-						lineBuf = buf;
-					}
-					// flip the preceding backslash flag
-					if (c == '\\') {
-						precedingBackslash = !precedingBackslash;
-					} else {
-						precedingBackslash = false;
-					}
-				} else {
-					// reached EOL
-					if (len == 0) {
-						isNewLine = true;
-						skipWhiteSpace = true;
-						len = 0;
-						continue;
-					}
-					if (inOff >= inLimit) {
-						inLimit = (inStream == null) ? reader.read(inCharBuf)
-								: inStream.read(inByteBuf);
-						inOff = 0;
-						if (inLimit <= 0) {
-							return len;
-						}
-					}
-					if (precedingBackslash) {
-						len -= 1;
-						// skip the leading whitespace characters in following
-						// line
-						skipWhiteSpace = true;
-						appendedLineBegin = true;
-						precedingBackslash = false;
-						if (c == '\r') {
-							skipLF = true;
-						}
-					} else {
-						return len;
-					}
-				}
+	/**
+	 * Removes the entity from the specified position of the entities list and
+	 * shift the positions stored on the property index.
+	 * 
+	 * @param position
+	 *            The position on the entities list.
+	 * @return The removed entity.
+	 */
+	private Entity removeAt(int position) {
+		ensureOwned();
+		int i = Arrays.binarySearch(propertyIndex, 0, count, position);
+		if (i > -1) {
+			// while the ordinals still match the list
+			unindexKey(i);
+		}
+		Entity entity = entities.remove(position);
+		if (i > -1) {
+			count--;
+			System.arraycopy(propertyIndex, i + 1, propertyIndex, i, count - i);
+		} else {
+			i = -(i + 1);
+		}
+		for (; i < count; i++) {
+			propertyIndex[i]--;
+		}
+		if (Type.PROPERTY == entity.getType()) {
+			if (keyTrie != null) {
+				keyTrie.remove(entity);
 			}
 		}
+		return entity;
 	}
 
 	/**
-	 * Converts encoded &#92;uxxxx to unicode chars and changes special saved
-	 * chars to their original forms
-	 */
-	private String loadConvert(char[] in, int off, int len, char[] convtBuf) {
-		if (convtBuf.length < len) {
-			int newLen = len * 2;
-			if (newLen < 0) {
-				newLen = Integer.MAX_VALUE;
-			}
-			convtBuf = new char[newLen];
-		}
-		char aChar;
-		char[] out = convtBuf;
-		int outLen = 0;
-		int end = off + len;
-
-		while (off < end) {
-			aChar = in[off++];
-			if (aChar == '\\') {
-				aChar = in[off++];
-				if (aChar == 'u') {
-					// Read the xxxx
-					int value = 0;
-					for (int i = 0; i < 4; i++) {
-						aChar = in[off++];
-						switch (aChar) {
-						case '0':
-						case '1':
-						case '2':
-						case '3':
-						case '4':
-						case '5':
-						case '6':
-						case '7':
-						case '8':
-						case '9':
-							value = (value << 4) + aChar - '0';
-							break;
-						case 'a':
-						case 'b':
-						case 'c':
-						case 'd':
-						case 'e':
-						case 'f':
-							value = (value << 4) + 10 + aChar - 'a';
-							break;
-						case 'A':
-						case 'B':
-						case 'C':
-						case 'D':
-						case 'E':
-						case 'F':
-							value = (value << 4) + 10 + aChar - 'A';
-							break;
-						default:
-							throw new IllegalArgumentException(
-									"Malformed \\uxxxx encoding for character: \"" + aChar +
-											"\", out: \"" + out + "\"");
-						}
-					}
-					out[outLen++] = (char) value;
-				} else {
-					if (aChar == 't')
-						aChar = '\t';
-					else if (aChar == 'r')
-						aChar = '\r';
-					else if (aChar == 'n')
-						aChar = '\n';
-					else if (aChar == 'f')
-						aChar = '\f';
-					out[outLen++] = aChar;
-				}
-			} else {
-				out[outLen++] = aChar;
+	 * Inserts the entity at the specified position of the entities list and
+	 * shift the positions stored on the property index.
+	 * 
+	 * @param position
+	 *            The position on the entities list.
+	 * @param entity
+	 *            The entity to insert.
+	 */
+	private void insertAt(int position, Entity entity) {
+		ensureOwned();
+		entities.add(position, entity);
+		int i = Arrays.binarySearch(propertyIndex, 0, count, position);
+		if (i < 0) {
+			i = -(i + 1);
+		}
+		for (int j = i; j < count; j++) {
+			propertyIndex[j]++;
+		}
+		if (Type.PROPERTY == entity.getType()) {
+			if (count == propertyIndex.length) {
+				propertyIndex = Arrays.copyOf(propertyIndex, count * 2);
+			}
+			System.arraycopy(propertyIndex, i, propertyIndex, i + 1, count - i);
+			propertyIndex[i] = position;
+			count++;
+			if (keyTrie != null) {
+				keyTrie.add(entity);
+			}
+			if (keyIndex != null) {
+				keyIndex.shift(i, 1);
+				indexKey(i);
 			}
 		}
-		return new String(out, 0, outLen);
 	}
 
 	/**
-	 * Writes the entities properties list (key and element pairs) to the output
-	 * character stream. Every entry in the entities properties list is written
-	 * out, one per line. For each entry the key string is written, then an
-	 * ASCII <code>=</code>, then the associated element string.
+	 * Returns the position on the entities list of the specified entity
+	 * instance.
 	 * 
-	 * @param writer
-	 *            An output character stream writer.
-	 * @throws IOException
-	 *             If writing this entities properties list to the specified
-	 *             output stream throws an <tt>IOException</tt>.
+	 * @param entity
+	 *            The entity to look for.
+	 * @return The position or -1 if the entity is not on the list.
 	 */
-	public void store(Writer writer) throws IOException {
-		store0((writer instanceof BufferedWriter) ? (BufferedWriter) writer
-				: new BufferedWriter(writer), false);
-	}
-
-	private void store0(BufferedWriter bw, boolean escUnicode)
-			throws IOException {
-		synchronized (this) {
-			for (Entity entity : entities) {
-				switch (entity.getType()) {
-				case COMMENT:
-					writeComments(bw,
-							entity.getKey() + " " + entity.getContent());
-					break;
-				case EMPTY:
-					bw.write(' ');
-					bw.newLine();
-					break;
-				case PROPERTY:
-					bw.write(saveConvert(entity.getKey(), true, escUnicode)
-							+ "="
-							+ saveConvert(entity.getContent(), false,
-									escUnicode));
-					bw.newLine();
-					break;
+	private int indexOfInstance(Entity entity) {
+		if (Type.PROPERTY != entity.getType()) {
+			for (int i = 0; i < entities.size(); i++) {
+				if (isAt(i, entity)) {
+					return i;
 				}
 			}
+			return -1;
+		}
+		for (int i = 0; i < count; i++) {
+			if (isAt(propertyIndex[i], entity)) {
+				return propertyIndex[i];
+			}
 		}
-		bw.flush();
+		return -1;
 	}
 
 	/**
-	 * Write the comment to the file.
+	 * Check if the specified entity is the one at the specified position of
+	 * the entities list, without building the entity of a loaded line.
 	 */
-	private static void writeComments(BufferedWriter bw, String comments)
-			throws IOException {
-		int len = comments.length();
-		int current = 0;
-		int last = 0;
-		char[] uu = new char[6];
-		uu[0] = '\\';
-		uu[1] = 'u';
-		if (comments.charAt(0) != '#') {
-			bw.write("#");
-		}
-		while (current < len) {
-			char c = comments.charAt(current);
-			if (c > '\u00ff' || c == '\n' || c == '\r') {
-				if (last != current)
-					bw.write(comments.substring(last, current));
-				if (c > '\u00ff') {
-					uu[2] = toHex((c >> 12) & 0xf);
-					uu[3] = toHex((c >> 8) & 0xf);
-					uu[4] = toHex((c >> 4) & 0xf);
-					uu[5] = toHex(c & 0xf);
-					bw.write(new String(uu));
-				} else {
-					bw.newLine();
-					if (c == '\r' && current != len - 1
-							&& comments.charAt(current + 1) == '\n') {
-						current++;
-					}
-					if (current == len - 1
-							|| (comments.charAt(current + 1) != '#' && comments
-									.charAt(current + 1) != '!'))
-						bw.write("#");
-				}
-				last = current + 1;
+	private boolean isAt(int position, Entity entity) {
+		return entities instanceof EntityColumns ? ((EntityColumns) entities)
+				.isAt(position, entity) : entities.get(position).sameAs(entity);
+	}
+
+	/**
+	 * Returns the specified entity as an object which can be changed in
+	 * place. An entity which could be used by a clone, or a line of the
+	 * loaded file, is replaced by a copy on the list, on the key trie and on
+	 * the journal, so the other users of the object do not see the change.
+	 * 
+	 * @param entity
+	 *            The entity to be changed.
+	 * @return The entity or its copy.
+	 */
+	private Entity own(Entity entity) {
+		if (entity.owner == owner) {
+			return entity;
+		}
+		Entity copy = (Entity) entity.clone();
+		copy.owner = owner;
+		int position = indexOfInstance(entity);
+		if (position > -1) {
+			ensureOwned();
+			entities.set(position, copy);
+			if (Type.PROPERTY == entity.getType() && keyTrie != null) {
+				keyTrie.remove(entity);
+				keyTrie.add(copy);
+			}
+		}
+		for (EntityChange change : journal) {
+			if (change.getEntity().sameAs(entity)) {
+				change.setEntity(copy);
 			}
-			current++;
 		}
-		if (last != current)
-			bw.write(comments.substring(last, current));
-		bw.newLine();
+		return copy;
 	}
 
 	/**
-	 * Converts unicodes to encoded &#92;uxxxx and escapes special characters
-	 * with a preceding slash
+	 * Add a change to the journal, dropping the changes which could be redone.
 	 */
-	private String saveConvert(String theString, boolean escapeSpace,
-			boolean escapeUnicode) {
-		int len = theString.length();
-		int bufLen = len * 2;
-		if (bufLen < 0) {
-			bufLen = Integer.MAX_VALUE;
+	private void record(EntityChange change) {
+		while (journal.size() > journalPos) {
+			journal.remove(journal.size() - 1);
+		}
+		if (savedPos > journalPos) {
+			// the saved state can not be reached anymore
+			savedPos = -1;
 		}
-		StringBuffer outBuffer = new StringBuffer(bufLen);
+		change.sequence = ++recorded;
+		journal.add(change);
+		journalPos++;
+	}
 
-		for (int x = 0; x < len; x++) {
-			char aChar = theString.charAt(x);
-			// Handle common case first, selecting largest block that
-			// avoids the specials below
-			if ((aChar > 61) && (aChar < 127)) {
-				if (aChar == '\\') {
-					outBuffer.append('\\');
-					outBuffer.append('\\');
-					continue;
-				}
-				outBuffer.append(aChar);
-				continue;
+	/**
+	 * Revert the last applied change.
+	 * 
+	 * @return The reverted change or null if there is nothing to undo.
+	 */
+	public EntityChange undo() {
+		lock.writeLock().lock();
+		try {
+			if (journalPos == 0) {
+				return null;
 			}
-			switch (aChar) {
-			case ' ':
-				if (x == 0 || escapeSpace)
-					outBuffer.append('\\');
-				outBuffer.append(' ');
+			EntityChange change = journal.get(--journalPos);
+			Entity entity = change.getEntity();
+			switch (change.getKind()) {
+			case ADD:
+				removeAt(indexOfInstance(entity));
 				break;
-			case '\t':
-				outBuffer.append('\\');
-				outBuffer.append('t');
+			case REMOVE:
+				insertAt(change.position, entity);
 				break;
-			case '\n':
-				outBuffer.append('\\');
-				outBuffer.append('n');
+			case UPDATE:
+				entity = own(entity);
+				applyUpdate(entity, change.getOldKey(), change.getOldContent());
+				if (change.oldRaw != null) {
+					entity.setRaw(change.oldRaw, change.oldRawOff,
+							change.oldRawLen);
+				}
 				break;
-			case '\r':
-				outBuffer.append('\\');
-				outBuffer.append('r');
+			}
+			return change;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Apply again the last reverted change.
+	 * 
+	 * @return The applied change or null if there is nothing to redo.
+	 */
+	public EntityChange redo() {
+		lock.writeLock().lock();
+		try {
+			if (journalPos == journal.size()) {
+				return null;
+			}
+			EntityChange change = journal.get(journalPos++);
+			Entity entity = change.getEntity();
+			switch (change.getKind()) {
+			case ADD:
+				insertAt(change.position, entity);
 				break;
-			case '\f':
-				outBuffer.append('\\');
-				outBuffer.append('f');
+			case REMOVE:
+				removeAt(change.position);
 				break;
-			case '=': // Fall through
-			case ':': // Fall through
-			case '#': // Fall through
-			case '!':
-				// outBuffer.append('\\');
-				outBuffer.append(aChar);
+			case UPDATE:
+				applyUpdate(own(entity), change.getNewKey(),
+						change.getNewContent());
 				break;
-			default:
-				if (((aChar < 0x0020) || (aChar > 0x007e)) & escapeUnicode) {
-					outBuffer.append('\\');
-					outBuffer.append('u');
-					outBuffer.append(toHex((aChar >> 12) & 0xF));
-					outBuffer.append(toHex((aChar >> 8) & 0xF));
-					outBuffer.append(toHex((aChar >> 4) & 0xF));
-					outBuffer.append(toHex(aChar & 0xF));
-				} else {
-					outBuffer.append(aChar);
-				}
 			}
+			return change;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Check if there is a change to be reverted.
+	 * 
+	 * @return True if undo is possible.
+	 */
+	public boolean canUndo() {
+		lock.readLock().lock();
+		try {
+			return journalPos > 0;
+		} finally {
+			lock.readLock().unlock();
 		}
-		return outBuffer.toString();
 	}
 
 	/**
-	 * Convert a nibble to a hex character
+	 * Check if there is a reverted change to be applied again.
 	 * 
-	 * @param nibble
-	 *            the nibble to convert.
+	 * @return True if redo is possible.
 	 */
-	private static char toHex(int nibble) {
-		return hexDigit[(nibble & 0xF)];
+	public boolean canRedo() {
+		lock.readLock().lock();
+		try {
+			return journalPos < journal.size();
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
-	/** A table of hex digits */
-	private static final char[] hexDigit = { '0', '1', '2', '3', '4', '5', '6',
-			'7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+	/**
+	 * Returns the number of applied changes since the entities were loaded.
+	 * 
+	 * @return The number of applied changes.
+	 */
+	public int changeCount() {
+		lock.readLock().lock();
+		try {
+			return journalPos;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
 
 	/**
-	 * Check if the entities are modified.
+	 * Returns a mark of the current state, to be passed to setSaved() once a
+	 * snapshot taken now has been written. Unlike changeCount(), it tells
+	 * apart the states reached by undoing some changes and making others.
 	 * 
-	 * @return True if the entities are modified.
+	 * @return The state mark.
 	 */
-	public boolean isModified() {
-		return modified;
+	public long savePoint() {
+		lock.readLock().lock();
+		try {
+			return journalPos == 0 ? 0
+					: (long) journal.get(journalPos - 1).sequence << 32
+							| journalPos;
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/**
-	 * Set the modified entities flag.
+	 * Mark as saved the state returned by savePoint() when the saved snapshot
+	 * was taken. The changes applied after it stay modified. Nothing is
+	 * marked if that state can not be reached anymore, because changes were
+	 * undone past it and other ones were made.
 	 * 
-	 * @param modified
-	 *            The modified entities flag.
+	 * @param savePoint
+	 *            The mark of the saved state.
 	 */
-	public void setModified(boolean modified) {
-		this.modified = modified;
+	public void setSaved(long savePoint) {
+		lock.writeLock().lock();
+		try {
+			int position = (int) savePoint;
+			int sequence = (int) (savePoint >>> 32);
+			if (position > journal.size()
+					|| (position > 0 && journal.get(position - 1).sequence != sequence)) {
+				return;
+			}
+			savedPos = position;
+			modified = false;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the applied changes, the oldest first.
+	 * 
+	 * @return The applied changes.
+	 */
+	public List<EntityChange> getChanges() {
+		lock.readLock().lock();
+		try {
+			return Collections.unmodifiableList(new ArrayList<EntityChange>(
+					journal.subList(0, journalPos)));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the entities changed since the last save, each one once, in the
+	 * order of their first change. The removed entities are included.
+	 * 
+	 * @return The changed entities.
+	 */
+	public List<Entity> dirtyEntities() {
+		lock.readLock().lock();
+		try {
+			List<Entity> result = new ArrayList<Entity>();
+			int from = savedPos < 0 ? 0 : Math.min(savedPos, journalPos);
+			int to = savedPos < 0 ? journalPos : Math.max(savedPos, journalPos);
+			Set<Entity> seen = Collections
+					.newSetFromMap(new IdentityHashMap<Entity, Boolean>());
+			for (int i = from; i < to; i++) {
+				Entity entity = journal.get(i).getEntity();
+				if (seen.add(entity)) {
+					result.add(entity);
+				}
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The keys of the properties, read by the key index.
+	 */
+	final KeyIndex.Keys keys = new KeyIndex.Keys() {
+		@Override
+		public int count() {
+			return count;
+		}
+
+		@Override
+		public String keyAt(int ordinal) {
+			int position = propertyIndex[ordinal];
+			return entities instanceof EntityColumns ? ((EntityColumns) entities)
+					.key(position) : entities.get(position).getKey();
+		}
+
+		@Override
+		public int hashAt(int ordinal) {
+			int position = propertyIndex[ordinal];
+			if (entities instanceof EntityColumns) {
+				return ((EntityColumns) entities).keyHash(position);
+			}
+			String key = entities.get(position).getKey();
+			return key != null ? key.hashCode() : 0;
+		}
+	};
+
+	/**
+	 * Check if the key or the content of a property is longer than the
+	 * specified number of characters, without building the entity of a
+	 * loaded line. The read lock should be held.
+	 * 
+	 * @param ordinal
+	 *            The ordinal of the property.
+	 * @param keyMax
+	 *            The maximum key length.
+	 * @param contentMax
+	 *            The maximum content length.
+	 * @return True if a limit is exceeded.
+	 */
+	boolean isLonger(int ordinal, int keyMax, int contentMax) {
+		int position = propertyIndex[ordinal];
+		return entities instanceof EntityColumns ? ((EntityColumns) entities)
+				.isLonger(position, keyMax, contentMax) : isLonger(
+				entities.get(position), keyMax, contentMax);
+	}
+
+	/**
+	 * Check if the key or the content of an entity object is longer than the
+	 * specified number of characters.
+	 */
+	static boolean isLonger(Entity entity, int keyMax, int contentMax) {
+		String key = entity.getKey();
+		String content = entity.getContent();
+		return (key != null && key.length() > keyMax)
+				|| (content != null && content.length() > contentMax);
+	}
+
+	/**
+	 * Check if the property at the specified ordinal has a key, without
+	 * building the entity of a loaded line.
+	 */
+	private boolean hasKey(int ordinal) {
+		int position = propertyIndex[ordinal];
+		if (entities instanceof EntityColumns) {
+			EntityColumns columns = (EntityColumns) entities;
+			if (columns.line(position) > -1) {
+				return true;
+			}
+		}
+		return entities.get(position).getKey() != null;
+	}
+
+	/**
+	 * Register a property on the key index, once it is on the properties
+	 * list.
+	 * 
+	 * @param ordinal
+	 *            The ordinal of the property.
+	 */
+	private void indexKey(int ordinal) {
+		if (keyIndex != null && hasKey(ordinal)) {
+			keyIndex.add(ordinal, keys);
+		}
+	}
+
+	/**
+	 * Remove a property from the key index, before it is removed from the
+	 * properties list. If the key is defined more than once the next
+	 * definition becomes the indexed one.
+	 * 
+	 * @param ordinal
+	 *            The ordinal of the removed property.
+	 */
+	private void unindexKey(int ordinal) {
+		if (keyIndex == null) {
+			return;
+		}
+		if (hasKey(ordinal)) {
+			keyIndex.remove(ordinal, keys.keyAt(ordinal), keys);
+		}
+		keyIndex.shift(ordinal + 1, -1);
+	}
+
+	/**
+	 * Get the key index, building it if it is not available.
+	 * 
+	 * @return The key index.
+	 */
+	private KeyIndex keyIndex() {
+		if (keyIndex == null) {
+			keyIndex = new KeyIndex(count);
+			for (int i = 0; i < count; i++) {
+				indexKey(i);
+			}
+		}
+		return keyIndex;
+	}
+
+	/**
+	 * Acquire the read lock with the key index available. If the index should
+	 * be built the write lock is taken for it and downgraded.
+	 */
+	void readKeys() {
+		lock.readLock().lock();
+		if (keyIndex == null) {
+			lock.readLock().unlock();
+			lock.writeLock().lock();
+			try {
+				keyIndex();
+				lock.readLock().lock();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns the trie of the property keys split on dots, used to browse the
+	 * namespaces and to find the properties by key prefix. It is built on the
+	 * first call and then kept up to date with the changes. Unlike the key
+	 * index, it holds the entities of all the properties.
+	 * 
+	 * @return The key trie.
+	 */
+	public KeyTrie getKeyTrie() {
+		lock.writeLock().lock();
+		try {
+			if (keyTrie == null) {
+				KeyTrie trie = new KeyTrie();
+				for (int i = 0; i < count; i++) {
+					trie.add(entities.get(propertyIndex[i]));
+				}
+				keyTrie = trie;
+			}
+			return keyTrie;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the first property entity defined with the specified key.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @return The property entity or null if the key is not defined.
+	 */
+	public Entity get(String key) {
+		readKeys();
+		try {
+			int ordinal = key != null ? keyIndex.first(key, keys) : -1;
+			return ordinal > -1 ? entities.get(propertyIndex[ordinal]) : null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Check if there is a property defined with the specified key.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @return True if the key is defined.
+	 */
+	public boolean containsKey(String key) {
+		readKeys();
+		try {
+			return key != null && keyIndex.first(key, keys) > -1;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the content of the property with the specified key as an
+	 * integer. The parsed value is cached on the entity.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @param defaultValue
+	 *            The value returned if the key is not defined or the content
+	 *            is not an integer.
+	 * @return The integer value.
+	 */
+	public int getInt(String key, int defaultValue) {
+		Entity entity = get(key);
+		return entity != null ? entity.getInt(defaultValue) : defaultValue;
+	}
+
+	/**
+	 * Returns the content of the property with the specified key as a long.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @param defaultValue
+	 *            The value returned if the key is not defined or the content
+	 *            is not a number.
+	 * @return The long value.
+	 */
+	public long getLong(String key, long defaultValue) {
+		Entity entity = get(key);
+		return entity != null ? entity.getLong(defaultValue) : defaultValue;
+	}
+
+	/**
+	 * Returns the content of the property with the specified key as a
+	 * boolean.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @param defaultValue
+	 *            The value returned if the key is not defined or the content
+	 *            is not a boolean.
+	 * @return The boolean value.
+	 */
+	public boolean getBoolean(String key, boolean defaultValue) {
+		Entity entity = get(key);
+		return entity != null ? entity.getBoolean(defaultValue) : defaultValue;
+	}
+
+	/**
+	 * Returns the content of the property with the specified key as a size in
+	 * bytes, like dalvik.vm.heapsize=256m.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @param defaultValue
+	 *            The value returned if the key is not defined or the content
+	 *            is not a size.
+	 * @return The size in bytes.
+	 */
+	public long getSize(String key, long defaultValue) {
+		Entity entity = get(key);
+		return entity != null ? entity.getSize(defaultValue) : defaultValue;
+	}
+
+	/**
+	 * Returns the comma separated items of the property with the specified
+	 * key.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @return The items, empty if the key is not defined.
+	 */
+	public List<String> getList(String key) {
+		Entity entity = get(key);
+		return entity != null ? entity.getList() : Collections
+				.<String> emptyList();
+	}
+
+	/**
+	 * Set the content of the property with the specified key. If the key is
+	 * not defined a new property is added at the end of the list.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @param content
+	 *            The property content.
+	 * @return The previous property content or null if the key was not
+	 *         defined.
+	 */
+	public String put(String key, String content) {
+		lock.writeLock().lock();
+		try {
+			Entity entity = get(key);
+			if (entity == null) {
+				add(new Entity(key, content));
+				return null;
+			}
+			String previous = entity.getContent();
+			update(entity, key, content);
+			return previous;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Change the key and the content of a property entity keeping the key
+	 * index up to date and recording the change. The entity key should not be
+	 * changed directly.
+	 * <p>
+	 * An entity shared with a clone or read from the loaded file is not
+	 * changed: it is replaced by a changed copy, which getChanges() reports.
+	 * If the instance is not on the list, the first equal entity is updated,
+	 * like remove() does.
+	 * 
+	 * @param entity
+	 *            The property entity to be updated.
+	 * @param key
+	 *            The new property key.
+	 * @param content
+	 *            The new property content.
+	 * @return True if the key or the content was changed.
+	 */
+	public boolean update(Entity entity, String key, String content) {
+		lock.writeLock().lock();
+		try {
+			if (entity.owner != owner) {
+				int position = locate(entity);
+				if (position < 0) {
+					// not one of these entities, which can not be changed
+					return false;
+				}
+				entity = entities.get(position);
+			}
+			String oldKey = entity.getKey();
+			String oldContent = entity.getContent();
+			if ((key == null ? oldKey == null : key.equals(oldKey))
+					&& (content == null ? oldContent == null : content
+							.equals(oldContent))) {
+				return false;
+			}
+			entity = own(entity);
+			EntityChange change = new EntityChange(EntityChange.Kind.UPDATE,
+					entity, -1, oldKey, oldContent, key, content);
+			change.oldRaw = entity.raw;
+			change.oldRawOff = entity.rawOff;
+			change.oldRawLen = entity.rawLen;
+			applyUpdate(entity, key, content);
+			record(change);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void applyUpdate(Entity entity, String key, String content) {
+		ensureOwned();
+		String oldKey = entity.getKey();
+		boolean rekey = Type.PROPERTY == entity.getType()
+				&& (key == null ? oldKey != null : !key.equals(oldKey));
+		boolean retrie = rekey && keyTrie != null;
+		if (retrie) {
+			keyTrie.remove(entity);
+		}
+		if (rekey && keyIndex != null) {
+			// the entity keeps its ordinal
+			int ordinal = Arrays.binarySearch(propertyIndex, 0, count,
+					indexOfInstance(entity));
+			if (oldKey != null) {
+				keyIndex.remove(ordinal, oldKey, keys);
+			}
+			entity.setKey(key);
+			indexKey(ordinal);
+		} else {
+			entity.setKey(key);
+		}
+		if (retrie) {
+			keyTrie.add(entity);
+		}
+		entity.setContent(content);
+	}
+
+	/**
+	 * Report the keys defined more than once.
+	 * 
+	 * @return For each duplicated key, all property entities defined with it,
+	 *         in the file order.
+	 */
+	public Map<String, List<Entity>> duplicates() {
+		readKeys();
+		try {
+			Map<String, List<Entity>> result = new LinkedHashMap<String, List<Entity>>();
+			for (int ordinal : duplicateOrdinals()) {
+				Entity entity = entities.get(propertyIndex[ordinal]);
+				List<Entity> definitions = result.get(entity.getKey());
+				if (definitions == null) {
+					definitions = new ArrayList<Entity>();
+					result.put(entity.getKey(), definitions);
+				}
+				definitions.add(entity);
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the ordinals of all the definitions of the keys defined more
+	 * than once, in the file order. Only the keys whose hash code is the one
+	 * of a duplicated key are decoded. The read lock should be held, with the
+	 * key index available.
+	 * 
+	 * @return The ordinals on the properties list.
+	 */
+	List<Integer> duplicateOrdinals() {
+		List<Integer> result = new ArrayList<Integer>();
+		Map<String, Integer> duplicates = keyIndex.duplicates();
+		if (!duplicates.isEmpty()) {
+			Set<Integer> hashes = new HashSet<Integer>();
+			for (String key : duplicates.keySet()) {
+				hashes.add(key.hashCode());
+			}
+			for (int i = 0; i < count; i++) {
+				if (hashes.contains(keys.hashAt(i)) && hasKey(i)
+						&& duplicates.containsKey(keys.keyAt(i))) {
+					result.add(i);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a snapshot of these entities in constant time. The list and the
+	 * indexes are shared until the original or the clone is changed. The
+	 * entity objects are shared too, and copied by the side which changes
+	 * one of them first. The journal is not cloned.
+	 */
+	@Override
+	public Object clone() {
+		Entities ent = new Entities();
+		lock.readLock().lock();
+		try {
+			synchronized (share) {
+				share.owners++;
+			}
+			// from now on no side can change an entity in place
+			owner = new Object();
+			ent.share = share;
+			ent.entities = entities;
+			ent.propertyIndex = propertyIndex;
+			ent.count = count;
+			ent.keyIndex = keyIndex;
+			ent.keyTrie = keyTrie;
+			ent.source = source;
+			ent.orphanOff = orphanOff;
+			ent.orphanLen = orphanLen;
+			ent.charset = charset;
+			ent.bom = bom;
+			ent.lineSeparator = lineSeparator;
+			ent.lock = lock;
+		} finally {
+			lock.readLock().unlock();
+		}
+		return ent;
+	}
+
+	/**
+	 * Parser listener which adds every parsed line to the entities.
+	 */
+	private final PropertiesParser.Listener loader = new PropertiesParser.Listener() {
+		@Override
+		public boolean property(String key, String value) {
+			append(new Entity(key, value));
+			return true;
+		}
+
+		@Override
+		public boolean comment(String key, String value) {
+			append(new Entity(Type.COMMENT, key, value));
+			return true;
+		}
+
+		@Override
+		public boolean emptyLine() {
+			append(new Entity(Type.EMPTY, "", ""));
+			return true;
+		}
+	};
+
+	/**
+	 * Loads properties from the specified InputStream, decoded as ISO 8859-1
+	 * like java.util.Properties does.
+	 * 
+	 * @param inputStream
+	 *            The specified InputStream.
+	 * @throws IOException
+	 */
+	public void load(InputStream inputStream) throws IOException {
+		load(inputStream, Charsets.ISO_8859_1);
+	}
+
+	/**
+	 * Loads properties from the specified InputStream, decoded with the
+	 * specified charset. If the charset is null, the whole stream is read and
+	 * loaded like a ByteBuffer, with the charset detected from the bytes.
+	 * 
+	 * @param inputStream
+	 *            The specified InputStream.
+	 * @param charset
+	 *            The charset of the stream, or null to detect it.
+	 * @throws IOException
+	 */
+	public void load(InputStream inputStream, Charset charset)
+			throws IOException {
+		if (charset == null) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = inputStream.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+			load(ByteBuffer.wrap(out.toByteArray()), null, null);
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			clear();
+			this.charset = charset;
+			bom = false;
+			new PropertiesParser(loader, charset).parse(inputStream);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the charset of the loaded file, which is also the charset used
+	 * by store(OutputStream).
+	 * 
+	 * @return The charset, ISO 8859-1 if nothing was loaded.
+	 */
+	public Charset getCharset() {
+		lock.readLock().lock();
+		try {
+			return charset;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Loads properties from the specified file channel. The file is mapped in
+	 * memory and parsed directly from the mapped bytes, in the charset
+	 * detected from them.
+	 * 
+	 * @param channel
+	 *            The file channel to be read.
+	 * @throws IOException
+	 */
+	public void load(FileChannel channel) throws IOException {
+		load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+	}
+
+	/**
+	 * Loads properties from the remaining bytes of the specified buffer. The
+	 * charset is detected from the bytes: UTF-8 if they start with its byte
+	 * order mark or if all the bytes above 0x7F form valid UTF-8 sequences,
+	 * UTF-16 if they start with its byte order mark, ISO 8859-1 otherwise,
+	 * like the InputStream loader does.
+	 * <p>
+	 * The bytes are copied once into a private array. The lines without
+	 * backslashes are tokenized directly on it and stored as columns of a
+	 * LineTable: no object is made for them until their entity is requested,
+	 * and then it is a lazy entity which builds the key and content strings
+	 * only when they are requested. The other lines are handled by the
+	 * PropertiesParser.
+	 * <p>
+	 * Every entity keeps the range of its original bytes, which are written
+	 * back verbatim by the store methods while the entity is not changed.
+	 * 
+	 * @param buffer
+	 *            The buffer to be read.
+	 * @throws IOException
+	 */
+	public void load(ByteBuffer buffer) throws IOException {
+		load(buffer, null, null);
+	}
+
+	/**
+	 * Loads properties from the remaining bytes of the specified buffer, like
+	 * load(ByteBuffer), decoded with the specified charset. The ISO 8859-1
+	 * and UTF-8 bytes are parsed without decoding the lines, the other
+	 * charsets are decoded first and keep no original bytes.
+	 * 
+	 * @param buffer
+	 *            The buffer to be read.
+	 * @param charset
+	 *            The charset of the bytes, or null to detect it.
+	 * @throws IOException
+	 */
+	public void load(ByteBuffer buffer, Charset charset) throws IOException {
+		load(buffer, charset, null);
+	}
+
+	/**
+	 * Loads properties from the remaining bytes of the specified buffer, like
+	 * load(ByteBuffer). A large buffer is split in chunks of whole lines which
+	 * are parsed in parallel by the specified executor, or by a shared one if
+	 * it is null. The small buffers are always parsed on the current thread.
+	 * 
+	 * @param buffer
+	 *            The buffer to be read.
+	 * @param executor
+	 *            The executor used for the chunks, or null.
+	 * @throws IOException
+	 */
+	public void load(ByteBuffer buffer, ExecutorService executor)
+			throws IOException {
+		load(buffer, null, executor);
+	}
+
+	/**
+	 * Loads properties from the remaining bytes of the specified buffer,
+	 * decoded with the specified charset and parsed in parallel if they are
+	 * large enough.
+	 * 
+	 * @param buffer
+	 *            The buffer to be read.
+	 * @param charset
+	 *            The charset of the bytes, or null to detect it.
+	 * @param executor
+	 *            The executor used for the chunks, or null.
+	 * @throws IOException
+	 */
+	public void load(ByteBuffer buffer, Charset charset,
+			ExecutorService executor) throws IOException {
+		lock.writeLock().lock();
+		try {
+			clear();
+			byte[] source = new byte[buffer.remaining()];
+			buffer.get(source);
+			this.charset = charset != null ? charset : Charsets.detect(source);
+			if (!Charsets.isByteParsable(this.charset)) {
+				// the line ends can not be found without decoding
+				bom = false;
+				String text = this.charset.decode(ByteBuffer.wrap(source))
+						.toString();
+				lineSeparator = findLineSeparator(text);
+				new PropertiesParser(loader).parse(new StringReader(text));
+				return;
+			}
+			int from = Charsets.UTF_8.equals(this.charset) ? Charsets
+					.bomLength(source) : 0;
+			bom = from > 0;
+			lineSeparator = findLineSeparator(source, from);
+			if (!ParallelLoader.load(this, source, from, executor)) {
+				useColumns(source, source.length - from);
+				orphanOff = from;
+				orphanLen = loadLines(source, from, source.length);
+			}
+			((EntityColumns) entities).trimToSize();
+			propertyIndex = Arrays.copyOf(propertyIndex, count + 16);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the line break which ends the first line of the bytes.
+	 * 
+	 * @return CR LF, CR, LF, or null if there is no line break.
+	 */
+	static String findLineSeparator(byte[] source, int from) {
+		for (int i = from; i < source.length; i++) {
+			if (source[i] == '\n') {
+				return "\n";
+			}
+			if (source[i] == '\r') {
+				return i + 1 < source.length && source[i + 1] == '\n' ? "\r\n"
+						: "\r";
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the line break which ends the first line of the text.
+	 * 
+	 * @return CR LF, CR, LF, or null if there is no line break.
+	 */
+	static String findLineSeparator(String text) {
+		int lf = text.indexOf('\n');
+		int cr = text.indexOf('\r');
+		if (cr < 0 || (lf >= 0 && lf < cr)) {
+			return lf < 0 ? null : "\n";
+		}
+		return cr + 1 == lf ? "\r\n" : "\r";
+	}
+
+	/**
+	 * Parse the lines between two positions of the loaded bytes and append
+	 * them to the columns list started by useColumns(). The start should be
+	 * the beginning of a line and the end the end of a line which is not
+	 * continued on the next one.
+	 * 
+	 * @param source
+	 *            The loaded bytes.
+	 * @param from
+	 *            The first byte to be parsed.
+	 * @param to
+	 *            The end of the bytes to be parsed.
+	 * @return The number of bytes at the beginning which belong to no line of
+	 *         the range, like the blanks at the end of a file. They are part
+	 *         of the last line before the range, or the orphan bytes of the
+	 *         file if there is none.
+	 * @throws IOException
+	 */
+	int loadLines(byte[] source, int from, int to) throws IOException {
+		EntityColumns columns = (EntityColumns) entities;
+		ByteBuffer sourceBuffer = ByteBuffer.wrap(source, 0, to);
+		PropertiesParser parser = new PropertiesParser(loader, charset);
+		int pos = from;
+		int lineStart = from;
+		int limit = to;
+		int orphan = 0;
+		int start, len;
+		int[] bounds = new int[2];
+		byte c;
+		boolean hasBackslash;
+
+		while (pos < limit) {
+			c = source[pos];
+			if (c == ' ' || c == '\t' || c == '\f') {
+				pos++;
+				continue;
+			}
+			if (c == '\r' || c == '\n') {
+				if (c == '\n' && pos == lineStart && pos > 0
+						&& source[pos - 1] == '\r') {
+					// the LF of a CR LF pair belongs to the previous line
+					columns.extendRaw(columns.size() - 1, 1);
+					appendLine(Type.EMPTY, pos + 1, 0);
+				} else {
+					appendLine(Type.EMPTY, lineStart, pos + 1 - lineStart);
+				}
+				pos++;
+				lineStart = pos;
+				continue;
+			}
+			start = pos;
+			hasBackslash = false;
+			while (pos < limit && (c = source[pos]) != '\n' && c != '\r') {
+				if (c == '\\') {
+					hasBackslash = true;
+				}
+				pos++;
+			}
+			if (hasBackslash) {
+				// escapes or continuation lines, use the regular reader
+				sourceBuffer.position(start);
+				len = columns.size();
+				parser.parseLine(sourceBuffer);
+				pos = sourceBuffer.position();
+				// the empty lines reported inside a continued line are
+				// part of its bytes
+				for (; len < columns.size() - 1; len++) {
+					columns.get(len).setRaw(source, lineStart, 0);
+				}
+				if (len < columns.size()) {
+					columns.get(len).setRaw(source, lineStart, pos - lineStart);
+				} else if (len > 0) {
+					// a continued line with nothing after, keep its bytes
+					columns.extendRaw(len - 1, pos - lineStart);
+				} else {
+					orphan += pos - lineStart;
+				}
+				lineStart = pos;
+				continue;
+			}
+			len = pos - start;
+			pos++;
+			// no backslash could be found here, the line is split again
+			// when its entity is requested
+			appendLine(LineTable.split(source, start, len, bounds) ? Type.COMMENT
+					: Type.PROPERTY, lineStart, Math.min(pos, limit) - lineStart);
+			lineStart = pos;
+		}
+		if (lineStart < limit) {
+			// trailing white spaces after the last line
+			if (!columns.isEmpty()) {
+				columns.extendRaw(columns.size() - 1, limit - lineStart);
+			} else {
+				orphan += limit - lineStart;
+			}
+		}
+		return orphan;
+	}
+
+	/**
+	 * Writes the entities properties list (key and element pairs) to the output
+	 * character stream. Every entry in the entities properties list is written
+	 * out, one per line. For each entry the key string is written, then an
+	 * ASCII <code>=</code>, then the associated element string.
+	 * 
+	 * @param writer
+	 *            An output character stream writer.
+	 * @throws IOException
+	 *             If writing this entities properties list to the specified
+	 *             output stream throws an <tt>IOException</tt>.
+	 */
+	public void store(Writer writer) throws IOException {
+		store0(new PropertiesWriter(writer));
+	}
+
+	/**
+	 * Writes the entities properties list to the output byte stream, encoded
+	 * with the charset of the loaded file.
+	 * 
+	 * @param outputStream
+	 *            An output byte stream.
+	 * @throws IOException
+	 *             If writing this entities properties list to the specified
+	 *             output stream throws an <tt>IOException</tt>.
+	 */
+	public void store(OutputStream outputStream) throws IOException {
+		store(outputStream, getCharset());
+	}
+
+	/**
+	 * Writes the entities properties list to the output byte stream, encoded
+	 * with the specified charset. When it is ISO 8859-1, the characters which
+	 * are not part of it are written as &#92;uxxxx, so the file is loaded
+	 * back unchanged. The unchanged lines are written with their original
+	 * bytes if the charset is the one of the loaded file.
+	 * 
+	 * @param outputStream
+	 *            An output byte stream.
+	 * @param charset
+	 *            The charset of the output byte stream.
+	 * @throws IOException
+	 *             If writing this entities properties list to the specified
+	 *             output stream throws an <tt>IOException</tt>.
+	 */
+	public void store(OutputStream outputStream, Charset charset)
+			throws IOException {
+		store0(new PropertiesWriter(outputStream, charset));
+	}
+
+	private void store0(PropertiesWriter pw) throws IOException {
+		List<Entity> list;
+		Share frozen;
+		lock.readLock().lock();
+		try {
+			frozen = freeze();
+			list = entities;
+			pw.setRawCharset(charset);
+			if (lineSeparator != null) {
+				pw.setLineSeparator(lineSeparator);
+			}
+			if (bom) {
+				pw.writeBom();
+			}
+			if (orphanLen > 0) {
+				// only blanks and line continuations, which every charset
+				// can encode
+				pw.writeRaw(source, orphanOff, orphanLen);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		try {
+			boolean raw = pw.canWriteRaw();
+			Entity entity;
+			EntityColumns columns = list instanceof EntityColumns ? (EntityColumns) list
+					: null;
+			int i = 0, end, size = list.size();
+			while (i < size) {
+				// the entity objects are shared, hold the read lock while a
+				// block of them is written so an update is seen whole or not
+				// at all
+				end = Math.min(size, i + STORE_BLOCK);
+				lock.readLock().lock();
+				try {
+					for (; i < end; i++) {
+						pw.endLine();
+						if (raw && columns != null && columns.writeRaw(i, pw)) {
+							// a line of the loaded file, never changed
+							continue;
+						}
+						entity = list.get(i);
+						if (raw && entity.raw != null) {
+							pw.writeRaw(entity.raw, entity.rawOff,
+									entity.rawLen);
+							continue;
+						}
+						switch (entity.getType()) {
+						case COMMENT:
+							pw.writeComment(entity.getKey(),
+									entity.getContent());
+							break;
+						case EMPTY:
+							pw.writeEmpty();
+							break;
+						case PROPERTY:
+							pw.writeProperty(entity.getKey(),
+									entity.getContent());
+							break;
+						}
+					}
+				} finally {
+					lock.readLock().unlock();
+				}
+			}
+			pw.flush();
+		} finally {
+			release(frozen);
+		}
+	}
+
+	/**
+	 * Check if the entities are modified.
+	 * 
+	 * @return True if the entities are modified.
+	 */
+	public boolean isModified() {
+		lock.readLock().lock();
+		try {
+			return modified || journalPos != savedPos;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Set the modified entities flag.
+	 * 
+	 * @param modified
+	 *            The modified entities flag.
+	 */
+	public void setModified(boolean modified) {
+		lock.writeLock().lock();
+		try {
+			this.modified = modified;
+			if (!modified) {
+				savedPos = journalPos;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
 	}
 }
@@ -0,0 +1,305 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.zip.Adler32;
+
+/**
+ * A binary snapshot of loaded entities, stored in the application files so the
+ * next start does not need to copy the properties file with root privileges
+ * and parse it again. A file which can be read directly has no snapshot: it
+ * is loaded faster than a snapshot could be read and checked.
+ * <p>
+ * The snapshot keeps the size and the modification time of the properties
+ * file, its charset and the file bytes with their Adler-32 hash, followed by
+ * the parsed entities: the type and the range of the original bytes of every
+ * line, plus the key and content strings for the lines with escapes. The
+ * ranges are written as variable length numbers relative to the end of the
+ * previous line, usually one byte each. The lines without escapes are split
+ * again only when their entities are requested.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class EntitiesSnapshot {
+	private static final int MAGIC = 0x50455335;
+	private static final int LINE = 0x80;
+	private static final Type[] TYPES = Type.values();
+
+	private EntitiesSnapshot() {
+	}
+
+	/**
+	 * Write the snapshot of entities just loaded from the specified file, if
+	 * the file can not be read without root privileges.
+	 * 
+	 * @param entities
+	 *            The entities, loaded from a ByteBuffer or a FileChannel and
+	 *            not changed.
+	 * @param sourceFile
+	 *            The properties file.
+	 * @param snapshotFile
+	 *            The snapshot file to be written.
+	 * @return False if the entities could not be saved as a snapshot, or if
+	 *         the file does not need one.
+	 * @throws IOException
+	 */
+	public static boolean write(Entities entities, File sourceFile,
+			File snapshotFile) throws IOException {
+		if (sourceFile.canRead()) {
+			return false;
+		}
+		return write(entities, sourceFile.length(), sourceFile.lastModified(),
+				snapshotFile);
+	}
+
+	/**
+	 * Write the snapshot of entities loaded from a file with the specified
+	 * size and modification time.
+	 */
+	static boolean write(Entities entities, long length, long lastModified,
+			File snapshotFile) throws IOException {
+		entities.lock.readLock().lock();
+		try {
+			return write0(entities, length, lastModified, snapshotFile);
+		} finally {
+			entities.lock.readLock().unlock();
+		}
+	}
+
+	private static boolean write0(Entities entities, long length,
+			long lastModified, File snapshotFile) throws IOException {
+		byte[] source = entities.source;
+		if (source == null || entities.isModified()
+				|| !(entities.entities instanceof EntityColumns)) {
+			return false;
+		}
+		EntityColumns columns = (EntityColumns) entities.entities;
+		Entity entity;
+		for (int i = 0; i < columns.size(); i++) {
+			entity = columns.peek(i);
+			if (entity != null && entity.raw != source) {
+				return false;
+			}
+		}
+		File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmpFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeLong(length);
+			out.writeLong(lastModified);
+			out.writeUTF(entities.charset.name());
+			out.writeBoolean(entities.bom);
+			out.writeInt(hash(source, source.length));
+			writeNumber(out, source.length);
+			out.write(source);
+			writeNumber(out, entities.orphanOff);
+			writeNumber(out, entities.orphanLen);
+			writeNumber(out, columns.size());
+			int line, rawOff, rawLen, end = 0;
+			for (int i = 0; i < columns.size(); i++) {
+				line = columns.line(i);
+				entity = columns.peek(i);
+				if (entity != null) {
+					rawOff = entity.rawOff;
+					rawLen = entity.rawLen;
+				} else {
+					rawOff = columns.table.rawOff(line);
+					rawLen = columns.table.rawLen(line);
+				}
+				if (line >= 0) {
+					out.writeByte(columns.type(i).ordinal() | LINE);
+				} else {
+					out.writeByte(entity.getType().ordinal());
+				}
+				// zigzag coded, a range could start before the end of the
+				// previous one
+				writeNumber(out, ((rawOff - end) << 1) ^ ((rawOff - end) >> 31));
+				writeNumber(out, rawLen);
+				end = rawOff + rawLen;
+				if (line < 0) {
+					writeString(out, entity.getKey());
+					writeString(out, entity.getContent());
+				}
+			}
+		} finally {
+			out.close();
+		}
+		return tmpFile.renameTo(snapshotFile);
+	}
+
+	/**
+	 * Load the entities from the snapshot, if it was made from the current
+	 * version of the properties file: the size and the modification time are
+	 * checked. A file which can be read is never loaded from a snapshot.
+	 * 
+	 * @param entities
+	 *            The entities to be loaded.
+	 * @param sourceFile
+	 *            The properties file.
+	 * @param snapshotFile
+	 *            The snapshot file.
+	 * @return True if the entities were loaded from the snapshot.
+	 */
+	public static boolean read(Entities entities, File sourceFile,
+			File snapshotFile) {
+		if (sourceFile.canRead()) {
+			return false;
+		}
+		return read(entities, sourceFile.length(), sourceFile.lastModified(),
+				snapshotFile);
+	}
+
+	/**
+	 * Load the entities from the snapshot, if it was made from a file with
+	 * the specified size and modification time.
+	 */
+	static boolean read(Entities entities, long length, long lastModified,
+			File snapshotFile) {
+		if (!snapshotFile.isFile()) {
+			return false;
+		}
+		DataInputStream in = null;
+		entities.lock.writeLock().lock();
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(snapshotFile)));
+			if (in.readInt() != MAGIC || in.readLong() != length
+					|| in.readLong() != lastModified) {
+				return false;
+			}
+			Charset charset = Charset.forName(in.readUTF());
+			boolean bom = in.readBoolean();
+			int hash = in.readInt();
+			byte[] source = new byte[readNumber(in)];
+			in.readFully(source);
+			if (hash != hash(source, source.length)) {
+				return false;
+			}
+			int orphanOff = readNumber(in);
+			int orphanLen = readNumber(in);
+			entities.clear();
+			entities.charset = charset;
+			entities.bom = bom;
+			EntityColumns columns = entities.useColumns(source, source.length);
+			entities.orphanOff = orphanOff;
+			entities.orphanLen = orphanLen;
+			entities.lineSeparator = Entities.findLineSeparator(source, 0);
+			Entity entity;
+			int n = readNumber(in);
+			int flags, delta, rawOff, rawLen, end = 0;
+			for (int i = 0; i < n; i++) {
+				flags = in.readUnsignedByte();
+				delta = readNumber(in);
+				rawOff = end + ((delta >>> 1) ^ -(delta & 1));
+				rawLen = readNumber(in);
+				end = rawOff + rawLen;
+				if ((flags & LINE) != 0) {
+					entities.appendLine(TYPES[flags & ~LINE], rawOff, rawLen);
+				} else {
+					entity = new Entity(TYPES[flags], readString(in),
+							readString(in));
+					entity.setRaw(source, rawOff, rawLen);
+					entities.append(entity);
+				}
+			}
+			columns.trimToSize();
+			return true;
+		} catch (IOException e) {
+			entities.clear();
+			return false;
+		} catch (RuntimeException e) {
+			// a damaged snapshot
+			entities.clear();
+			return false;
+		} finally {
+			entities.lock.writeLock().unlock();
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write a positive number in 7 bit groups, the low group first and the
+	 * high bit set on all but the last one.
+	 */
+	private static void writeNumber(DataOutputStream out, int value)
+			throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readNumber(DataInputStream in) throws IOException {
+		int value = 0;
+		int b;
+		for (int shift = 0; shift < 32; shift += 7) {
+			b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed number");
+	}
+
+	private static void writeString(DataOutputStream out, String value)
+			throws IOException {
+		if (value == null) {
+			writeNumber(out, 0);
+		} else {
+			writeNumber(out, value.length() + 1);
+			out.writeChars(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int len = readNumber(in) - 1;
+		if (len < 0) {
+			return null;
+		}
+		char[] chars = new char[len];
+		for (int i = 0; i < len; i++) {
+			chars[i] = in.readChar();
+		}
+		return new String(chars);
+	}
+
+	private static int hash(byte[] bytes, int len) {
+		Adler32 adler = new Adler32();
+		adler.update(bytes, 0, len);
+		return (int) adler.getValue();
+	}
+}
@@ -18,6 +18,8 @@
  */
 package com.example.android.de_app_slicing.propeditor.properties;
 
+import java.util.List;
+
 /**
  * A replacement of java property entity
  * 
@@ -28,6 +30,43 @@ public class Entity implements Cloneable {
 	private Type type;
 	private String key;
 	private String content;
+	/**
+	 * The original bytes of the entity line, including the line break, as
+	 * they were loaded. They are dropped when the entity is changed.
+	 */
+	byte[] raw;
+	int rawOff;
+	int rawLen;
+	/**
+	 * The token of the only Entities which can change this object in place,
+	 * or null while no Entities claimed it. Any other Entities using it makes
+	 * a copy before changing it.
+	 */
+	Object owner;
+	/**
+	 * The last typed value parsed from the content.
+	 */
+	private volatile Typed typed;
+
+	/**
+	 * A parsed content, valid while the content is the same string.
+	 */
+	private static final class Typed {
+		static final int INT = 0;
+		static final int LONG = 1;
+		static final int BOOLEAN = 2;
+		static final int SIZE = 3;
+		static final int LIST = 4;
+		final String content;
+		final int kind;
+		final Object value;
+
+		Typed(String content, int kind, Object value) {
+			this.content = content;
+			this.kind = kind;
+			this.value = value;
+		}
+	}
 
 	public Entity(Type type, String content) {
 		this(type, null, content);
@@ -48,6 +87,9 @@ public class Entity implements Cloneable {
 	}
 
 	public void setType(Type type) {
+		if (this.type != type) {
+			raw = null;
+		}
 		this.type = type;
 	}
 
@@ -56,6 +98,9 @@ public class Entity implements Cloneable {
 	}
 
 	public void setKey(String key) {
+		if (!stringEquals(this.key, key)) {
+			raw = null;
+		}
 		this.key = key;
 	}
 
@@ -64,13 +109,183 @@ public class Entity implements Cloneable {
 	}
 
 	public void setContent(String content) {
+		if (!stringEquals(this.content, content)) {
+			raw = null;
+		}
+		this.content = content;
+	}
+
+	/**
+	 * Set the decoded key without touching the original bytes.
+	 */
+	void cacheKey(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * Set the decoded content without touching the original bytes.
+	 */
+	void cacheContent(String content) {
 		this.content = content;
 	}
 
+	/**
+	 * Set the original bytes of this entity.
+	 */
+	void setRaw(byte[] raw, int off, int len) {
+		this.raw = raw;
+		this.rawOff = off;
+		this.rawLen = len;
+	}
+
+	/**
+	 * Check if the specified object stands for this entity. The entities of
+	 * the loaded lines are built again when requested, so the same line can
+	 * have more objects.
+	 */
+	boolean sameAs(Entity other) {
+		return this == other;
+	}
+
+	/**
+	 * Check if the entity still has its original bytes, so it was not changed
+	 * since it was loaded.
+	 * 
+	 * @return True if the original bytes are available.
+	 */
+	public boolean isOriginal() {
+		return raw != null;
+	}
+
+	/**
+	 * Returns the content parsed by the specified kind, reusing the last
+	 * parsed value while the content is not changed.
+	 */
+	private Object typed(int kind) {
+		String content = getContent();
+		Typed t = typed;
+		if (t == null || t.kind != kind || t.content != content) {
+			Object value;
+			switch (kind) {
+			case Typed.INT:
+				value = PropertyValues.parseInt(content);
+				break;
+			case Typed.LONG:
+				value = PropertyValues.parseLong(content);
+				break;
+			case Typed.BOOLEAN:
+				value = PropertyValues.parseBoolean(content);
+				break;
+			case Typed.SIZE:
+				value = PropertyValues.parseSize(content);
+				break;
+			default:
+				value = PropertyValues.parseList(content);
+				break;
+			}
+			t = new Typed(content, kind, value);
+			typed = t;
+		}
+		return t.value;
+	}
+
+	/**
+	 * Returns the cached integer value of the content, or null if the content
+	 * is not an integer.
+	 */
+	Integer intValue() {
+		return (Integer) typed(Typed.INT);
+	}
+
+	/**
+	 * Returns the cached long value of the content, or null.
+	 */
+	Long longValue() {
+		return (Long) typed(Typed.LONG);
+	}
+
+	/**
+	 * Returns the cached boolean value of the content, or null.
+	 */
+	Boolean booleanValue() {
+		return (Boolean) typed(Typed.BOOLEAN);
+	}
+
+	/**
+	 * Returns the cached size value of the content, or null.
+	 */
+	Long sizeValue() {
+		return (Long) typed(Typed.SIZE);
+	}
+
+	/**
+	 * Returns the content as an integer.
+	 * 
+	 * @param defaultValue
+	 *            The value returned if the content is not an integer.
+	 * @return The integer value.
+	 */
+	public int getInt(int defaultValue) {
+		Integer value = intValue();
+		return value != null ? value : defaultValue;
+	}
+
+	/**
+	 * Returns the content as a long.
+	 * 
+	 * @param defaultValue
+	 *            The value returned if the content is not a number.
+	 * @return The long value.
+	 */
+	public long getLong(long defaultValue) {
+		Long value = longValue();
+		return value != null ? value : defaultValue;
+	}
+
+	/**
+	 * Returns the content as a boolean, see PropertyValues.parseBoolean().
+	 * 
+	 * @param defaultValue
+	 *            The value returned if the content is not a boolean.
+	 * @return The boolean value.
+	 */
+	public boolean getBoolean(boolean defaultValue) {
+		Boolean value = booleanValue();
+		return value != null ? value : defaultValue;
+	}
+
+	/**
+	 * Returns the content as a size in bytes, with an optional k, m or g
+	 * suffix.
+	 * 
+	 * @param defaultValue
+	 *            The value returned if the content is not a size.
+	 * @return The size in bytes.
+	 */
+	public long getSize(long defaultValue) {
+		Long value = sizeValue();
+		return value != null ? value : defaultValue;
+	}
+
+	/**
+	 * Returns the comma separated items of the content.
+	 * 
+	 * @return The trimmed items, read only.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> getList() {
+		return (List<String>) typed(Typed.LIST);
+	}
+
+	private static boolean stringEquals(String string1, String string2) {
+		return string1 == null ? string2 == null : string1.equals(string2);
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
+		String key = getKey();
 		result = prime * result + ((type == null) ? 0 : type.hashCode());
 		result = prime * result + ((key == null) ? 0 : key.hashCode());
 		return result;
@@ -82,15 +297,16 @@ public class Entity implements Cloneable {
 			return true;
 		if (obj == null)
 			return false;
-		if (getClass() != obj.getClass())
+		if (!(obj instanceof Entity))
 			return false;
 		Entity other = (Entity) obj;
 		if (type != other.type)
 			return false;
+		String key = getKey();
 		if (key == null) {
-			if (other.key != null)
+			if (other.getKey() != null)
 				return false;
-		} else if (!key.equals(other.key))
+		} else if (!key.equals(other.getKey()))
 			return false;
 		return true;
 	}
@@ -100,7 +316,8 @@ public class Entity implements Cloneable {
 	 */
 	@Override
 	protected Object clone() {
-		Entity en = new Entity(type, key, content);
+		Entity en = new Entity(type, getKey(), getContent());
+		en.setRaw(raw, rawOff, rawLen);
 		return en;
 	}
 
@@ -0,0 +1,89 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+/**
+ * A journal entry of the Entities: an entity added, updated or removed, with
+ * the key and content before and after the change.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class EntityChange {
+	public enum Kind {
+		ADD, UPDATE, REMOVE
+	}
+
+	private Kind kind;
+	private Entity entity;
+	/** Position on the entities list, used by ADD and REMOVE */
+	int position;
+	private String oldKey;
+	private String oldContent;
+	private String newKey;
+	private String newContent;
+	/** The number of changes recorded until this one, never reused */
+	int sequence;
+	/** The original bytes of the entity before an UPDATE */
+	byte[] oldRaw;
+	int oldRawOff;
+	int oldRawLen;
+
+	EntityChange(Kind kind, Entity entity, int position, String oldKey,
+			String oldContent, String newKey, String newContent) {
+		this.kind = kind;
+		this.entity = entity;
+		this.position = position;
+		this.oldKey = oldKey;
+		this.oldContent = oldContent;
+		this.newKey = newKey;
+		this.newContent = newContent;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public Entity getEntity() {
+		return entity;
+	}
+
+	/**
+	 * Replace the changed entity by its copy, made when it was shared.
+	 */
+	void setEntity(Entity entity) {
+		this.entity = entity;
+	}
+
+	public String getOldKey() {
+		return oldKey;
+	}
+
+	public String getOldContent() {
+		return oldContent;
+	}
+
+	public String getNewKey() {
+		return newKey;
+	}
+
+	public String getNewContent() {
+		return newContent;
+	}
+}
@@ -0,0 +1,266 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The entities list of loaded entities. Every element is either a line of a
+ * LineTable, whose entity is built on request, or an entity object added
+ * later or parsed from a line with escapes.
+ * <p>
+ * The line table is shared by the copies of the list, so a line is the same
+ * entity on all of them: its views are the same by Entity.sameAs().
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+final class EntityColumns extends AbstractList<Entity> implements
+		RandomAccess {
+	final LineTable table;
+	/**
+	 * The line number of every element or -1 for the entity objects.
+	 */
+	private int[] rows;
+	private Entity[] others;
+	private int size;
+
+	EntityColumns(LineTable table) {
+		this.table = table;
+		rows = new int[table.capacity()];
+		others = new Entity[rows.length];
+	}
+
+	/**
+	 * Build a list with the elements of the specified lists, in order, on
+	 * the table joining their tables.
+	 * 
+	 * @param table
+	 *            The table made from the tables of the parts.
+	 * @param parts
+	 *            The lists to be joined.
+	 */
+	EntityColumns(LineTable table, EntityColumns[] parts) {
+		this.table = table;
+		int total = 0;
+		for (EntityColumns part : parts) {
+			total += part.size;
+		}
+		rows = new int[total];
+		others = new Entity[total];
+		int lines = 0;
+		int row;
+		for (EntityColumns part : parts) {
+			for (int i = 0; i < part.size; i++) {
+				row = part.rows[i];
+				rows[size] = row < 0 ? -1 : row + lines;
+				others[size] = part.others[i];
+				size++;
+			}
+			lines += part.table.size();
+		}
+	}
+
+	private EntityColumns(EntityColumns list) {
+		table = list.table;
+		rows = Arrays.copyOf(list.rows, list.size + 16);
+		others = Arrays.copyOf(list.others, list.size + 16);
+		size = list.size;
+	}
+
+	/**
+	 * Returns a copy of this list, sharing the line table.
+	 */
+	EntityColumns copy() {
+		return new EntityColumns(this);
+	}
+
+	private void grow() {
+		if (size == rows.length) {
+			int capacity = Math.max(16, size * 2);
+			rows = Arrays.copyOf(rows, capacity);
+			others = Arrays.copyOf(others, capacity);
+		}
+	}
+
+	/**
+	 * Release the unused capacity, after loading.
+	 */
+	void trimToSize() {
+		rows = Arrays.copyOf(rows, size);
+		others = Arrays.copyOf(others, size);
+		table.trimToSize();
+	}
+
+	/**
+	 * Append a line of the table.
+	 */
+	void addLine(int line) {
+		grow();
+		rows[size] = line;
+		others[size] = null;
+		size++;
+		modCount++;
+	}
+
+	/**
+	 * Returns the element type without building its entity.
+	 */
+	Type type(int index) {
+		return rows[index] < 0 ? others[index].getType() : table
+				.type(rows[index]);
+	}
+
+	/**
+	 * Returns the entity object of the element, or null for a line of the
+	 * table, whose entity is a view which is never changed.
+	 */
+	Entity peek(int index) {
+		return rows[index] < 0 ? others[index] : null;
+	}
+
+	/**
+	 * Check if the specified entity is the element.
+	 */
+	boolean isAt(int index, Entity entity) {
+		return rows[index] < 0 ? others[index] == entity
+				: entity instanceof LazyEntity
+						&& ((LazyEntity) entity).isLine(table, rows[index]);
+	}
+
+	/**
+	 * Returns the key of the element, without building the entity of a line.
+	 */
+	String key(int index) {
+		return rows[index] < 0 ? others[index].getKey() : table
+				.key(rows[index]);
+	}
+
+	/**
+	 * Returns the hash code of the key of the element, zero for no key,
+	 * without decoding the key of a line.
+	 */
+	int keyHash(int index) {
+		if (rows[index] < 0) {
+			String key = others[index].getKey();
+			return key != null ? key.hashCode() : 0;
+		}
+		return table.keyHash(rows[index]);
+	}
+
+	/**
+	 * Check if the key or the content of the element is longer than the
+	 * specified number of characters, without decoding the ones of a line.
+	 */
+	boolean isLonger(int index, int keyMax, int contentMax) {
+		return rows[index] < 0 ? Entities.isLonger(others[index], keyMax,
+				contentMax) : table.isLonger(rows[index], keyMax, contentMax);
+	}
+
+	/**
+	 * Returns the line number of the element or -1 if it is an entity object.
+	 */
+	int line(int index) {
+		return rows[index];
+	}
+
+	/**
+	 * Extend the original bytes range of an element, used while loading.
+	 */
+	void extendRaw(int index, int len) {
+		if (rows[index] < 0) {
+			others[index].rawLen += len;
+		} else {
+			table.extendRaw(rows[index], len);
+		}
+	}
+
+	/**
+	 * Write the original bytes of an element which is a line of the table.
+	 * 
+	 * @return False if the element is an entity object, which should be
+	 *         written instead.
+	 */
+	boolean writeRaw(int index, PropertiesWriter pw) throws IOException {
+		int line = rows[index];
+		if (line < 0) {
+			return false;
+		}
+		pw.writeRaw(table.source, table.rawOff(line), table.rawLen(line));
+		return true;
+	}
+
+	@Override
+	public Entity get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+		return rows[index] < 0 ? others[index] : table.view(rows[index]);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Entity set(int index, Entity entity) {
+		Entity previous = get(index);
+		rows[index] = -1;
+		others[index] = entity;
+		return previous;
+	}
+
+	@Override
+	public void add(int index, Entity entity) {
+		if (index > size || index < 0) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+		grow();
+		System.arraycopy(rows, index, rows, index + 1, size - index);
+		System.arraycopy(others, index, others, index + 1, size - index);
+		rows[index] = -1;
+		others[index] = entity;
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public Entity remove(int index) {
+		Entity previous = get(index);
+		size--;
+		System.arraycopy(rows, index + 1, rows, index, size - index);
+		System.arraycopy(others, index + 1, others, index, size - index);
+		others[size] = null;
+		modCount++;
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(others, 0, size, null);
+		size = 0;
+		modCount++;
+	}
+}
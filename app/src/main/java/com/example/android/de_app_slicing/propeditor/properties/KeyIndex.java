@@ -0,0 +1,293 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The index of the property keys: for every key, the ordinal on the
+ * properties list of its first definition. The ordinals are kept in an open
+ * addressing table with the key hash codes, so the index holds no key
+ * strings and no entities; the keys are read again from the properties when
+ * two hash codes are equal. The keys defined more than once are counted on a
+ * map.
+ * <p>
+ * The ordinals are shifted when a property is inserted or removed before
+ * them, so the changes of the list cost a pass over the table.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+final class KeyIndex {
+	/**
+	 * The properties whose keys are indexed, by ordinal.
+	 */
+	interface Keys {
+		/**
+		 * Returns the number of properties.
+		 */
+		int count();
+
+		/**
+		 * Returns the key of the property, never null for an indexed one.
+		 */
+		String keyAt(int ordinal);
+
+		/**
+		 * Returns the hash code of the key of the property.
+		 */
+		int hashAt(int ordinal);
+	}
+
+	/**
+	 * The ordinal plus one of the first definition on every slot, or zero for
+	 * an empty slot.
+	 */
+	private int[] ordinals;
+	private int[] hashes;
+	private int size;
+	/**
+	 * Number of definitions for the keys defined more than once.
+	 */
+	private Map<String, Integer> duplicates;
+
+	/**
+	 * Build an empty index.
+	 * 
+	 * @param expected
+	 *            The number of keys expected.
+	 */
+	KeyIndex(int expected) {
+		int capacity = 16;
+		while (capacity * 3 / 4 < expected) {
+			capacity *= 2;
+		}
+		ordinals = new int[capacity];
+		hashes = new int[capacity];
+		duplicates = new HashMap<String, Integer>();
+	}
+
+	private KeyIndex(KeyIndex index) {
+		ordinals = index.ordinals.clone();
+		hashes = index.hashes.clone();
+		size = index.size;
+		duplicates = new HashMap<String, Integer>(index.duplicates);
+	}
+
+	/**
+	 * Returns a copy of this index.
+	 */
+	KeyIndex copy() {
+		return new KeyIndex(this);
+	}
+
+	/**
+	 * Spread the hash code bits, the keys often differ only at the end.
+	 */
+	private static int slot(int hash, int mask) {
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		return (hash ^ (hash >>> 7) ^ (hash >>> 4)) & mask;
+	}
+
+	/**
+	 * Find the slot of a key.
+	 * 
+	 * @return The slot or, if the key is not indexed, minus one minus the
+	 *         empty slot where it would be added.
+	 */
+	private int find(String key, int hash, Keys keys) {
+		int mask = ordinals.length - 1;
+		int i = slot(hash, mask);
+		while (ordinals[i] != 0) {
+			if (hashes[i] == hash && key.equals(keys.keyAt(ordinals[i] - 1))) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -i - 1;
+	}
+
+	/**
+	 * Returns the ordinal of the first definition of a key, or -1 if it is
+	 * not defined.
+	 */
+	int first(String key, Keys keys) {
+		int i = find(key, key.hashCode(), keys);
+		return i < 0 ? -1 : ordinals[i] - 1;
+	}
+
+	/**
+	 * Returns the number of definitions of a key.
+	 */
+	int definitions(String key, Keys keys) {
+		Integer definitions = duplicates.get(key);
+		return definitions != null ? definitions : first(key, keys) < 0 ? 0
+				: 1;
+	}
+
+	/**
+	 * Returns the number of definitions of the keys defined more than once,
+	 * read only.
+	 */
+	Map<String, Integer> duplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * Index a property, already on the properties list. The key is decoded
+	 * only if another key has the same hash code.
+	 * 
+	 * @param ordinal
+	 *            The property ordinal.
+	 * @param keys
+	 *            The properties.
+	 */
+	void add(int ordinal, Keys keys) {
+		int hash = keys.hashAt(ordinal);
+		int mask = ordinals.length - 1;
+		int i = slot(hash, mask);
+		String key = null;
+		while (ordinals[i] != 0) {
+			if (hashes[i] == hash) {
+				if (key == null) {
+					key = keys.keyAt(ordinal);
+				}
+				if (key.equals(keys.keyAt(ordinals[i] - 1))) {
+					Integer definitions = duplicates.get(key);
+					duplicates.put(key, definitions != null ? definitions + 1
+							: 2);
+					if (ordinal < ordinals[i] - 1) {
+						ordinals[i] = ordinal + 1;
+					}
+					return;
+				}
+			}
+			i = (i + 1) & mask;
+		}
+		ordinals[i] = ordinal + 1;
+		hashes[i] = hash;
+		if (++size > ordinals.length * 3 / 4) {
+			grow();
+		}
+	}
+
+	/**
+	 * Remove a property from the index, while it is still on the properties
+	 * list with the specified key. If the key is defined more than once the
+	 * next definition becomes the indexed one. The ordinals are not shifted.
+	 * 
+	 * @param ordinal
+	 *            The property ordinal.
+	 * @param key
+	 *            The property key.
+	 * @param keys
+	 *            The properties.
+	 */
+	void remove(int ordinal, String key, Keys keys) {
+		int hash = key.hashCode();
+		int i = find(key, hash, keys);
+		if (i < 0) {
+			return;
+		}
+		Integer definitions = duplicates.get(key);
+		if (definitions == null) {
+			if (ordinals[i] - 1 == ordinal) {
+				delete(i);
+			}
+			return;
+		}
+		if (definitions > 2) {
+			duplicates.put(key, definitions - 1);
+		} else {
+			duplicates.remove(key);
+		}
+		if (ordinals[i] - 1 == ordinal) {
+			int count = keys.count();
+			for (int next = ordinal + 1; next < count; next++) {
+				if (keys.hashAt(next) == hash && key.equals(keys.keyAt(next))) {
+					ordinals[i] = next + 1;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shift the ordinals after a property was inserted or removed.
+	 * 
+	 * @param from
+	 *            The first ordinal to be shifted.
+	 * @param delta
+	 *            One for an inserted property, minus one for a removed one.
+	 */
+	void shift(int from, int delta) {
+		for (int i = 0; i < ordinals.length; i++) {
+			if (ordinals[i] > from) {
+				ordinals[i] += delta;
+			}
+		}
+	}
+
+	/**
+	 * Empty a slot, moving back the next slots of the same cluster which
+	 * could not be reached anymore.
+	 */
+	private void delete(int slot) {
+		int mask = ordinals.length - 1;
+		int i = slot, j = slot, home;
+		while (true) {
+			ordinals[i] = 0;
+			while (true) {
+				j = (j + 1) & mask;
+				if (ordinals[j] == 0) {
+					size--;
+					return;
+				}
+				home = slot(hashes[j], mask);
+				// move it if its home slot is not between i and j
+				if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+					break;
+				}
+			}
+			ordinals[i] = ordinals[j];
+			hashes[i] = hashes[j];
+			i = j;
+		}
+	}
+
+	private void grow() {
+		int[] oldOrdinals = ordinals;
+		int[] oldHashes = hashes;
+		ordinals = new int[oldOrdinals.length * 2];
+		hashes = new int[ordinals.length];
+		int mask = ordinals.length - 1;
+		int j;
+		for (int i = 0; i < oldOrdinals.length; i++) {
+			if (oldOrdinals[i] != 0) {
+				j = slot(oldHashes[i], mask);
+				while (ordinals[j] != 0) {
+					j = (j + 1) & mask;
+				}
+				ordinals[j] = oldOrdinals[i];
+				hashes[j] = oldHashes[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A trie of the property keys split on dots, like ro.build.version.sdk. Every
+ * node keeps the number of properties defined under it, so the namespaces can
+ * be counted and browsed without scanning all the entities.
+ * <p>
+ * A prefix matches the keys starting with it: "ro.build." matches everything
+ * under the ro.build namespace, "ro.bu" matches also ro.build and ro.bus.
+ * The queries are synchronized with the updates made by the entities.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class KeyTrie {
+
+	static class Node {
+		TreeMap<String, Node> children;
+		List<Entity> entities;
+		int count;
+	}
+
+	private Node root = new Node();
+
+	/**
+	 * Add a property entity to the trie.
+	 */
+	synchronized void add(Entity entity) {
+		String key = entity.getKey();
+		if (key == null) {
+			return;
+		}
+		Node node = root;
+		Node child;
+		String segment;
+		int start = 0, end;
+		node.count++;
+		while (true) {
+			end = key.indexOf('.', start);
+			segment = end < 0 ? key.substring(start) : key.substring(start,
+					end);
+			if (node.children == null) {
+				node.children = new TreeMap<String, Node>();
+			}
+			child = node.children.get(segment);
+			if (child == null) {
+				child = new Node();
+				node.children.put(segment, child);
+			}
+			node = child;
+			node.count++;
+			if (end < 0) {
+				break;
+			}
+			start = end + 1;
+		}
+		if (node.entities == null) {
+			node.entities = new ArrayList<Entity>(1);
+		}
+		node.entities.add(entity);
+	}
+
+	/**
+	 * Remove a property entity from the trie. The key should be the one used
+	 * when the entity was added.
+	 */
+	synchronized void remove(Entity entity) {
+		String key = entity.getKey();
+		if (key == null) {
+			return;
+		}
+		List<Node> path = new ArrayList<Node>();
+		List<String> segments = new ArrayList<String>();
+		Node node = root;
+		int start = 0, end;
+		String segment;
+		path.add(node);
+		while (true) {
+			end = key.indexOf('.', start);
+			segment = end < 0 ? key.substring(start) : key.substring(start,
+					end);
+			node = node.children != null ? node.children.get(segment) : null;
+			if (node == null) {
+				return;
+			}
+			path.add(node);
+			segments.add(segment);
+			if (end < 0) {
+				break;
+			}
+			start = end + 1;
+		}
+		if (!removeInstance(node.entities, entity)) {
+			return;
+		}
+		for (int i = path.size() - 1; i >= 0; i--) {
+			node = path.get(i);
+			node.count--;
+			if (node.count == 0 && i > 0) {
+				path.get(i - 1).children.remove(segments.get(i - 1));
+			}
+		}
+	}
+
+	private static boolean removeInstance(List<Entity> list, Entity entity) {
+		if (list != null) {
+			for (int i = 0; i < list.size(); i++) {
+				if (list.get(i).sameAs(entity)) {
+					list.remove(i);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of properties with the key starting with the prefix.
+	 * 
+	 * @param prefix
+	 *            The key prefix.
+	 * @return The number of matching properties.
+	 */
+	public synchronized int count(String prefix) {
+		int result = 0;
+		for (Node node : match(prefix)) {
+			result += node.count;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns all the properties with the key starting with the prefix, sorted
+	 * by key segments.
+	 * 
+	 * @param prefix
+	 *            The key prefix.
+	 * @return The matching properties.
+	 */
+	public synchronized List<Entity> find(String prefix) {
+		List<Entity> result = new ArrayList<Entity>();
+		for (Node node : match(prefix)) {
+			collect(node, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the namespaces directly under the specified one with the number
+	 * of properties in each, like "build" and "product" for "ro".
+	 * 
+	 * @param namespace
+	 *            The namespace, without the trailing dot, or an empty string
+	 *            for the top level.
+	 * @return The sub namespaces and their properties counts, sorted.
+	 */
+	public synchronized Map<String, Integer> namespaces(String namespace) {
+		Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+		Node node = namespace.length() == 0 ? root : exact(namespace);
+		if (node != null && node.children != null) {
+			for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+				result.put(entry.getKey(), entry.getValue().count);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the node of a full key or namespace.
+	 */
+	private Node exact(String key) {
+		Node node = root;
+		int start = 0, end;
+		while (node != null) {
+			end = key.indexOf('.', start);
+			if (node.children == null) {
+				return null;
+			}
+			node = node.children.get(end < 0 ? key.substring(start) : key
+					.substring(start, end));
+			if (end < 0) {
+				break;
+			}
+			start = end + 1;
+		}
+		return node;
+	}
+
+	/**
+	 * Find the nodes of the keys starting with the prefix: the full segments
+	 * are followed exactly, the last partial segment matches the children
+	 * starting with it.
+	 */
+	private List<Node> match(String prefix) {
+		List<Node> result = new ArrayList<Node>();
+		int dot = prefix.lastIndexOf('.');
+		Node parent = dot < 0 ? root : exact(prefix.substring(0, dot));
+		if (parent != null && parent.children != null) {
+			String partial = prefix.substring(dot + 1);
+			if (partial.length() == 0) {
+				result.addAll(parent.children.values());
+			} else {
+				// the children sorted after the partial segment which start
+				// with it
+				for (Map.Entry<String, Node> entry : parent.children.tailMap(
+						partial).entrySet()) {
+					if (!entry.getKey().startsWith(partial)) {
+						break;
+					}
+					result.add(entry.getValue());
+				}
+			}
+		}
+		return result;
+	}
+
+	private static void collect(Node node, List<Entity> result) {
+		if (node.entities != null) {
+			result.addAll(node.entities);
+		}
+		if (node.children != null) {
+			for (Node child : node.children.values()) {
+				collect(child, result);
+			}
+		}
+	}
+}
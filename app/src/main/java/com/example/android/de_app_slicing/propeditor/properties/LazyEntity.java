@@ -0,0 +1,154 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.nio.charset.Charset;
+
+/**
+ * An entity which keeps only the offsets of the key and content in the loaded
+ * file bytes. The strings are built when they are first requested. It is
+ * used only for lines without escapes, so the bytes are the text in the
+ * charset of the file.
+ * The decoding is synchronized, the entities could be read by more threads.
+ * <p>
+ * The entity of a LineTable line is a view of it: it is never changed and
+ * all the views of the line stand for the same entity.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+class LazyEntity extends Entity {
+	private byte[] source;
+	private Charset charset;
+	private int keyOff;
+	private int keyLen;
+	private int contentOff;
+	private int contentLen;
+	private boolean keyLoaded;
+	private boolean contentLoaded;
+	/**
+	 * The table and the line of a view, or null and -1.
+	 */
+	private final LineTable table;
+	private final int line;
+
+	LazyEntity(Type type, byte[] source, Charset charset, int keyOff,
+			int keyLen, int contentOff, int contentLen) {
+		this(type, source, charset, keyOff, keyLen, contentOff, contentLen,
+				null, -1);
+	}
+
+	/**
+	 * Build the view of a line.
+	 */
+	LazyEntity(Type type, byte[] source, Charset charset, int keyOff,
+			int keyLen, int contentOff, int contentLen, LineTable table,
+			int line) {
+		super(type, null, null);
+		this.table = table;
+		this.line = line;
+		this.source = source;
+		this.charset = charset;
+		this.keyOff = keyOff;
+		this.keyLen = keyLen;
+		this.contentOff = contentOff;
+		this.contentLen = contentLen;
+	}
+
+	@Override
+	public synchronized String getKey() {
+		if (!keyLoaded) {
+			cacheKey(decode(keyOff, keyLen));
+			keyLoaded = true;
+			release();
+		}
+		return super.getKey();
+	}
+
+	@Override
+	public synchronized void setKey(String key) {
+		getKey();
+		super.setKey(key);
+		keyLoaded = true;
+		release();
+	}
+
+	@Override
+	public synchronized String getContent() {
+		if (!contentLoaded) {
+			cacheContent(decode(contentOff, contentLen));
+			contentLoaded = true;
+			release();
+		}
+		return super.getContent();
+	}
+
+	@Override
+	public synchronized void setContent(String content) {
+		getContent();
+		super.setContent(content);
+		contentLoaded = true;
+		release();
+	}
+
+	/**
+	 * Check if this entity is a view of the specified line.
+	 */
+	boolean isLine(LineTable table, int line) {
+		return this.table == table && this.line == line && table != null;
+	}
+
+	@Override
+	boolean sameAs(Entity other) {
+		return this == other
+				|| (table != null && other instanceof LazyEntity && ((LazyEntity) other)
+						.isLine(table, line));
+	}
+
+	/**
+	 * Build a string from the source bytes.
+	 */
+	private String decode(int off, int len) {
+		return len > 0 ? Charsets.newString(source, off, len, charset) : "";
+	}
+
+	/**
+	 * Drop the source reference when both strings are available.
+	 */
+	private void release() {
+		if (keyLoaded && contentLoaded) {
+			source = null;
+		}
+	}
+
+	/**
+	 * Clone an entity, the not decoded strings are still shared. The clone
+	 * of a view is not a view.
+	 */
+	@Override
+	protected synchronized Object clone() {
+		if (keyLoaded || contentLoaded) {
+			return super.clone();
+		}
+		LazyEntity en = new LazyEntity(getType(), source, charset, keyOff,
+				keyLen, contentOff, contentLen);
+		en.setRaw(raw, rawOff, rawLen);
+		return en;
+	}
+}
@@ -0,0 +1,376 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The lines of a loaded file kept in columns: the type and the range of the
+ * original bytes of every line, in primitive arrays. The entity of a line is
+ * a view built when it is requested; only the last requested views are kept,
+ * so the lines cost no objects at all once they were read. The views are
+ * never changed, the Entities replace them by a copy.
+ * <p>
+ * Only the lines without backslashes are stored here; the key and content
+ * are found again from the line bytes when they are requested.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+final class LineTable {
+	private static final Type[] TYPES = Type.values();
+	/**
+	 * The number of views kept, a power of two: a screen of the list and the
+	 * entities looked up around it.
+	 */
+	private static final int RECENT = 256;
+	final byte[] source;
+	/**
+	 * The charset of the source, ISO 8859-1 or UTF-8.
+	 */
+	final Charset charset;
+	private byte[] types;
+	private int[] rawOff;
+	private int[] rawLen;
+	/**
+	 * The last built views, by the low bits of the line number.
+	 */
+	private final LazyEntity[] recent = new LazyEntity[RECENT];
+	private int size;
+
+	/**
+	 * Build an empty table for the lines of a part of the source bytes.
+	 * 
+	 * @param source
+	 *            The loaded bytes.
+	 * @param charset
+	 *            The charset of the source.
+	 * @param length
+	 *            The number of bytes whose lines will be added.
+	 */
+	LineTable(byte[] source, Charset charset, int length) {
+		this.source = source;
+		this.charset = charset;
+		// about forty bytes per line on a build.prop
+		int capacity = Math.max(16, length / 32);
+		types = new byte[capacity];
+		rawOff = new int[capacity];
+		rawLen = new int[capacity];
+	}
+
+	/**
+	 * Build a table with the lines of the specified tables, in order. The
+	 * line n of the table i becomes the line n plus the size of the tables
+	 * before i.
+	 * 
+	 * @param source
+	 *            The source bytes of all the tables.
+	 * @param parts
+	 *            The tables to be joined, at least one.
+	 */
+	LineTable(byte[] source, LineTable[] parts) {
+		this.source = source;
+		charset = parts[0].charset;
+		int total = 0;
+		for (LineTable part : parts) {
+			total += part.size;
+		}
+		types = new byte[total];
+		rawOff = new int[total];
+		rawLen = new int[total];
+		for (LineTable part : parts) {
+			System.arraycopy(part.types, 0, types, size, part.size);
+			System.arraycopy(part.rawOff, 0, rawOff, size, part.size);
+			System.arraycopy(part.rawLen, 0, rawLen, size, part.size);
+			size += part.size;
+		}
+	}
+
+	/**
+	 * Returns the number of lines.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of lines which can be added without growing the
+	 * columns.
+	 */
+	int capacity() {
+		return types.length;
+	}
+
+	/**
+	 * Add a line while loading.
+	 * 
+	 * @return The line number.
+	 */
+	int add(Type type, int off, int len) {
+		if (size == types.length) {
+			int capacity = Math.max(16, size * 2);
+			types = Arrays.copyOf(types, capacity);
+			rawOff = Arrays.copyOf(rawOff, capacity);
+			rawLen = Arrays.copyOf(rawLen, capacity);
+		}
+		types[size] = (byte) type.ordinal();
+		rawOff[size] = off;
+		rawLen[size] = len;
+		return size++;
+	}
+
+	/**
+	 * Release the unused capacity, after loading.
+	 */
+	synchronized void trimToSize() {
+		types = Arrays.copyOf(types, size);
+		rawOff = Arrays.copyOf(rawOff, size);
+		rawLen = Arrays.copyOf(rawLen, size);
+	}
+
+	Type type(int line) {
+		return TYPES[types[line]];
+	}
+
+	int rawOff(int line) {
+		return rawOff[line];
+	}
+
+	int rawLen(int line) {
+		return rawLen[line];
+	}
+
+	/**
+	 * Extend the bytes range of a line, used while loading.
+	 */
+	synchronized void extendRaw(int line, int len) {
+		rawLen[line] += len;
+		if (recent[line & (RECENT - 1)] != null
+				&& recent[line & (RECENT - 1)].isLine(this, line)) {
+			recent[line & (RECENT - 1)] = null;
+		}
+	}
+
+	/**
+	 * Returns the entity of the line, the last built view if it is still
+	 * kept.
+	 */
+	synchronized Entity view(int line) {
+		LazyEntity entity = recent[line & (RECENT - 1)];
+		if (entity == null || !entity.isLine(this, line)) {
+			entity = build(line);
+			recent[line & (RECENT - 1)] = entity;
+		}
+		return entity;
+	}
+
+	private LazyEntity build(int line) {
+		int[] bounds = new int[3];
+		int start = bounds(line, bounds);
+		LazyEntity entity = new LazyEntity(TYPES[types[line]], source,
+				charset, start, bounds[0], start + bounds[1], bounds[2]
+						- bounds[1], this, line);
+		entity.setRaw(source, rawOff[line], rawLen[line]);
+		// the table is shared by the copies of the list, no Entities can
+		// change its entities in place
+		entity.owner = this;
+		return entity;
+	}
+
+	/**
+	 * Find the key and the content of a line.
+	 * 
+	 * @param line
+	 *            The line number.
+	 * @param bounds
+	 *            Receives the key length, the content start and the line
+	 *            length without the line terminator, relative to the returned
+	 *            start. All are zero for an empty line.
+	 * @return The first not blank byte of the line.
+	 */
+	private int bounds(int line, int[] bounds) {
+		int off = rawOff[line];
+		if (TYPES[types[line]] == Type.EMPTY) {
+			bounds[0] = bounds[1] = bounds[2] = 0;
+			return off;
+		}
+		int end = off + rawLen[line];
+		int start = off;
+		byte c;
+		while ((c = source[start]) == ' ' || c == '\t' || c == '\f') {
+			start++;
+		}
+		int pos = start;
+		while (pos < end && (c = source[pos]) != '\n' && c != '\r') {
+			pos++;
+		}
+		split(source, start, pos - start, bounds);
+		bounds[2] = pos - start;
+		return start;
+	}
+
+	/**
+	 * Returns the key of a line without building its entity.
+	 */
+	String key(int line) {
+		int[] bounds = new int[3];
+		int start = bounds(line, bounds);
+		return bounds[0] > 0 ? Charsets.newString(source, start, bounds[0],
+				charset) : "";
+	}
+
+	/**
+	 * Returns the hash code of the key of a line, the same as the one of the
+	 * key string, without decoding it.
+	 */
+	int keyHash(int line) {
+		int[] bounds = new int[3];
+		int start = bounds(line, bounds);
+		return hash(source, start, bounds[0]);
+	}
+
+	/**
+	 * Check if the key or the content of a line is longer than the specified
+	 * number of characters, without decoding them. A line whose bytes fit
+	 * both limits is not split, no charset decodes more characters than
+	 * bytes.
+	 * 
+	 * @param line
+	 *            The line number.
+	 * @param keyMax
+	 *            The maximum key length.
+	 * @param contentMax
+	 *            The maximum content length.
+	 * @return True if a limit is exceeded.
+	 */
+	boolean isLonger(int line, int keyMax, int contentMax) {
+		if (rawLen[line] <= Math.min(keyMax, contentMax)) {
+			return false;
+		}
+		int[] bounds = new int[3];
+		int start = bounds(line, bounds);
+		return length(source, start, bounds[0]) > keyMax
+				|| length(source, start + bounds[1], bounds[2] - bounds[1]) > contentMax;
+	}
+
+	/**
+	 * Returns the number of UTF-16 characters of the bytes decoded by the
+	 * table charset, like Charsets.newString() decodes them.
+	 */
+	private int length(byte[] bytes, int off, int len) {
+		if (!Charsets.UTF_8.equals(charset)) {
+			return len;
+		}
+		int length = 0;
+		int end = off + len;
+		int code;
+		while (off < end) {
+			if (bytes[off] >= 0
+					|| (code = Charsets.decode(bytes, off, end)) < 0) {
+				off++;
+				length++;
+			} else {
+				off += Charsets.sequenceLength(bytes[off]);
+				length += code >= 0x10000 ? 2 : 1;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Compute String.hashCode() of the bytes decoded by the table charset,
+	 * like Charsets.newString() decodes them.
+	 */
+	private int hash(byte[] bytes, int off, int len) {
+		boolean utf8 = Charsets.UTF_8.equals(charset);
+		int h = 0;
+		int end = off + len;
+		int code;
+		while (off < end) {
+			if (!utf8 || bytes[off] >= 0
+					|| (code = Charsets.decode(bytes, off, end)) < 0) {
+				h = 31 * h + (bytes[off] & 0xff);
+				off++;
+				continue;
+			}
+			off += Charsets.sequenceLength(bytes[off]);
+			if (code >= 0x10000) {
+				// the surrogate pair
+				code -= 0x10000;
+				h = 31 * h + (0xd800 + (code >> 10));
+				code = 0xdc00 + (code & 0x3ff);
+			}
+			h = 31 * h + code;
+		}
+		return h;
+	}
+
+	/**
+	 * Split a line without backslashes in key and value, with the same rules
+	 * as the PropertiesParser.
+	 * 
+	 * @param source
+	 *            The file bytes.
+	 * @param start
+	 *            The first not blank character of the line.
+	 * @param len
+	 *            The line length, without the line terminator.
+	 * @param bounds
+	 *            Receives the key length and the value start, relative to the
+	 *            line start.
+	 * @return True if it is a comment line.
+	 */
+	static boolean split(byte[] source, int start, int len, int[] bounds) {
+		int keyLen = 0;
+		int valueStart = len;
+		boolean hasSep = false;
+		boolean isCommentLine = false;
+		byte c;
+		while (keyLen < len) {
+			c = source[start + keyLen];
+			if (c == '#' || c == '!') {
+				isCommentLine = true;
+				valueStart = keyLen + 1;
+			} else if (c == '=' || c == ':') {
+				valueStart = keyLen + 1;
+				hasSep = true;
+				break;
+			} else if (c == ' ' || c == '\t' || c == '\f') {
+				valueStart = keyLen + 1;
+				break;
+			}
+			keyLen++;
+		}
+		while (valueStart < len) {
+			c = source[start + valueStart];
+			if (c != ' ' && c != '\t' && c != '\f') {
+				if (!hasSep && (c == '=' || c == ':')) {
+					hasSep = true;
+				} else {
+					break;
+				}
+			}
+			valueStart++;
+		}
+		bounds[0] = keyLen;
+		bounds[1] = valueStart;
+		return isCommentLine;
+	}
+}
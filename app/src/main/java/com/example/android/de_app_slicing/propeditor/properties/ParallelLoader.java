@@ -0,0 +1,295 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Parse the large files in parallel. The bytes are split in chunks at the
+ * ends of not blank lines which are not continued by a backslash, so every
+ * logical line is in one chunk. Every chunk is parsed in its own columns list, then the lists
+ * are joined in the file order.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+final class ParallelLoader {
+	/**
+	 * The smallest file parsed in parallel, about 25000 build.prop lines.
+	 * Below it, starting the threads costs more than what they save.
+	 */
+	static final int MIN_PARALLEL_SIZE = 1024 * 1024;
+	/**
+	 * The smallest chunk given to a thread.
+	 */
+	static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+	private static ExecutorService sharedExecutor;
+
+	/**
+	 * The lines of a chunk, parsed in their own entities.
+	 */
+	private static class Chunk implements Callable<Chunk> {
+		final byte[] source;
+		final int from;
+		final int to;
+		final Entities part = new Entities();
+		int orphan;
+
+		Chunk(byte[] source, Charset charset, int from, int to) {
+			this.source = source;
+			this.from = from;
+			this.to = to;
+			part.charset = charset;
+		}
+
+		@Override
+		public Chunk call() throws IOException {
+			part.useColumns(source, to - from);
+			orphan = part.loadLines(source, from, to);
+			return this;
+		}
+	}
+
+	private ParallelLoader() {
+	}
+
+	/**
+	 * Parse the bytes in parallel into the columns list of the target, if
+	 * they are large enough.
+	 * 
+	 * @param target
+	 *            The cleared entities to be loaded.
+	 * @param source
+	 *            The bytes to be parsed, in the charset of the target.
+	 * @param from
+	 *            The first byte to be parsed, after the byte order mark.
+	 * @param executor
+	 *            The executor running the chunks, or null for a shared one.
+	 * @return False if the bytes should be parsed sequentially, in which case
+	 *         the target is not changed.
+	 * @throws IOException
+	 */
+	static boolean load(Entities target, byte[] source, int from,
+			ExecutorService executor) throws IOException {
+		int length = source.length - from;
+		if (length < MIN_PARALLEL_SIZE) {
+			return false;
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		return load(target, source, from, executor, Math.min(threads, length
+				/ MIN_CHUNK_SIZE));
+	}
+
+	/**
+	 * Parse the bytes in the specified number of chunks.
+	 * 
+	 * @return False if the bytes could not be split, in which case the target
+	 *         is not changed.
+	 * @throws IOException
+	 */
+	static boolean load(Entities target, byte[] source, int from,
+			ExecutorService executor, int chunkCount) throws IOException {
+		int[] ends = split(source, from, chunkCount);
+		if (ends.length < 2) {
+			return false;
+		}
+		Chunk[] chunks = new Chunk[ends.length];
+		for (int i = 0; i < ends.length; i++) {
+			chunks[i] = new Chunk(source, target.charset, from, ends[i]);
+			from = ends[i];
+		}
+		if (executor == null) {
+			executor = getSharedExecutor();
+		}
+		List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+		try {
+			for (int i = 1; i < chunks.length; i++) {
+				futures.add(executor.submit(chunks[i]));
+			}
+			// the first chunk is parsed while the others are
+			chunks[0].call();
+			for (Future<Chunk> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Loading interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		} finally {
+			for (Future<Chunk> future : futures) {
+				future.cancel(true);
+			}
+		}
+		join(target, source, chunks);
+		return true;
+	}
+
+	/**
+	 * Find the chunk ends, near the same size each.
+	 * 
+	 * @return The end of every chunk, the last one is the source length.
+	 */
+	static int[] split(byte[] source, int from, int chunks) {
+		int[] ends = new int[Math.max(1, chunks)];
+		int n = 0;
+		int end = from;
+		int length = source.length - from;
+		for (int i = 1; i < chunks && end < source.length; i++) {
+			end = safeEnd(source, Math.max(end, from
+					+ (int) ((long) length * i / chunks)));
+			if (end < source.length) {
+				ends[n++] = end;
+			}
+		}
+		ends[n++] = source.length;
+		int[] result = new int[n];
+		System.arraycopy(ends, 0, result, 0, n);
+		return result;
+	}
+
+	/**
+	 * Find the first position, starting from the specified one, after a LF
+	 * which surely ends a logical line: the line before it has some not blank
+	 * character and is not continued by a backslash. A blank line is not
+	 * enough, since it is skipped when it follows a continued line with
+	 * nothing written yet.
+	 * 
+	 * @return The position, or the source length if there is none.
+	 */
+	static int safeEnd(byte[] source, int pos) {
+		int backslashes;
+		int i;
+		byte c;
+		for (; pos < source.length; pos++) {
+			if (source[pos] != '\n') {
+				continue;
+			}
+			i = pos - 1;
+			if (i >= 0 && source[i] == '\r') {
+				i--;
+			}
+			backslashes = 0;
+			while (i >= 0 && source[i] == '\\') {
+				backslashes++;
+				i--;
+			}
+			if ((backslashes & 1) != 0) {
+				continue;
+			}
+			if (backslashes > 0) {
+				return pos + 1;
+			}
+			while (i >= 0 && (c = source[i]) != '\n' && c != '\r') {
+				if (c != ' ' && c != '\t' && c != '\f') {
+					return pos + 1;
+				}
+				i--;
+			}
+		}
+		return source.length;
+	}
+
+	/**
+	 * Move the parsed chunks into the target, with the positions of their
+	 * elements moved after the elements of the chunks before.
+	 */
+	private static void join(Entities target, byte[] source, Chunk[] chunks) {
+		LineTable[] tables = new LineTable[chunks.length];
+		EntityColumns[] lists = new EntityColumns[chunks.length];
+		int count = 0;
+		for (int i = 0; i < chunks.length; i++) {
+			lists[i] = (EntityColumns) chunks[i].part.entities;
+			tables[i] = lists[i].table;
+			count += chunks[i].part.count;
+		}
+		EntityColumns columns = new EntityColumns(new LineTable(source,
+				tables), lists);
+		int[] propertyIndex = new int[count + 16];
+		int offset = 0;
+		int orphan = 0;
+		count = 0;
+		Entities part;
+		for (Chunk chunk : chunks) {
+			part = chunk.part;
+			if (chunk.orphan > 0) {
+				if (offset > 0) {
+					columns.extendRaw(offset - 1, chunk.orphan);
+				} else {
+					// the chunks before have no line, so these bytes follow
+					// their orphan bytes
+					orphan += chunk.orphan;
+				}
+			}
+			for (int i = 0; i < part.count; i++) {
+				propertyIndex[count++] = part.propertyIndex[i] + offset;
+			}
+			offset += part.entities.size();
+		}
+		target.source = source;
+		target.orphanOff = chunks[0].from;
+		target.orphanLen = orphan;
+		target.entities = columns;
+		target.propertyIndex = propertyIndex;
+		target.count = count;
+	}
+
+	/**
+	 * Returns the executor used when none is given: one daemon thread per
+	 * processor, created on the first parallel load.
+	 */
+	private static synchronized ExecutorService getSharedExecutor() {
+		if (sharedExecutor == null) {
+			sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime()
+					.availableProcessors(), new ThreadFactory() {
+				private int number;
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Properties Loader "
+							+ ++number);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sharedExecutor;
+	}
+}
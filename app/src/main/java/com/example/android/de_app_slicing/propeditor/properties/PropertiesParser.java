@@ -0,0 +1,630 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A streaming parser for properties files. Every logical line is reported to
+ * a listener as a property, a comment or an empty line, without building the
+ * entities list. The listener can stop the parsing at any event.
+ * <p>
+ * The bytes are decoded as ISO 8859-1 unless another charset is given. The
+ * UTF-8 bytes are decoded by the line reader itself, in bulk, with the ASCII
+ * bytes copied by a tight loop.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class PropertiesParser {
+
+	/**
+	 * Listener notified by the parser for each line, in file order.
+	 */
+	public interface Listener {
+		/**
+		 * A property line was parsed.
+		 * 
+		 * @return True to continue parsing, false to stop.
+		 */
+		boolean property(String key, String value);
+
+		/**
+		 * A comment line was parsed.
+		 * 
+		 * @return True to continue parsing, false to stop.
+		 */
+		boolean comment(String key, String value);
+
+		/**
+		 * An empty line was found.
+		 * 
+		 * @return True to continue parsing, false to stop.
+		 */
+		boolean emptyLine();
+	}
+
+	private Listener listener;
+	private Charset charset;
+	private boolean stopped;
+	private char[] convtBuf = new char[1024];
+	private LineReader bufferReader;
+
+	/**
+	 * Build a parser which notify the specified listener.
+	 * 
+	 * @param listener
+	 *            The listener for the parsed lines.
+	 */
+	public PropertiesParser(Listener listener) {
+		this(listener, Charsets.ISO_8859_1);
+	}
+
+	/**
+	 * Build a parser which notify the specified listener and decodes the
+	 * bytes with the specified charset.
+	 * 
+	 * @param listener
+	 *            The listener for the parsed lines.
+	 * @param charset
+	 *            The charset of the parsed bytes.
+	 */
+	public PropertiesParser(Listener listener, Charset charset) {
+		this.listener = listener;
+		this.charset = charset;
+	}
+
+	/**
+	 * Parse the properties from the specified InputStream. The bytes are
+	 * decoded with the charset of the parser.
+	 * 
+	 * @param inputStream
+	 *            The specified InputStream.
+	 * @throws IOException
+	 */
+	public void parse(InputStream inputStream) throws IOException {
+		if (Charsets.isByteParsable(charset)) {
+			parse(new LineReader(inputStream, Charsets.UTF_8.equals(charset)));
+		} else {
+			parse(new InputStreamReader(inputStream, charset));
+		}
+	}
+
+	/**
+	 * Parse the properties from the specified Reader.
+	 * 
+	 * @param reader
+	 *            The specified Reader.
+	 * @throws IOException
+	 */
+	public void parse(Reader reader) throws IOException {
+		parse(new LineReader(reader));
+	}
+
+	private void parse(LineReader lr) throws IOException {
+		int limit;
+		stopped = false;
+		while (!stopped && (limit = lr.readLine()) >= 0) {
+			if (!parseLine(lr, limit)) {
+				stopped = true;
+			}
+		}
+	}
+
+	/**
+	 * Parse one logical line starting at the buffer position, which should be
+	 * the first character of the line. The buffer position is moved after the
+	 * consumed line.
+	 * 
+	 * @param buffer
+	 *            The buffer to be read.
+	 * @return False if the listener requested to stop.
+	 * @throws IOException
+	 */
+	boolean parseLine(ByteBuffer buffer) throws IOException {
+		if (bufferReader == null || bufferReader.inBuffer != buffer) {
+			bufferReader = new LineReader(buffer, Charsets.UTF_8
+					.equals(charset));
+		}
+		boolean result = parseLine(bufferReader, bufferReader.readLine());
+		bufferReader.release();
+		return result;
+	}
+
+	/**
+	 * Check if the last parsing was stopped by the listener.
+	 * 
+	 * @return True if the listener stopped the parsing.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Find the first value defined for a key, stopping the parsing as soon as
+	 * it is found.
+	 * 
+	 * @param inputStream
+	 *            The properties InputStream.
+	 * @param key
+	 *            The property key.
+	 * @return The property value or null if the key is not defined.
+	 * @throws IOException
+	 */
+	public static String findProperty(InputStream inputStream, final String key)
+			throws IOException {
+		final String[] found = new String[1];
+		new PropertiesParser(new Listener() {
+			@Override
+			public boolean property(String k, String value) {
+				if (key.equals(k)) {
+					found[0] = value;
+					return false;
+				}
+				return true;
+			}
+
+			@Override
+			public boolean comment(String k, String value) {
+				return true;
+			}
+
+			@Override
+			public boolean emptyLine() {
+				return true;
+			}
+		}).parse(inputStream);
+		return found[0];
+	}
+
+	/**
+	 * Split the logical line read by the line reader in key and value and
+	 * notify the listener.
+	 * 
+	 * @return False if the listener requested to stop.
+	 */
+	boolean parseLine(LineReader lr, int limit) {
+		int keyLen;
+		int valueStart;
+		char c;
+		boolean hasSep;
+		boolean precedingBackslash;
+		boolean isCommentLine;
+
+		if (limit >= 0) {
+			c = 0;
+			keyLen = 0;
+			valueStart = limit;
+			hasSep = false;
+
+			precedingBackslash = false;
+			isCommentLine = false;
+			while (keyLen < limit) {
+				c = lr.lineBuf[keyLen];
+				// need check if escaped.
+				if (c == '#' || c == '!') {
+					isCommentLine = true;
+					valueStart = keyLen + 1;
+				} else if ((c == '=' || c == ':') && !precedingBackslash) {
+					valueStart = keyLen + 1;
+					hasSep = true;
+					break;
+				} else if ((c == ' ' || c == '\t' || c == '\f')
+						&& !precedingBackslash) {
+					valueStart = keyLen + 1;
+					break;
+				}
+				if (c == '\\') {
+					precedingBackslash = !precedingBackslash;
+				} else {
+					precedingBackslash = false;
+				}
+				keyLen++;
+			}
+			while (valueStart < limit) {
+				c = lr.lineBuf[valueStart];
+				if (c != ' ' && c != '\t' && c != '\f') {
+					if (!hasSep && (c == '=' || c == ':')) {
+						hasSep = true;
+					} else {
+						break;
+					}
+				}
+				valueStart++;
+			}
+			String key, value;
+			if (lr.hasBackslash) {
+				key = loadConvert(lr.lineBuf, 0, keyLen);
+				value = loadConvert(lr.lineBuf, valueStart, limit - valueStart);
+			} else {
+				// nothing to decode
+				key = new String(lr.lineBuf, 0, keyLen);
+				value = new String(lr.lineBuf, valueStart, limit - valueStart);
+			}
+			if (isCommentLine) {
+				return listener.comment(key, value);
+			}
+			return listener.property(key, value);
+		}
+		return true;
+	}
+
+	/**
+	 * Read in a "logical line" from an InputStream/Reader, skip all comment and
+	 * blank lines and filter out those leading whitespace characters ( , and )
+	 * from the beginning of a "natural line". Method returns the char length of
+	 * the "logical line" and stores the line in "lineBuf". The "hasBackslash"
+	 * flag tells if the line contains any backslash, so it needs decoding.
+	 * <p>
+	 * The UTF-8 bytes are decoded into the characters buffer when it is
+	 * filled. A malformed sequence is read as ISO 8859-1 characters, one per
+	 * byte, and a sequence cut by the end of the bytes buffer is decoded with
+	 * the next bytes.
+	 */
+	class LineReader {
+		byte[] inByteBuf;
+		char[] inCharBuf;
+		char[] lineBuf = new char[1024];
+		boolean hasBackslash;
+		int inLimit = 0;
+		int inOff = 0;
+		InputStream inStream;
+		Reader reader;
+		ByteBuffer inBuffer;
+		/**
+		 * True if every byte is read as an ISO 8859-1 character.
+		 */
+		boolean isoBytes;
+		boolean utf8;
+		/**
+		 * The bytes decoded by the last fill and the bytes after them, the
+		 * start of a sequence decoded by the next fill.
+		 */
+		int decodedEnd;
+		int pending;
+
+		public LineReader(InputStream inStream, boolean utf8) {
+			this.inStream = inStream;
+			inByteBuf = new byte[8192];
+			setUtf8(utf8);
+		}
+
+		public LineReader(ByteBuffer inBuffer, boolean utf8) {
+			this.inBuffer = inBuffer;
+			inByteBuf = new byte[1024];
+			setUtf8(utf8);
+		}
+
+		public LineReader(Reader reader) {
+			this.reader = reader;
+			inCharBuf = new char[8192];
+		}
+
+		private void setUtf8(boolean utf8) {
+			this.utf8 = utf8;
+			isoBytes = !utf8;
+			if (utf8) {
+				inCharBuf = new char[inByteBuf.length];
+			}
+		}
+
+		/**
+		 * Read the next chunk of input.
+		 */
+		private int fill() throws IOException {
+			if (utf8) {
+				return fillUtf8();
+			}
+			if (inBuffer != null) {
+				int n = Math.min(inByteBuf.length, inBuffer.remaining());
+				inBuffer.get(inByteBuf, 0, n);
+				return n > 0 ? n : -1;
+			}
+			return (inStream == null) ? reader.read(inCharBuf) : inStream
+					.read(inByteBuf);
+		}
+
+		/**
+		 * Read the next bytes and decode them as UTF-8 into the characters
+		 * buffer.
+		 * 
+		 * @return The number of characters or -1 at the end of input.
+		 */
+		private int fillUtf8() throws IOException {
+			int out = 0;
+			while (out == 0) {
+				System.arraycopy(inByteBuf, decodedEnd, inByteBuf, 0, pending);
+				int n;
+				if (inBuffer != null) {
+					n = Math.min(inByteBuf.length - pending, inBuffer
+							.remaining());
+					inBuffer.get(inByteBuf, pending, n);
+				} else {
+					n = inStream.read(inByteBuf, pending, inByteBuf.length
+							- pending);
+				}
+				boolean eof = n <= 0;
+				int end = eof ? pending : pending + n;
+				if (end == 0) {
+					decodedEnd = pending = 0;
+					return -1;
+				}
+				byte[] bytes = inByteBuf;
+				char[] chars = inCharBuf;
+				int i = 0;
+				int b, len, code;
+				while (i < end) {
+					b = bytes[i];
+					if (b >= 0) {
+						chars[out++] = (char) b;
+						i++;
+						continue;
+					}
+					len = Charsets.sequenceLength(b);
+					if (len > 0 && i + len > end && !eof) {
+						// completed by the next bytes
+						break;
+					}
+					code = Charsets.decode(bytes, i, end);
+					if (code < 0) {
+						chars[out++] = (char) (b & 0xff);
+						i++;
+					} else {
+						out += Character.toChars(code, chars, out);
+						i += len;
+					}
+				}
+				decodedEnd = i;
+				pending = end - i;
+			}
+			return out;
+		}
+
+		/**
+		 * Give back to the input buffer the bytes read but not consumed.
+		 */
+		void release() {
+			if (inBuffer != null && utf8) {
+				int unread = decodedEnd + pending - utf8Length(inOff);
+				inBuffer.position(inBuffer.position() - unread);
+				decodedEnd = pending = 0;
+			} else if (inBuffer != null && inOff < inLimit) {
+				inBuffer.position(inBuffer.position() - (inLimit - inOff));
+			}
+			inOff = inLimit = 0;
+		}
+
+		/**
+		 * Returns the number of bytes decoded by the last fill into the
+		 * specified number of characters.
+		 */
+		private int utf8Length(int chars) {
+			int i = 0;
+			int code;
+			while (chars > 0 && i < decodedEnd) {
+				if (inByteBuf[i] >= 0) {
+					i++;
+					chars--;
+				} else if ((code = Charsets.decode(inByteBuf, i, decodedEnd)) < 0) {
+					i++;
+					chars--;
+				} else {
+					i += Charsets.sequenceLength(inByteBuf[i]);
+					chars -= Character.charCount(code);
+				}
+			}
+			return i;
+		}
+
+		int readLine() throws IOException {
+			int len = 0;
+			char c = 0;
+
+			boolean skipWhiteSpace = true;
+			boolean isNewLine = true;
+			boolean appendedLineBegin = false;
+			boolean precedingBackslash = false;
+			boolean skipLF = false;
+			hasBackslash = false;
+
+			while (true) {
+				if (inOff >= inLimit) {
+					inLimit = fill();
+					inOff = 0;
+					if (inLimit <= 0) {
+						if (len == 0) {
+							return -1;
+						}
+						if (precedingBackslash) {
+							// nothing to escape or continue
+							len--;
+						}
+						return len;
+					}
+				}
+				if (isoBytes) {
+					// The line below is equivalent to calling a
+					// ISO8859-1 decoder.
+					c = (char) (0xff & inByteBuf[inOff++]);
+				} else {
+					c = inCharBuf[inOff++];
+				}
+				if (skipLF) {
+					skipLF = false;
+					if (c == '\n') {
+						continue;
+					}
+				}
+				if (skipWhiteSpace) {
+					if (c == ' ' || c == '\t' || c == '\f') {
+						continue;
+					}
+					if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+						if (!listener.emptyLine()) {
+							stopped = true;
+							return -1;
+						}
+						continue;
+					}
+					skipWhiteSpace = false;
+					appendedLineBegin = false;
+				}
+				if (isNewLine) {
+					isNewLine = false;
+				}
+
+				if (c != '\n' && c != '\r') {
+					lineBuf[len++] = c;
+					if (len == lineBuf.length) {
+						int newLength = lineBuf.length * 2;
+						if (newLength < 0) {
+							newLength = Integer.MAX_VALUE;
+						}
+						char[] buf = new char[newLength];
+						System.arraycopy(lineBuf, 0, buf, 0, lineBuf.length);
+						lineBuf = buf;
+					}
+					// flip the preceding backslash flag
+					if (c == '\\') {
+						precedingBackslash = !precedingBackslash;
+						hasBackslash = true;
+					} else {
+						precedingBackslash = false;
+					}
+				} else {
+					// reached EOL
+					if (len == 0) {
+						isNewLine = true;
+						skipWhiteSpace = true;
+						len = 0;
+						continue;
+					}
+					if (inOff >= inLimit) {
+						inLimit = fill();
+						inOff = 0;
+						if (inLimit <= 0) {
+							if (precedingBackslash) {
+								len--;
+							}
+							return len;
+						}
+					}
+					if (precedingBackslash) {
+						len -= 1;
+						// skip the leading whitespace characters in following
+						// line
+						skipWhiteSpace = true;
+						appendedLineBegin = true;
+						precedingBackslash = false;
+						if (c == '\r') {
+							skipLF = true;
+						}
+					} else {
+						return len;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converts encoded &#92;uxxxx to unicode chars and changes special saved
+	 * chars to their original forms
+	 */
+	private String loadConvert(char[] in, int off, int len) {
+		if (convtBuf.length < len) {
+			int newLen = len * 2;
+			if (newLen < 0) {
+				newLen = Integer.MAX_VALUE;
+			}
+			convtBuf = new char[newLen];
+		}
+		char aChar;
+		char[] out = convtBuf;
+		int outLen = 0;
+		int end = off + len;
+
+		while (off < end) {
+			aChar = in[off++];
+			if (aChar == '\\') {
+				aChar = in[off++];
+				if (aChar == 'u') {
+					// Read the xxxx
+					int value = 0;
+					for (int i = 0; i < 4; i++) {
+						aChar = in[off++];
+						switch (aChar) {
+						case '0':
+						case '1':
+						case '2':
+						case '3':
+						case '4':
+						case '5':
+						case '6':
+						case '7':
+						case '8':
+						case '9':
+							value = (value << 4) + aChar - '0';
+							break;
+						case 'a':
+						case 'b':
+						case 'c':
+						case 'd':
+						case 'e':
+						case 'f':
+							value = (value << 4) + 10 + aChar - 'a';
+							break;
+						case 'A':
+						case 'B':
+						case 'C':
+						case 'D':
+						case 'E':
+						case 'F':
+							value = (value << 4) + 10 + aChar - 'A';
+							break;
+						default:
+							throw new IllegalArgumentException(
+									"Malformed \\uxxxx encoding for character: \"" + aChar +
+											"\", out: \"" + out + "\"");
+						}
+					}
+					out[outLen++] = (char) value;
+				} else {
+					if (aChar == 't')
+						aChar = '\t';
+					else if (aChar == 'r')
+						aChar = '\r';
+					else if (aChar == 'n')
+						aChar = '\n';
+					else if (aChar == 'f')
+						aChar = '\f';
+					out[outLen++] = aChar;
+				}
+			} else {
+				out[outLen++] = aChar;
+			}
+		}
+		return new String(out, 0, outLen);
+	}
+}
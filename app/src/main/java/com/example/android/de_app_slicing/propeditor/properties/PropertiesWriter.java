@@ -0,0 +1,426 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Write the properties lines to a character or a byte stream. All the lines
+ * are escaped directly into one reusable buffer, so the number of
+ * allocations does not depend on the number of lines.
+ * <p>
+ * The ISO 8859-1 and UTF-8 byte streams are encoded directly into the bytes
+ * buffer, where the original bytes of the unchanged lines are copied as they
+ * are if the loaded file had the same charset. The other charsets are
+ * encoded by an OutputStreamWriter.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+class PropertiesWriter {
+	/** A table of hex digits */
+	private static final char[] hexDigit = { '0', '1', '2', '3', '4', '5', '6',
+			'7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private Writer writer;
+	private OutputStream outStream;
+	private char[] buf;
+	private int len;
+	private byte[] byteBuf;
+	private char[] commentBuf = new char[256];
+	private char lastChar = '\n';
+	/**
+	 * The characters above this limit are written as &#92;uxxxx.
+	 */
+	private char unicodeLimit;
+	private boolean utf8;
+	/**
+	 * A high surrogate waiting for its low surrogate, to be encoded as one
+	 * UTF-8 sequence.
+	 */
+	private char highSurrogate;
+	/**
+	 * The charset of the original bytes of the lines.
+	 */
+	private Charset rawCharset = Charsets.ISO_8859_1;
+	/**
+	 * The charset of the byte stream, null for a character stream.
+	 */
+	private Charset charset;
+	/**
+	 * True if the original bytes are copied without decoding.
+	 */
+	private boolean rawBytes;
+	/**
+	 * The line break written after the new lines.
+	 */
+	private String lineSeparator = System.getProperty("line.separator");
+
+	/**
+	 * Writer for a character stream, no character is unicode escaped.
+	 * 
+	 * @param writer
+	 *            An output character stream writer.
+	 */
+	PropertiesWriter(Writer writer) {
+		this.writer = writer;
+		buf = new char[BUFFER_SIZE];
+		unicodeLimit = Character.MAX_VALUE;
+	}
+
+	/**
+	 * Writer for a byte stream. The ISO 8859-1 characters are written as
+	 * bytes and the ones outside of it are unicode escaped. The UTF-8 and the
+	 * other charsets can encode every character, so nothing is escaped.
+	 * 
+	 * @param outStream
+	 *            An output byte stream.
+	 * @param charset
+	 *            The charset of the byte stream.
+	 */
+	PropertiesWriter(OutputStream outStream, Charset charset) {
+		if (Charsets.isByteParsable(charset)) {
+			this.outStream = outStream;
+			this.charset = charset;
+			byteBuf = new byte[BUFFER_SIZE];
+			utf8 = Charsets.UTF_8.equals(charset);
+			unicodeLimit = utf8 ? Character.MAX_VALUE : '\u00ff';
+		} else {
+			writer = new OutputStreamWriter(outStream, charset);
+			buf = new char[BUFFER_SIZE];
+			unicodeLimit = Character.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Set the charset of the original bytes of the lines, ISO 8859-1 by
+	 * default. If it is the charset of the byte stream, the bytes are copied.
+	 */
+	void setRawCharset(Charset rawCharset) {
+		this.rawCharset = rawCharset;
+		rawBytes = rawCharset.equals(charset);
+	}
+
+	/**
+	 * Set the line break written after the new lines, the system line
+	 * separator by default. It should be the one of the original lines, so a
+	 * changed file does not mix two kinds of line breaks.
+	 */
+	void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Write the UTF-8 byte order mark, if the stream is UTF-8.
+	 */
+	void writeBom() throws IOException {
+		if (utf8) {
+			if (len + 3 > byteBuf.length) {
+				flushBuffer();
+			}
+			byteBuf[len++] = (byte) 0xef;
+			byteBuf[len++] = (byte) 0xbb;
+			byteBuf[len++] = (byte) 0xbf;
+		}
+	}
+
+	/**
+	 * Check if the original bytes of the lines can be written: they can not
+	 * when a character decoded from them could not be encoded.
+	 * 
+	 * @return False if the lines should be written from their entities.
+	 */
+	boolean canWriteRaw() {
+		return rawBytes || writer != null || utf8;
+	}
+
+	/**
+	 * Write a property line.
+	 */
+	void writeProperty(String key, String content) throws IOException {
+		saveConvert(key, true);
+		write('=');
+		saveConvert(content, false);
+		newLine();
+	}
+
+	/**
+	 * Write the original bytes of a line, copied if the stream has their
+	 * charset, otherwise decoded like the loader does.
+	 */
+	void writeRaw(byte[] raw, int off, int len) throws IOException {
+		if (rawBytes) {
+			if (len == 0) {
+				return;
+			}
+			if (len > byteBuf.length - this.len) {
+				flushBuffer();
+			}
+			if (len > byteBuf.length) {
+				outStream.write(raw, off, len);
+			} else {
+				System.arraycopy(raw, off, byteBuf, this.len, len);
+				this.len += len;
+			}
+			lastChar = (char) (0xff & raw[off + len - 1]);
+		} else if (Charsets.ISO_8859_1.equals(rawCharset)) {
+			for (int i = off; i < off + len; i++) {
+				write((char) (0xff & raw[i]));
+			}
+		} else {
+			String text = Charsets.newString(raw, off, len, rawCharset);
+			for (int i = 0; i < text.length(); i++) {
+				write(text.charAt(i));
+			}
+		}
+	}
+
+	/**
+	 * Terminate the current line if the last written bytes did not, like an
+	 * original last line without line break followed by a new line.
+	 */
+	void endLine() throws IOException {
+		if (lastChar != '\n' && lastChar != '\r') {
+			newLine();
+		}
+	}
+
+	/**
+	 * Write an empty line.
+	 */
+	void writeEmpty() throws IOException {
+		write(' ');
+		newLine();
+	}
+
+	/**
+	 * Write the comment to the file.
+	 */
+	void writeComment(String key, String content) throws IOException {
+		int keyLen = key != null ? key.length() : 4;
+		int commentLen = keyLen + 1 + (content != null ? content.length() : 4);
+		if (commentBuf.length < commentLen) {
+			commentBuf = new char[commentLen * 2];
+		}
+		// same text as key + " " + content, without building it
+		if (key != null) {
+			key.getChars(0, keyLen, commentBuf, 0);
+		} else {
+			"null".getChars(0, 4, commentBuf, 0);
+		}
+		commentBuf[keyLen] = ' ';
+		if (content != null) {
+			content.getChars(0, content.length(), commentBuf, keyLen + 1);
+		} else {
+			"null".getChars(0, 4, commentBuf, keyLen + 1);
+		}
+		writeComments(commentBuf, commentLen);
+	}
+
+	private void writeComments(char[] comments, int len) throws IOException {
+		int current = 0;
+		if (comments[0] != '#') {
+			write('#');
+		}
+		while (current < len) {
+			char c = comments[current];
+			if (c > unicodeLimit || c == '\n' || c == '\r') {
+				if (c > unicodeLimit) {
+					writeUnicode(c);
+				} else {
+					newLine();
+					if (c == '\r' && current != len - 1
+							&& comments[current + 1] == '\n') {
+						current++;
+					}
+					if (current == len - 1
+							|| (comments[current + 1] != '#' && comments[current + 1] != '!'))
+						write('#');
+				}
+			} else {
+				write(c);
+			}
+			current++;
+		}
+		newLine();
+	}
+
+	/**
+	 * Converts unicodes to encoded &#92;uxxxx and escapes special characters
+	 * with a preceding slash
+	 */
+	private void saveConvert(String theString, boolean escapeSpace)
+			throws IOException {
+		int len = theString.length();
+		for (int x = 0; x < len; x++) {
+			char aChar = theString.charAt(x);
+			// Handle common case first, selecting largest block that
+			// avoids the specials below
+			if ((aChar > 61) && (aChar < 127)) {
+				if (aChar == '\\') {
+					write('\\');
+					write('\\');
+					continue;
+				}
+				write(aChar);
+				continue;
+			}
+			switch (aChar) {
+			case ' ':
+				if (x == 0 || escapeSpace)
+					write('\\');
+				write(' ');
+				break;
+			case '\t':
+				write('\\');
+				write('t');
+				break;
+			case '\n':
+				write('\\');
+				write('n');
+				break;
+			case '\r':
+				write('\\');
+				write('r');
+				break;
+			case '\f':
+				write('\\');
+				write('f');
+				break;
+			default:
+				if (aChar > unicodeLimit) {
+					writeUnicode(aChar);
+				} else {
+					write(aChar);
+				}
+			}
+		}
+	}
+
+	private void writeUnicode(char c) throws IOException {
+		write('\\');
+		write('u');
+		write(toHex((c >> 12) & 0xF));
+		write(toHex((c >> 8) & 0xF));
+		write(toHex((c >> 4) & 0xF));
+		write(toHex(c & 0xF));
+	}
+
+	/**
+	 * Convert a nibble to a hex character
+	 * 
+	 * @param nibble
+	 *            the nibble to convert.
+	 */
+	private static char toHex(int nibble) {
+		return hexDigit[(nibble & 0xF)];
+	}
+
+	private void newLine() throws IOException {
+		for (int i = 0; i < lineSeparator.length(); i++) {
+			write(lineSeparator.charAt(i));
+		}
+	}
+
+	private void write(char c) throws IOException {
+		lastChar = c;
+		if (writer != null) {
+			if (len == buf.length) {
+				flushBuffer();
+			}
+			buf[len++] = c;
+		} else if (!utf8 || (c < 0x80 && highSurrogate == 0)) {
+			if (len == byteBuf.length) {
+				flushBuffer();
+			}
+			byteBuf[len++] = (byte) c;
+		} else {
+			writeUtf8(c);
+		}
+	}
+
+	/**
+	 * Encode a character as UTF-8, used for the characters above 0x7F and
+	 * the ones after a high surrogate. A surrogate pair is one sequence, a
+	 * lone surrogate is written as '?' like the charset encoders do.
+	 */
+	private void writeUtf8(char c) throws IOException {
+		if (len + 4 > byteBuf.length) {
+			flushBuffer();
+		}
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (c >= '\udc00' && c <= '\udfff') {
+				int code = Character.toCodePoint(high, c);
+				byteBuf[len++] = (byte) (0xf0 | (code >> 18));
+				byteBuf[len++] = (byte) (0x80 | ((code >> 12) & 0x3f));
+				byteBuf[len++] = (byte) (0x80 | ((code >> 6) & 0x3f));
+				byteBuf[len++] = (byte) (0x80 | (code & 0x3f));
+				return;
+			}
+			byteBuf[len++] = '?';
+			write(c);
+			return;
+		}
+		if (c < 0x800) {
+			byteBuf[len++] = (byte) (0xc0 | (c >> 6));
+			byteBuf[len++] = (byte) (0x80 | (c & 0x3f));
+		} else if (c >= '\ud800' && c <= '\udbff') {
+			highSurrogate = c;
+		} else if (c >= '\udc00' && c <= '\udfff') {
+			byteBuf[len++] = '?';
+		} else {
+			byteBuf[len++] = (byte) (0xe0 | (c >> 12));
+			byteBuf[len++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+			byteBuf[len++] = (byte) (0x80 | (c & 0x3f));
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (writer != null) {
+			writer.write(buf, 0, len);
+		} else {
+			outStream.write(byteBuf, 0, len);
+		}
+		len = 0;
+	}
+
+	/**
+	 * Write the buffered characters and flush the stream.
+	 */
+	void flush() throws IOException {
+		if (highSurrogate != 0) {
+			highSurrogate = 0;
+			write('?');
+		}
+		flushBuffer();
+		if (writer != null) {
+			writer.flush();
+		} else {
+			outStream.flush();
+		}
+	}
+}
@@ -0,0 +1,341 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The properties defined by several files, like /default.prop,
+ * /system/build.prop and /vendor/build.prop. Every file is a layer with its
+ * own entities. The effective definition of a key follows the property
+ * service, which reads the layers in order and every layer from its first
+ * line: a read only key (ro.*) keeps the first definition, like
+ * Entities.get() does inside one file, and any other key takes the last one.
+ * <p>
+ * The changes should be made through this class, so they go to the layer
+ * owning the property and the resolved view is kept up to date.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class PropertyLayers {
+
+	/**
+	 * A properties file and its entities.
+	 */
+	public static class Layer {
+		private final String path;
+		private final Entities entities;
+
+		Layer(String path, Entities entities) {
+			this.path = path;
+			this.entities = entities;
+		}
+
+		/**
+		 * Returns the full path of the properties file.
+		 * 
+		 * @return The file path.
+		 */
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * Returns the entities loaded from the file.
+		 * 
+		 * @return The layer entities.
+		 */
+		public Entities getEntities() {
+			return entities;
+		}
+
+		/**
+		 * Check if the layer was changed since it was loaded or saved.
+		 * 
+		 * @return True if the layer should be saved.
+		 */
+		public boolean isModified() {
+			return entities.isModified();
+		}
+	}
+
+	private List<Layer> layers;
+	private Map<String, Entity> resolved;
+	private Map<Entity, Layer> sources;
+	/**
+	 * The save point of every layer when the view was resolved, so a change
+	 * made directly on the entities of a layer is noticed.
+	 */
+	private long[] resolvedAt;
+
+	/**
+	 * Build the layers for the specified files, in the order they are read at
+	 * boot.
+	 * 
+	 * @param paths
+	 *            The properties files paths.
+	 */
+	public PropertyLayers(String... paths) {
+		layers = new ArrayList<Layer>(paths.length);
+		for (String path : paths) {
+			layers.add(new Layer(path, new Entities()));
+		}
+	}
+
+	/**
+	 * Use the specified entities for the layer of a file, like the entities
+	 * edited by the properties list for /system/build.prop.
+	 * 
+	 * @param path
+	 *            The file path, one of the layers paths.
+	 * @param entities
+	 *            The entities of the file.
+	 */
+	public void setEntities(String path, Entities entities) {
+		for (int i = 0; i < layers.size(); i++) {
+			if (layers.get(i).path.equals(path)) {
+				layers.set(i, new Layer(path, entities));
+				invalidate();
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Not a layer: " + path);
+	}
+
+	/**
+	 * Returns the layers, in the order they are read at boot.
+	 * 
+	 * @return The layers list.
+	 */
+	public List<Layer> getLayers() {
+		return Collections.unmodifiableList(layers);
+	}
+
+	/**
+	 * Returns the layer of the specified file.
+	 * 
+	 * @param path
+	 *            The file path.
+	 * @return The layer or null if the file is not part of these layers.
+	 */
+	public Layer getLayer(String path) {
+		for (Layer layer : layers) {
+			if (layer.path.equals(path)) {
+				return layer;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the layers which were changed and should be saved.
+	 * 
+	 * @return The changed layers.
+	 */
+	public List<Layer> getModifiedLayers() {
+		List<Layer> result = new ArrayList<Layer>();
+		for (Layer layer : layers) {
+			if (layer.isModified()) {
+				result.add(layer);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Drop the resolved view. It should be called after the layers entities
+	 * were loaded; the changes made directly on them are noticed.
+	 */
+	public void invalidate() {
+		resolved = null;
+		sources = null;
+	}
+
+	/**
+	 * Check if a key keeps its first definition.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @return True for the read only keys, which can not be set again.
+	 */
+	static boolean isReadOnly(String key) {
+		return key != null && key.startsWith("ro.");
+	}
+
+	/**
+	 * Resolve the effective property for every key.
+	 */
+	private void resolve() {
+		if (resolved != null && !changed()) {
+			return;
+		}
+		Map<String, Entity> keys = new LinkedHashMap<String, Entity>();
+		Map<Entity, Layer> owners = new IdentityHashMap<Entity, Layer>();
+		Entities entities;
+		Entity entity;
+		for (Layer layer : layers) {
+			entities = layer.entities;
+			for (int i = 0; i < entities.size(); i++) {
+				entity = entities.getProperty(i);
+				owners.put(entity, layer);
+				if (!isReadOnly(entity.getKey())
+						|| !keys.containsKey(entity.getKey())) {
+					keys.put(entity.getKey(), entity);
+				}
+			}
+		}
+		resolved = keys;
+		sources = owners;
+		resolvedAt = new long[layers.size()];
+		for (int i = 0; i < resolvedAt.length; i++) {
+			resolvedAt[i] = layers.get(i).entities.savePoint();
+		}
+	}
+
+	/**
+	 * Check if a layer was changed since the view was resolved.
+	 */
+	private boolean changed() {
+		for (int i = 0; i < resolvedAt.length; i++) {
+			if (resolvedAt[i] != layers.get(i).entities.savePoint()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the effective properties, one per key, in the order the keys
+	 * were first defined.
+	 * 
+	 * @return The effective property for every key.
+	 */
+	public Map<String, Entity> getEffective() {
+		resolve();
+		return Collections.unmodifiableMap(resolved);
+	}
+
+	/**
+	 * Returns the effective property for the specified key.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @return The winning property entity or null if the key is not defined.
+	 */
+	public Entity get(String key) {
+		resolve();
+		return resolved.get(key);
+	}
+
+	/**
+	 * Returns the layer from which the property entity was loaded or where it
+	 * was added.
+	 * 
+	 * @param entity
+	 *            The property entity.
+	 * @return The owning layer or null if the entity is not a property of
+	 *         these layers.
+	 */
+	public Layer getSource(Entity entity) {
+		resolve();
+		return sources.get(entity);
+	}
+
+	/**
+	 * Set the content of the effective property with the specified key, on
+	 * the layer owning it. If the key is not defined a new property is added
+	 * to the specified layer.
+	 * 
+	 * @param key
+	 *            The property key.
+	 * @param content
+	 *            The property content.
+	 * @param newLayer
+	 *            The layer for a new property.
+	 * @return The previous content or null if the key was not defined.
+	 */
+	public String put(String key, String content, Layer newLayer) {
+		Entity entity = get(key);
+		if (entity == null) {
+			add(newLayer, new Entity(key, content));
+			return null;
+		}
+		String previous = entity.getContent();
+		update(entity, key, content);
+		return previous;
+	}
+
+	/**
+	 * Adds a property entity to the specified layer.
+	 * 
+	 * @param layer
+	 *            The layer.
+	 * @param entity
+	 *            The entity to add.
+	 */
+	public void add(Layer layer, Entity entity) {
+		layer.entities.add(entity);
+		invalidate();
+	}
+
+	/**
+	 * Change a property entity on the layer owning it.
+	 * 
+	 * @param entity
+	 *            The property entity.
+	 * @param key
+	 *            The new property key.
+	 * @param content
+	 *            The new property content.
+	 * @return True if the entity was changed.
+	 */
+	public boolean update(Entity entity, String key, String content) {
+		Layer layer = getSource(entity);
+		if (layer == null || !layer.entities.update(entity, key, content)) {
+			return false;
+		}
+		// the key could win or lose against other definitions, and a loaded
+		// entity is replaced by a changed copy
+		invalidate();
+		return true;
+	}
+
+	/**
+	 * Remove a property entity from the layer owning it.
+	 * 
+	 * @param entity
+	 *            The property entity.
+	 * @return True if the entity was removed.
+	 */
+	public boolean remove(Entity entity) {
+		Layer layer = getSource(entity);
+		if (layer == null) {
+			return false;
+		}
+		layer.entities.remove(entity);
+		invalidate();
+		return true;
+	}
+}
@@ -0,0 +1,388 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks the properties against a set of rules before they are saved. The
+ * rules are compiled once in hash tables and looked up on the key index of
+ * the properties, so only the properties with a rule or a problem are read.
+ * <p>
+ * A rule is a line with the key, or a namespace like "persist.sys.*", the
+ * value type (int, long, boolean, size or text), an optional range like
+ * "72..960" or "1m.." and the optional "required" flag, for example
+ * "ro.sf.lcd_density int 72..960". Besides the rules, the duplicated keys and
+ * the keys or values longer than the limits of Android 7 and older are
+ * reported as warnings.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class PropertyValidator {
+
+	/**
+	 * The rules for all the properties files.
+	 */
+	public static final String[] DEFAULT_RULES = {
+			"ro.sf.lcd_density int 72..960",
+			"qemu.sf.lcd_density int 72..960",
+			"dalvik.vm.heapsize size 1m..4g",
+			"dalvik.vm.heapgrowthlimit size 1m..4g",
+			"dalvik.vm.heapstartsize size 1m..1g",
+			"dalvik.vm.heapminfree size 0..1g",
+			"dalvik.vm.heapmaxfree size 0..1g",
+			"ro.build.version.sdk int 1..",
+			"ro.opengles.version int 0..",
+			"ring.delay int 0..60000",
+			"ro.telephony.call_ring.delay int 0..60000",
+			"wifi.supplicant_scan_interval int 1..3600",
+			"windowsmgr.max_events_per_sec int 1..1000",
+			"ro.media.enc.jpeg.quality int 1..100",
+			"ro.config.hw_quickpoweron boolean",
+			"ro.debuggable boolean",
+			"ro.secure boolean",
+			"ro.adb.secure boolean",
+			"debug.sf.nobootanimation boolean",
+			"ro.kernel.android.checkjni boolean",
+			"ro.HOME_APP_ADJ int -17..16",
+			"ro.FOREGROUND_APP_ADJ int -17..16" };
+
+	/**
+	 * The rules added for /system/build.prop, the keys needed to boot.
+	 */
+	public static final String[] BUILD_PROP_RULES = {
+			"ro.build.version.sdk int 1.. required",
+			"ro.build.version.release text required" };
+
+	/**
+	 * The limits of the key and the value length, before Android 8.
+	 */
+	public static final int KEY_MAX = 31;
+	public static final int VALUE_MAX = 91;
+
+	private static final int TEXT = 0;
+	private static final int INT = 1;
+	private static final int LONG = 2;
+	private static final int BOOLEAN = 3;
+	private static final int SIZE = 4;
+
+	/**
+	 * A compiled rule.
+	 */
+	private static class Rule {
+		String key;
+		int type;
+		long min = Long.MIN_VALUE;
+		long max = Long.MAX_VALUE;
+		boolean required;
+	}
+
+	private Map<String, Rule> keys = new HashMap<String, Rule>();
+	/**
+	 * The namespace rules, by the namespace with the final dot.
+	 */
+	private Map<String, Rule> namespaces = new HashMap<String, Rule>();
+	private List<Rule> required = new ArrayList<Rule>();
+
+	private static PropertyValidator defaultValidator;
+	private static PropertyValidator buildPropValidator;
+
+	/**
+	 * Compile the specified rules.
+	 * 
+	 * @param rules
+	 *            The rule lines.
+	 * @throws IllegalArgumentException
+	 *             If a rule is not valid.
+	 */
+	public PropertyValidator(String[]... rules) {
+		for (String[] set : rules) {
+			for (String line : set) {
+				compile(line);
+			}
+		}
+	}
+
+	/**
+	 * Returns the validator for the specified properties file, with the
+	 * required keys of /system/build.prop when it is the case.
+	 * 
+	 * @param path
+	 *            The properties file path.
+	 * @return The validator, compiled on the first request.
+	 */
+	public static synchronized PropertyValidator forFile(String path) {
+		if (path != null && path.endsWith("/system/build.prop")) {
+			if (buildPropValidator == null) {
+				buildPropValidator = new PropertyValidator(DEFAULT_RULES,
+						BUILD_PROP_RULES);
+			}
+			return buildPropValidator;
+		}
+		if (defaultValidator == null) {
+			defaultValidator = new PropertyValidator(DEFAULT_RULES);
+		}
+		return defaultValidator;
+	}
+
+	private void compile(String line) {
+		String[] fields = line.trim().split("\\s+");
+		if (fields.length < 2) {
+			throw new IllegalArgumentException("Invalid rule: " + line);
+		}
+		Rule rule = new Rule();
+		rule.key = fields[0];
+		rule.type = parseType(fields[1], line);
+		for (int i = 2; i < fields.length; i++) {
+			if ("required".equals(fields[i])) {
+				rule.required = true;
+			} else {
+				parseRange(rule, fields[i], line);
+			}
+		}
+		if (rule.key.endsWith(".*")) {
+			namespaces.put(rule.key.substring(0, rule.key.length() - 1), rule);
+		} else {
+			keys.put(rule.key, rule);
+		}
+		if (rule.required) {
+			required.add(rule);
+		}
+	}
+
+	private static int parseType(String type, String line) {
+		if ("text".equals(type)) {
+			return TEXT;
+		} else if ("int".equals(type)) {
+			return INT;
+		} else if ("long".equals(type)) {
+			return LONG;
+		} else if ("boolean".equals(type)) {
+			return BOOLEAN;
+		} else if ("size".equals(type)) {
+			return SIZE;
+		}
+		throw new IllegalArgumentException("Invalid rule type: " + line);
+	}
+
+	private static void parseRange(Rule rule, String range, String line) {
+		int dots = range.indexOf("..");
+		if (dots < 0 || (rule.type != INT && rule.type != LONG && rule.type != SIZE)) {
+			throw new IllegalArgumentException("Invalid rule range: " + line);
+		}
+		String min = range.substring(0, dots);
+		String max = range.substring(dots + 2);
+		if (min.length() > 0) {
+			rule.min = parseBound(rule, min, line);
+		}
+		if (max.length() > 0) {
+			rule.max = parseBound(rule, max, line);
+		}
+	}
+
+	private static long parseBound(Rule rule, String bound, String line) {
+		Long value = rule.type == SIZE ? PropertyValues.parseSize(bound)
+				: PropertyValues.parseLong(bound);
+		if (value == null) {
+			throw new IllegalArgumentException("Invalid rule range: " + line);
+		}
+		return value;
+	}
+
+	/**
+	 * Find the rule of a key: its own rule or the rule of the nearest
+	 * namespace.
+	 */
+	private Rule findRule(String key) {
+		Rule rule = keys.get(key);
+		int dot = key.length();
+		while (rule == null && !namespaces.isEmpty()
+				&& (dot = key.lastIndexOf('.', dot - 1)) > 0) {
+			rule = namespaces.get(key.substring(0, dot + 1));
+		}
+		return rule;
+	}
+
+	/**
+	 * Check all the properties. Only the entities of the properties with a
+	 * problem or a rule are built: the duplicated keys are taken from the key
+	 * index and the lengths are read from the loaded lines.
+	 * 
+	 * @param entities
+	 *            The properties to check.
+	 * @return The problems found, in the file order, followed by the missing
+	 *         required keys.
+	 */
+	public List<ValidationProblem> validate(Entities entities) {
+		List<ValidationProblem> problems = new ArrayList<ValidationProblem>();
+		entities.readKeys();
+		try {
+			KeyIndex index = entities.keyIndex;
+			KeyIndex.Keys keyList = entities.keys;
+			int count = entities.count;
+			BitSet checked = new BitSet(count);
+			int ordinal;
+			for (String key : keys.keySet()) {
+				ordinal = index.first(key, keyList);
+				if (ordinal > -1) {
+					checked.set(ordinal);
+				}
+			}
+			// all the definitions, the rules are checked on each one
+			for (int duplicate : entities.duplicateOrdinals()) {
+				checked.set(duplicate);
+			}
+			String key;
+			for (int i = 0; i < count; i++) {
+				if (entities.isLonger(i, KEY_MAX, VALUE_MAX)) {
+					checked.set(i);
+				} else if (!namespaces.isEmpty() && !checked.get(i)
+						&& (key = keyList.keyAt(i)) != null
+						&& findRule(key) != null) {
+					checked.set(i);
+				}
+			}
+			Entity entity;
+			String content;
+			Rule rule;
+			for (int i = checked.nextSetBit(0); i > -1; i = checked
+					.nextSetBit(i + 1)) {
+				entity = entities.getProperty(i);
+				key = entity.getKey();
+				content = entity.getContent();
+				if (key == null) {
+					continue;
+				}
+				if (index.first(key, keyList) != i) {
+					problems.add(new ValidationProblem(
+							ValidationProblem.Severity.WARNING,
+							ValidationProblem.Kind.DUPLICATE, key, entity,
+							"defined more than once"));
+				}
+				if (key.length() > KEY_MAX) {
+					problems.add(new ValidationProblem(
+							ValidationProblem.Severity.WARNING,
+							ValidationProblem.Kind.TOO_LONG, key, entity,
+							"key longer than " + KEY_MAX
+									+ " characters, ignored before Android 8"));
+				}
+				if (content != null && content.length() > VALUE_MAX) {
+					problems.add(new ValidationProblem(
+							ValidationProblem.Severity.WARNING,
+							ValidationProblem.Kind.TOO_LONG, key, entity,
+							"value longer than " + VALUE_MAX
+									+ " characters, ignored before Android 8"));
+				}
+				rule = findRule(key);
+				if (rule != null) {
+					check(rule, entity, key, problems);
+				}
+			}
+			for (Rule r : required) {
+				if (index.first(r.key, keyList) < 0) {
+					problems.add(new ValidationProblem(
+							ValidationProblem.Severity.ERROR,
+							ValidationProblem.Kind.MISSING, r.key, null,
+							"required property is missing"));
+				}
+			}
+		} finally {
+			entities.lock.readLock().unlock();
+		}
+		return problems;
+	}
+
+	/**
+	 * Check the value of a property by its rule, with the value parsed once
+	 * and cached on the entity.
+	 */
+	private static void check(Rule rule, Entity entity, String key,
+			List<ValidationProblem> problems) {
+		long value;
+		switch (rule.type) {
+		case INT:
+			Integer i = entity.intValue();
+			if (i == null) {
+				problems.add(invalid(key, entity, "an integer"));
+				return;
+			}
+			value = i;
+			break;
+		case LONG:
+			Long l = entity.longValue();
+			if (l == null) {
+				problems.add(invalid(key, entity, "a number"));
+				return;
+			}
+			value = l;
+			break;
+		case SIZE:
+			Long s = entity.sizeValue();
+			if (s == null) {
+				problems.add(invalid(key, entity, "a size like 256m"));
+				return;
+			}
+			value = s;
+			break;
+		case BOOLEAN:
+			if (entity.booleanValue() == null) {
+				problems.add(invalid(key, entity, "a boolean"));
+			}
+			return;
+		default:
+			return;
+		}
+		if (value < rule.min || value > rule.max) {
+			problems.add(new ValidationProblem(
+					ValidationProblem.Severity.ERROR,
+					ValidationProblem.Kind.OUT_OF_RANGE, key, entity,
+					"value " + entity.getContent() + " out of range "
+							+ (rule.min == Long.MIN_VALUE ? "" : rule.min) + ".."
+							+ (rule.max == Long.MAX_VALUE ? "" : rule.max)));
+		}
+	}
+
+	private static ValidationProblem invalid(String key, Entity entity,
+			String expected) {
+		return new ValidationProblem(ValidationProblem.Severity.ERROR,
+				ValidationProblem.Kind.INVALID_VALUE, key, entity, "value "
+						+ entity.getContent() + " is not " + expected);
+	}
+
+	/**
+	 * Check if there is an error between the problems.
+	 * 
+	 * @param problems
+	 *            The validation problems.
+	 * @return True if a problem should stop the save.
+	 */
+	public static boolean hasErrors(List<ValidationProblem> problems) {
+		for (ValidationProblem problem : problems) {
+			if (problem.getSeverity() == ValidationProblem.Severity.ERROR) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsers for the usual property value formats, following the rules of the
+ * Android SystemProperties getters where there is one.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class PropertyValues {
+
+	private PropertyValues() {
+	}
+
+	/**
+	 * Parse an integer value, like ro.sf.lcd_density=480.
+	 * 
+	 * @param value
+	 *            The property value.
+	 * @return The integer or null if the value is not an integer.
+	 */
+	public static Integer parseInt(String value) {
+		try {
+			return value != null ? Integer.valueOf(value.trim()) : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parse a long value.
+	 * 
+	 * @param value
+	 *            The property value.
+	 * @return The long or null if the value is not a number.
+	 */
+	public static Long parseLong(String value) {
+		try {
+			return value != null ? Long.valueOf(value.trim()) : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parse a boolean value: 1, y, yes, on and true are true, 0, n, no, off
+	 * and false are false, ignoring the case.
+	 * 
+	 * @param value
+	 *            The property value.
+	 * @return The boolean or null if the value is not a boolean.
+	 */
+	public static Boolean parseBoolean(String value) {
+		if (value == null) {
+			return null;
+		}
+		String v = value.trim();
+		if ("1".equals(v) || "y".equalsIgnoreCase(v)
+				|| "yes".equalsIgnoreCase(v) || "on".equalsIgnoreCase(v)
+				|| "true".equalsIgnoreCase(v)) {
+			return Boolean.TRUE;
+		}
+		if ("0".equals(v) || "n".equalsIgnoreCase(v)
+				|| "no".equalsIgnoreCase(v) || "off".equalsIgnoreCase(v)
+				|| "false".equalsIgnoreCase(v)) {
+			return Boolean.FALSE;
+		}
+		return null;
+	}
+
+	/**
+	 * Parse a size with an optional k, m or g suffix, like
+	 * dalvik.vm.heapsize=256m.
+	 * 
+	 * @param value
+	 *            The property value.
+	 * @return The size in bytes or null if the value is not a size.
+	 */
+	public static Long parseSize(String value) {
+		if (value == null) {
+			return null;
+		}
+		String v = value.trim();
+		int shift = 0;
+		if (v.length() > 1) {
+			switch (Character.toLowerCase(v.charAt(v.length() - 1))) {
+			case 'k':
+				shift = 10;
+				break;
+			case 'm':
+				shift = 20;
+				break;
+			case 'g':
+				shift = 30;
+				break;
+			}
+			if (shift > 0) {
+				v = v.substring(0, v.length() - 1);
+			}
+		}
+		try {
+			long size = Long.parseLong(v);
+			if (size < 0 || size > (Long.MAX_VALUE >> shift)) {
+				return null;
+			}
+			return size << shift;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Split a comma separated value, like
+	 * net.tcp.buffersize.wifi=524288,1048576,2097152. The items are trimmed.
+	 * 
+	 * @param value
+	 *            The property value.
+	 * @return The items, empty for an empty value.
+	 */
+	public static List<String> parseList(String value) {
+		if (value == null || value.trim().length() == 0) {
+			return Collections.emptyList();
+		}
+		List<String> items = new ArrayList<String>();
+		int start = 0, end;
+		while ((end = value.indexOf(',', start)) >= 0) {
+			items.add(value.substring(start, end).trim());
+			start = end + 1;
+		}
+		items.add(value.substring(start).trim());
+		return Collections.unmodifiableList(items);
+	}
+}
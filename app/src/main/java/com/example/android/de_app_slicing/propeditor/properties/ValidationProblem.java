@@ -0,0 +1,92 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+/**
+ * A problem found by the PropertyValidator on a property.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class ValidationProblem {
+
+	/**
+	 * The errors stop the save, the warnings are only reported.
+	 */
+	public enum Severity {
+		ERROR, WARNING
+	}
+
+	/**
+	 * The kind of the problem.
+	 */
+	public enum Kind {
+		INVALID_VALUE, OUT_OF_RANGE, MISSING, DUPLICATE, TOO_LONG
+	}
+
+	private final Severity severity;
+	private final Kind kind;
+	private final String key;
+	private final Entity entity;
+	private final String message;
+
+	ValidationProblem(Severity severity, Kind kind, String key, Entity entity,
+			String message) {
+		this.severity = severity;
+		this.kind = kind;
+		this.key = key;
+		this.entity = entity;
+		this.message = message;
+	}
+
+	public Severity getSeverity() {
+		return severity;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Returns the key of the property with the problem.
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns the property entity with the problem, or null for a missing
+	 * property.
+	 */
+	public Entity getEntity() {
+		return entity;
+	}
+
+	/**
+	 * Returns the problem description.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return severity + " " + key + ": " + message;
+	}
+}
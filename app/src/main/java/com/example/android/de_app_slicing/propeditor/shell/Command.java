@@ -20,6 +20,11 @@ package com.example.android.de_app_slicing.propeditor.shell;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This is a regular shell command. Inspired from RootCommands - Library to
@@ -30,9 +35,31 @@ import java.io.OutputStream;
  * 
  */
 public class Command {
+	/**
+	 * Exit code of a command not run because a previous command of the same
+	 * batch failed.
+	 */
+	public static final int SKIPPED = -1;
+	/**
+	 * Time to wait for a command to be finished, in milliseconds.
+	 */
+	static final long TIMEOUT = 10000;
+	/**
+	 * Maximum number of output characters kept by default.
+	 */
+	public static final int DEFAULT_OUTPUT_LIMIT = 64 * 1024;
 	private String[] command;
 	private int exitCode;
 	private boolean finished;
+	private boolean timedOut;
+	private boolean lost;
+	private boolean cancelled;
+	private List<Runnable> finishActions;
+	private int outputLimit = DEFAULT_OUTPUT_LIMIT;
+	private StringBuilder output;
+	private boolean outputTruncated;
+	private OutputListener outputListener;
+	CommandBatch batch;
 
 	/**
 	 * Build a command or a set of commands
@@ -77,11 +104,15 @@ public class Command {
 	 *            Exit code to be set.
 	 */
 	public void setExitCode(int code) {
+		List<Runnable> actions;
 		synchronized (this) {
 			exitCode = code;
+			actions = finished ? null : finishActions;
 			finished = true;
+			finishActions = null;
 			this.notifyAll();
 		}
+		runActions(actions);
 	}
 
 	/**
@@ -90,22 +121,288 @@ public class Command {
 	 * @return True if the command was finished successfully.
 	 */
 	public boolean waitForFinish() {
-		boolean result = true;
+		return waitForFinish(TIMEOUT);
+	}
+
+	/**
+	 * Wait to be finished the command.
+	 * 
+	 * @param timeout
+	 *            Maximum time to wait, in milliseconds.
+	 * @return True if the command was finished successfully.
+	 */
+	boolean waitForFinish(long timeout) {
 		synchronized (this) {
-			while (!finished) {
+			if (!finished) {
 				try {
-					this.wait(10000);
+					this.wait(timeout);
 				} catch (InterruptedException e) {
 				}
-				if (!finished) {
-					finished = true;
-					result = false;
+			}
+		}
+		expire();
+		return isSuccessful();
+	}
+
+	/**
+	 * Mark the command as timed out if it is not finished yet.
+	 */
+	void expire() {
+		fail(false);
+	}
+
+	/**
+	 * Mark the command as failed if it is not finished yet, because the shell
+	 * is closed or has no root access, so it will never answer.
+	 */
+	void abandon() {
+		fail(true);
+	}
+
+	/**
+	 * Finish the command without an answer from the shell.
+	 */
+	private void fail(boolean lost) {
+		List<Runnable> actions = null;
+		synchronized (this) {
+			if (!finished) {
+				finished = true;
+				timedOut = true;
+				this.lost = lost;
+				actions = finishActions;
+				finishActions = null;
+				this.notifyAll();
+			}
+		}
+		runActions(actions);
+	}
+
+	/**
+	 * Obtain the reason the command was not answered by the shell.
+	 * 
+	 * @return The failure or null if the command is answered or not finished.
+	 */
+	synchronized Exception getFailure() {
+		if (lost) {
+			return new IOException("The root shell is not available");
+		}
+		if (timedOut) {
+			return new TimeoutException("The root shell did not answer");
+		}
+		return null;
+	}
+
+	/**
+	 * Expire the command if it is not finished after the specified time,
+	 * without blocking a thread for it.
+	 * 
+	 * @param timeout
+	 *            The time to wait, in milliseconds.
+	 */
+	void expireAfter(long timeout) {
+		final TimerTask task = new TimerTask() {
+			@Override
+			public void run() {
+				expire();
+			}
+		};
+		timer().schedule(task, timeout);
+		onFinish(new Runnable() {
+			@Override
+			public void run() {
+				task.cancel();
+			}
+		});
+	}
+
+	private static Timer timer;
+
+	/**
+	 * Obtain the timer expiring the commands not answered in time.
+	 */
+	static synchronized Timer timer() {
+		if (timer == null) {
+			timer = new Timer("Shell Timeout", true);
+		}
+		return timer;
+	}
+
+	/**
+	 * Run the actions registered by onFinish(), out of the command lock.
+	 */
+	private static void runActions(List<Runnable> actions) {
+		if (actions != null) {
+			for (Runnable action : actions) {
+				action.run();
+			}
+		}
+	}
+
+	/**
+	 * Cancel the command if it is not finished. A cancelled command not
+	 * written yet is not sent to the shell, it is answered as skipped.
+	 * 
+	 * @return True if the command was not finished.
+	 */
+	boolean cancel() {
+		synchronized (this) {
+			if (!finished) {
+				cancelled = true;
+			}
+			return cancelled;
+		}
+	}
+
+	/**
+	 * Check if the command was cancelled.
+	 * 
+	 * @return True if the command was cancelled.
+	 */
+	synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Add an action run once the command is finished, answered or timed out.
+	 * If the command is already finished, the action is run now. All the
+	 * added actions are run, in the order they were added.
+	 * 
+	 * @param action
+	 *            The action to be run.
+	 */
+	void onFinish(Runnable action) {
+		synchronized (this) {
+			if (!finished) {
+				if (finishActions == null) {
+					finishActions = new ArrayList<Runnable>(2);
+				}
+				finishActions.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+
+	/**
+	 * Obtain a future completed when the command is finished, with the
+	 * command success. If the shell did not answer, the future fails with a
+	 * TimeoutException, or with an IOException when the shell is gone.
+	 * Cancelling the future cancels the command.
+	 * 
+	 * @return The command future.
+	 */
+	public CommandFuture<Boolean> toFuture() {
+		final CommandFuture<Boolean> future = new CommandFuture<Boolean>(
+				new Runnable() {
+					@Override
+					public void run() {
+						cancel();
+					}
+				});
+		onFinish(new Runnable() {
+			@Override
+			public void run() {
+				Exception failure = getFailure();
+				if (failure != null) {
+					future.fail(failure);
 				} else {
-					result = (exitCode == 0);
+					future.complete(isSuccessful());
 				}
 			}
+		});
+		return future;
+	}
+
+	/**
+	 * Check if the command was run and finished with zero exit code.
+	 * 
+	 * @return True if the command was finished successfully.
+	 */
+	public boolean isSuccessful() {
+		synchronized (this) {
+			return finished && !timedOut && exitCode == 0;
+		}
+	}
+
+	/**
+	 * Set the maximum number of output characters kept by the command. The
+	 * lines not fitting are dropped, use an {@link OutputListener} to consume
+	 * a long output. Zero disables the output capture.
+	 * 
+	 * @param outputLimit
+	 *            The maximum number of characters.
+	 * @return This command.
+	 */
+	public Command setOutputLimit(int outputLimit) {
+		synchronized (this) {
+			this.outputLimit = outputLimit;
+		}
+		return this;
+	}
+
+	/**
+	 * Set a listener receiving the output lines while the command is running.
+	 * 
+	 * @param outputListener
+	 *            The listener or null.
+	 * @return This command.
+	 */
+	public Command setOutputListener(OutputListener outputListener) {
+		this.outputListener = outputListener;
+		return this;
+	}
+
+	/**
+	 * Method invoked by the shell for every output line of this command.
+	 * 
+	 * @param line
+	 *            The output line.
+	 */
+	void addOutput(String line) {
+		OutputListener listener = outputListener;
+		if (listener != null) {
+			try {
+				listener.onOutputLine(this, line);
+			} catch (RuntimeException e) {
+				// the shell output thread should not be stopped
+			}
+		}
+		synchronized (this) {
+			if (outputTruncated) {
+				return;
+			}
+			int length = output != null ? output.length() : 0;
+			if (length + line.length() + 1 > outputLimit) {
+				outputTruncated = true;
+				return;
+			}
+			if (output == null) {
+				output = new StringBuilder();
+			}
+			output.append(line).append('\n');
+		}
+	}
+
+	/**
+	 * Get the output captured for the command.
+	 * 
+	 * @return The output lines or empty string.
+	 */
+	public String getOutput() {
+		synchronized (this) {
+			return output != null ? output.toString() : "";
+		}
+	}
+
+	/**
+	 * Check if some output lines were dropped because of the output limit.
+	 * 
+	 * @return True if the output is not complete.
+	 */
+	public boolean isOutputTruncated() {
+		synchronized (this) {
+			return outputTruncated;
 		}
-		return result;
 	}
 
 	/**
@@ -0,0 +1,231 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.shell;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimerTask;
+
+/**
+ * A set of commands sent to the root shell at once: all the commands are
+ * written with a single flush and the caller waits only once for all of them.
+ * Every command keeps its own exit code. When the batch should stop on error,
+ * the commands after the first failed one are not run, their exit code is
+ * {@link Command#SKIPPED}.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class CommandBatch {
+	private final boolean stopOnError;
+	private final List<Command> commands;
+	private boolean rejected;
+
+	/**
+	 * Build an empty batch.
+	 * 
+	 * @param stopOnError
+	 *            If true, the commands after the first failed one are skipped.
+	 */
+	public CommandBatch(boolean stopOnError) {
+		this.stopOnError = stopOnError;
+		commands = new ArrayList<Command>();
+	}
+
+	/**
+	 * Add a command to the batch.
+	 * 
+	 * @param command
+	 *            The command and its alternatives, see {@link Command}.
+	 * @return The command object, used to check the exit code.
+	 */
+	public Command add(String... command) {
+		return add(new Command(command));
+	}
+
+	/**
+	 * Add a command to the batch.
+	 * 
+	 * @param command
+	 *            Command to be added.
+	 * @return The command object for provided command.
+	 */
+	public Command add(Command command) {
+		command.batch = this;
+		commands.add(command);
+		return command;
+	}
+
+	/**
+	 * Check if the commands after the first failed one are skipped.
+	 * 
+	 * @return True if the batch stops on the first error.
+	 */
+	public boolean isStopOnError() {
+		return stopOnError;
+	}
+
+	/**
+	 * Obtain the number of commands.
+	 * 
+	 * @return The number of commands from the batch.
+	 */
+	public int size() {
+		return commands.size();
+	}
+
+	/**
+	 * Obtain a command from the batch.
+	 * 
+	 * @param index
+	 *            The index of the command, in the order they were added.
+	 * @return The command.
+	 */
+	public Command get(int index) {
+		return commands.get(index);
+	}
+
+	/**
+	 * Obtain the exit code of every command, in the order they were added.
+	 * 
+	 * @return The exit codes.
+	 */
+	public int[] getExitCodes() {
+		int[] codes = new int[commands.size()];
+		for (int i = 0; i < codes.length; i++) {
+			codes[i] = commands.get(i).getExitCode();
+		}
+		return codes;
+	}
+
+	/**
+	 * Obtain the commands of the batch.
+	 * 
+	 * @return The commands, in the order they were added.
+	 */
+	List<Command> getCommands() {
+		return Collections.unmodifiableList(commands);
+	}
+
+	/**
+	 * Expire the commands not answered after the specified time, without
+	 * blocking a thread for it.
+	 * 
+	 * @param timeout
+	 *            The time to wait, in milliseconds.
+	 */
+	void expireAfter(long timeout) {
+		if (commands.isEmpty()) {
+			return;
+		}
+		final TimerTask task = new TimerTask() {
+			@Override
+			public void run() {
+				for (Command command : commands) {
+					command.expire();
+				}
+			}
+		};
+		Command.timer().schedule(task, timeout);
+		commands.get(commands.size() - 1).onFinish(new Runnable() {
+			@Override
+			public void run() {
+				task.cancel();
+			}
+		});
+	}
+
+	/**
+	 * Check if the command is the first one of the batch.
+	 */
+	boolean isFirst(Command command) {
+		return !commands.isEmpty() && commands.get(0) == command;
+	}
+
+	/**
+	 * Mark the batch as not accepted by the shell, no need to wait for it.
+	 */
+	void reject() {
+		rejected = true;
+	}
+
+	/**
+	 * Wait to be finished all the commands. The shell answers in order, so
+	 * the batch is done when its last command is done.
+	 * 
+	 * @return True if all the commands were finished successfully.
+	 */
+	public boolean waitForFinish() {
+		if (rejected || commands.isEmpty()) {
+			return !rejected;
+		}
+		commands.get(commands.size() - 1).waitForFinish(
+				Command.TIMEOUT * commands.size());
+		boolean result = true;
+		for (Command command : commands) {
+			command.expire();
+			result &= command.isSuccessful();
+		}
+		return result;
+	}
+
+	/**
+	 * Obtain a future completed when all the commands are finished, with true
+	 * if all of them were successful. If a command was not answered by the
+	 * shell, the future fails like the one of the command. Cancelling the
+	 * future cancels the commands not sent to the shell yet.
+	 * 
+	 * @return The batch future.
+	 */
+	public CommandFuture<Boolean> toFuture() {
+		if (commands.isEmpty()) {
+			return CommandFuture.completed(!rejected);
+		}
+		final CommandFuture<Boolean> future = new CommandFuture<Boolean>(
+				new Runnable() {
+					@Override
+					public void run() {
+						for (Command command : commands) {
+							command.cancel();
+						}
+					}
+				});
+		commands.get(commands.size() - 1).onFinish(new Runnable() {
+			@Override
+			public void run() {
+				boolean result = true;
+				Exception failure = null;
+				for (Command command : commands) {
+					command.expire();
+					result &= command.isSuccessful();
+					if (failure == null) {
+						failure = command.getFailure();
+					}
+				}
+				if (failure != null) {
+					future.fail(failure);
+				} else {
+					future.complete(result);
+				}
+			}
+		});
+		return future;
+	}
+}
@@ -0,0 +1,437 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.shell;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The result of a root operation, completed when the shell answers. Beside
+ * the blocking {@link Future} methods, callbacks and chained operations can
+ * be attached; they are run on the given executor once the result is known.
+ * Cancelling the future cancels the commands not sent to the shell yet.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ * @param <V>
+ *            The result type.
+ */
+public class CommandFuture<V> implements Future<V> {
+	/**
+	 * Executor running the callbacks on the thread completing the future,
+	 * usually the shell output thread, so the callbacks should be short.
+	 */
+	public static final Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	/**
+	 * Callback invoked when the future is done.
+	 * 
+	 * @param <V>
+	 *            The result type.
+	 */
+	public interface Callback<V> {
+		/**
+		 * Method invoked with the result of the future.
+		 * 
+		 * @param value
+		 *            The result.
+		 */
+		void onSuccess(V value);
+
+		/**
+		 * Method invoked if the future failed or was cancelled, in this case
+		 * the failure is a {@link CancellationException}.
+		 * 
+		 * @param failure
+		 *            The failure cause.
+		 */
+		void onFailure(Throwable failure);
+	}
+
+	/**
+	 * Function used to chain the futures.
+	 * 
+	 * @param <A>
+	 *            The argument type.
+	 * @param <R>
+	 *            The result type.
+	 */
+	public interface Function<A, R> {
+		/**
+		 * Compute the result from the result of the previous future.
+		 * 
+		 * @param value
+		 *            The result of the previous future.
+		 * @return The new result.
+		 * @throws Exception
+		 *             The chained future fails with this exception.
+		 */
+		R apply(A value) throws Exception;
+	}
+
+	private static final int PENDING = 0;
+	private static final int SUCCEEDED = 1;
+	private static final int FAILED = 2;
+	private static final int CANCELLED = 3;
+	private final Runnable canceller;
+	private final List<Runnable> listeners = new ArrayList<Runnable>();
+	private int state;
+	private V value;
+	private Throwable failure;
+
+	/**
+	 * Build a pending future, completed by {@link #complete(Object)} or
+	 * {@link #fail(Throwable)}.
+	 */
+	public CommandFuture() {
+		this(null);
+	}
+
+	/**
+	 * Build a pending future.
+	 * 
+	 * @param canceller
+	 *            Action run when the future is cancelled, or null.
+	 */
+	CommandFuture(Runnable canceller) {
+		this.canceller = canceller;
+	}
+
+	/**
+	 * Build a future already completed.
+	 * 
+	 * @param value
+	 *            The result.
+	 * @return The completed future.
+	 */
+	public static <V> CommandFuture<V> completed(V value) {
+		CommandFuture<V> future = new CommandFuture<V>();
+		future.complete(value);
+		return future;
+	}
+
+	/**
+	 * Complete the future with a result, if it is not done yet.
+	 * 
+	 * @param value
+	 *            The result.
+	 * @return True if the future was completed by this call.
+	 */
+	public boolean complete(V value) {
+		synchronized (this) {
+			if (state != PENDING) {
+				return false;
+			}
+			this.value = value;
+			state = SUCCEEDED;
+		}
+		done();
+		return true;
+	}
+
+	/**
+	 * Complete the future with a failure, if it is not done yet.
+	 * 
+	 * @param failure
+	 *            The failure cause.
+	 * @return True if the future was completed by this call.
+	 */
+	public boolean fail(Throwable failure) {
+		synchronized (this) {
+			if (state != PENDING) {
+				return false;
+			}
+			this.failure = failure;
+			state = FAILED;
+		}
+		done();
+		return true;
+	}
+
+	/**
+	 * Cancel the future. The commands already sent to the shell are still
+	 * run, only their result is ignored.
+	 * 
+	 * @param mayInterruptIfRunning
+	 *            Ignored, the shell commands are not interrupted.
+	 * @return True if the future was cancelled by this call.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		synchronized (this) {
+			if (state != PENDING) {
+				return false;
+			}
+			state = CANCELLED;
+		}
+		if (canceller != null) {
+			canceller.run();
+		}
+		done();
+		return true;
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return state == CANCELLED;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return state != PENDING;
+	}
+
+	@Override
+	public synchronized V get() throws InterruptedException,
+			ExecutionException {
+		while (state == PENDING) {
+			wait();
+		}
+		return report();
+	}
+
+	@Override
+	public synchronized V get(long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		long remaining = unit.toMillis(timeout);
+		while (state == PENDING && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		if (state == PENDING) {
+			throw new TimeoutException();
+		}
+		return report();
+	}
+
+	/**
+	 * Obtain the result of a done future.
+	 */
+	private V report() throws ExecutionException {
+		if (state == CANCELLED) {
+			throw new CancellationException();
+		}
+		if (state == FAILED) {
+			throw new ExecutionException(failure);
+		}
+		return value;
+	}
+
+	/**
+	 * Wake up the waiting threads and run the listeners.
+	 */
+	private void done() {
+		List<Runnable> toRun;
+		synchronized (this) {
+			notifyAll();
+			toRun = new ArrayList<Runnable>(listeners);
+			listeners.clear();
+		}
+		for (Runnable listener : toRun) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Run an action when the future is done, now if it is already done.
+	 */
+	private void whenDone(Runnable listener) {
+		synchronized (this) {
+			if (state == PENDING) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	/**
+	 * Add a callback invoked when the future is done.
+	 * 
+	 * @param callback
+	 *            The callback.
+	 * @param executor
+	 *            The executor running the callback.
+	 * @return This future.
+	 */
+	public CommandFuture<V> addCallback(final Callback<? super V> callback,
+			final Executor executor) {
+		whenDone(new Runnable() {
+			@Override
+			public void run() {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						int result;
+						V v;
+						Throwable t;
+						synchronized (CommandFuture.this) {
+							result = state;
+							v = value;
+							t = failure;
+						}
+						if (result == SUCCEEDED) {
+							callback.onSuccess(v);
+						} else if (result == FAILED) {
+							callback.onFailure(t);
+						} else {
+							callback.onFailure(new CancellationException());
+						}
+					}
+				});
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Chain a computation run with the result of this future. If this future
+	 * fails, the chained one fails too; cancelling the chained future cancels
+	 * this one.
+	 * 
+	 * @param function
+	 *            The function computing the chained result.
+	 * @param executor
+	 *            The executor running the function.
+	 * @return The chained future.
+	 */
+	public <R> CommandFuture<R> then(final Function<? super V, R> function,
+			Executor executor) {
+		final CommandFuture<R> next = new CommandFuture<R>(canceller());
+		addCallback(new Callback<V>() {
+			@Override
+			public void onSuccess(V value) {
+				try {
+					next.complete(function.apply(value));
+				} catch (Exception e) {
+					next.fail(e);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable failure) {
+				next.propagate(failure);
+			}
+		}, executor);
+		return next;
+	}
+
+	/**
+	 * Chain another asynchronous operation started with the result of this
+	 * future, like a write started after a mount. Cancelling the chained
+	 * future cancels this one and the started operation.
+	 * 
+	 * @param function
+	 *            The function starting the chained operation.
+	 * @param executor
+	 *            The executor running the function.
+	 * @return A future completed with the result of the chained operation.
+	 */
+	public <R> CommandFuture<R> thenCompose(
+			final Function<? super V, CommandFuture<R>> function,
+			Executor executor) {
+		final AtomicReference<CommandFuture<R>> started =
+				new AtomicReference<CommandFuture<R>>();
+		final CommandFuture<R> next = new CommandFuture<R>(new Runnable() {
+			@Override
+			public void run() {
+				cancel(false);
+				CommandFuture<R> inner = started.get();
+				if (inner != null) {
+					inner.cancel(false);
+				}
+			}
+		});
+		addCallback(new Callback<V>() {
+			@Override
+			public void onSuccess(V value) {
+				CommandFuture<R> inner;
+				try {
+					inner = function.apply(value);
+				} catch (Exception e) {
+					next.fail(e);
+					return;
+				}
+				if (inner == null) {
+					next.fail(new NullPointerException(
+							"The chained operation returned no future"));
+					return;
+				}
+				started.set(inner);
+				if (next.isCancelled()) {
+					// cancelled before the operation was known
+					inner.cancel(false);
+				}
+				inner.addCallback(new Callback<R>() {
+					@Override
+					public void onSuccess(R value) {
+						next.complete(value);
+					}
+
+					@Override
+					public void onFailure(Throwable failure) {
+						next.propagate(failure);
+					}
+				}, DIRECT);
+			}
+
+			@Override
+			public void onFailure(Throwable failure) {
+				next.propagate(failure);
+			}
+		}, executor);
+		return next;
+	}
+
+	/**
+	 * Obtain the action cancelling this future, used by the chained futures.
+	 */
+	private Runnable canceller() {
+		return new Runnable() {
+			@Override
+			public void run() {
+				cancel(false);
+			}
+		};
+	}
+
+	/**
+	 * Complete the future with the failure of the previous future.
+	 */
+	private void propagate(Throwable failure) {
+		if (failure instanceof CancellationException) {
+			cancel(false);
+		} else {
+			fail(failure);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.shell;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded ring buffer of commands shared by the root shell threads. The
+ * commands are identified by a sequence number and pass through three
+ * cursors: submitted by the callers, written to the shell by the input
+ * thread and completed by the output thread. A completed command is released
+ * from its slot, so the memory does not grow with the number of commands run.
+ * When all the slots are in use the callers wait for a command to complete.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+class CommandQueue {
+	/**
+	 * The default number of commands waiting for an answer from the shell.
+	 */
+	static final int DEFAULT_CAPACITY = 64;
+	private final Command[] slots;
+	private final Object submitLock = new Object();
+	private long submitted;
+	private long written;
+	private long completed;
+	private boolean closing;
+
+	/**
+	 * Build an empty queue.
+	 * 
+	 * @param capacity
+	 *            Maximum number of commands not completed.
+	 */
+	CommandQueue(int capacity) {
+		slots = new Command[capacity];
+	}
+
+	/**
+	 * Add commands to the queue, waiting for free slots when the queue is
+	 * full. The commands fitting in the queue are added at once, so they are
+	 * written together, and no other caller can interleave its commands.
+	 * 
+	 * @param commands
+	 *            The commands to be added.
+	 * @param timeout
+	 *            Maximum time to wait for free slots, in milliseconds.
+	 * @return The number of commands added, the first ones from the list.
+	 * @throws InterruptedException
+	 */
+	int offer(List<Command> commands, long timeout)
+			throws InterruptedException {
+		int added = 0;
+		synchronized (submitLock) {
+			while (added < commands.size()) {
+				synchronized (this) {
+					int count = Math.min(slots.length, commands.size() - added);
+					long deadline = System.currentTimeMillis() + timeout;
+					long remaining = timeout;
+					while (!closing && remaining > 0
+							&& submitted + count - completed > slots.length) {
+						wait(remaining);
+						remaining = deadline - System.currentTimeMillis();
+					}
+					if (closing || submitted + count - completed > slots.length) {
+						break;
+					}
+					for (int i = 0; i < count; i++) {
+						slots[(int) (submitted % slots.length)] = commands
+								.get(added++);
+						submitted++;
+					}
+					notifyAll();
+				}
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Wait for commands not written yet.
+	 * 
+	 * @param commands
+	 *            List receiving the commands to be written.
+	 * @return The sequence number of the first command, or -1 if the queue is
+	 *         closing and all the commands were written.
+	 * @throws InterruptedException
+	 */
+	synchronized long takeUnwritten(List<Command> commands)
+			throws InterruptedException {
+		while (!closing && written >= submitted) {
+			wait();
+		}
+		if (written >= submitted) {
+			return -1;
+		}
+		long first = written;
+		for (; written < submitted; written++) {
+			commands.add(slots[(int) (written % slots.length)]);
+		}
+		return first;
+	}
+
+	/**
+	 * Obtain the command expecting the shell output.
+	 * 
+	 * @return The oldest command not completed, or null.
+	 */
+	synchronized Command current() {
+		return completed < submitted ? slots[(int) (completed % slots.length)]
+				: null;
+	}
+
+	/**
+	 * Obtain the sequence number of the command expecting the shell output.
+	 * 
+	 * @return The sequence number.
+	 */
+	synchronized long completed() {
+		return completed;
+	}
+
+	/**
+	 * Release the oldest command, answered by the shell.
+	 */
+	synchronized void complete() {
+		if (completed < submitted) {
+			slots[(int) (completed % slots.length)] = null;
+			completed++;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Release all the commands not completed, when the shell is gone.
+	 * 
+	 * @return The released commands.
+	 */
+	synchronized List<Command> releaseAll() {
+		List<Command> released = new ArrayList<Command>();
+		for (; completed < submitted; completed++) {
+			int slot = (int) (completed % slots.length);
+			released.add(slots[slot]);
+			slots[slot] = null;
+		}
+		written = submitted;
+		notifyAll();
+		return released;
+	}
+
+	/**
+	 * Obtain the number of commands not completed.
+	 * 
+	 * @return The number of commands waiting for the shell answer.
+	 */
+	synchronized int size() {
+		return (int) (submitted - completed);
+	}
+
+	/**
+	 * Stop accepting commands, the pending ones are still written.
+	 */
+	synchronized void close() {
+		closing = true;
+		notifyAll();
+	}
+
+	/**
+	 * Check if the queue was closed.
+	 * 
+	 * @return True if the queue does not accept commands.
+	 */
+	synchronized boolean isClosing() {
+		return closing;
+	}
+}
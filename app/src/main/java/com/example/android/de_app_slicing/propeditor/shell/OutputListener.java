@@ -0,0 +1,38 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.shell;
+
+/**
+ * Listener receiving the output of a command while it is running, line by
+ * line. It is invoked on the shell output thread, so it should not block.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public interface OutputListener {
+	/**
+	 * Method invoked for every line written by the command.
+	 * 
+	 * @param command
+	 *            The command producing the output.
+	 * @param line
+	 *            The output line, without the line terminator.
+	 */
+	void onOutputLine(Command command, String line);
+}
@@ -19,12 +19,15 @@
 package com.example.android.de_app_slicing.propeditor.shell;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -42,14 +45,18 @@ public class RootShell implements Closeable {
 	private Process rootProcess;
 	private BufferedReader consoleOut;
 	private DataOutputStream consoleIn;
-	private List<Command> commands;
+	private CommandQueue queue;
+	private volatile boolean alive;
+	private volatile long lastActive;
 	private static final String token = "F*D^W@#FGF";
+	private static final String BATCH_FAILED = "propeditor_failed";
+	private static final String BATCH_CODE = "propeditor_code";
 
 	/**
 	 * The class constructor used to initialize the root shell.
 	 */
 	public RootShell(String suPath) {
-		commands = new ArrayList<>();
+		queue = new CommandQueue(CommandQueue.DEFAULT_CAPACITY);
 		scanForSU();
 		initializeRootProcess();
 	}
@@ -144,6 +151,8 @@ public class RootShell implements Closeable {
 			}
 		}
 		if (isOk) {
+			alive = true;
+			lastActive = System.currentTimeMillis();
 			new Thread(inputRunnable, "Shell Input").start();
 			new Thread(outputRunnable, "Shell Output").start();
 		}
@@ -155,6 +164,8 @@ public class RootShell implements Closeable {
 				writeCommands();
 			} catch (IOException e) {
 			} catch (InterruptedException e) {
+			} finally {
+				alive = false;
 			}
 		}
 	};
@@ -165,6 +176,13 @@ public class RootShell implements Closeable {
 				readOutput();
 			} catch (IOException e) {
 			} catch (InterruptedException e) {
+			} finally {
+				alive = false;
+				// nobody answers the pending commands anymore
+				queue.close();
+				for (Command command : queue.releaseAll()) {
+					command.abandon();
+				}
 			}
 		}
 	};
@@ -198,29 +216,28 @@ public class RootShell implements Closeable {
 	}
 
 	/**
-	 * Method used to write a command to the root process console.
+	 * Method used to write the commands to the root process console. All the
+	 * commands queued since the last write are sent with a single flush.
 	 * 
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
 	private void writeCommands() throws IOException, InterruptedException {
-		int commandIndex = 0;
-		Command command;
-		String line;
+		long commandIndex;
+		List<Command> pending = new ArrayList<Command>();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 		while (true) {
-			synchronized (commands) {
-				while (!closing && commandIndex >= commands.size()) {
-					commands.wait();
+			pending.clear();
+			commandIndex = queue.takeUnwritten(pending);
+			if (commandIndex >= 0) {
+				buffer.reset();
+				for (Command command : pending) {
+					writeCommand(command, commandIndex, buffer);
+					commandIndex++;
 				}
-			}
-			if (commandIndex < commands.size()) {
-				command = commands.get(commandIndex);
-				line = "\necho " + token + " " + commandIndex + " $?\n";
-				command.writeCommand(consoleIn);
-				consoleIn.write(line.getBytes());
+				buffer.writeTo(consoleIn);
 				consoleIn.flush();
-				commandIndex++;
-			} else if (closing) {
+			} else {
 				consoleIn.write("\nexit 0\n".getBytes());
 				consoleIn.flush();
 				consoleIn.close();
@@ -229,50 +246,104 @@ public class RootShell implements Closeable {
 		}
 	}
 
+	/**
+	 * Write a command followed by the line echoing its exit code. A command
+	 * from a batch stopping on error is guarded by a shell variable, set when
+	 * a previous command of the batch failed.
+	 * 
+	 * @param command
+	 *            The command to be written.
+	 * @param commandIndex
+	 *            The command index, echoed back with the exit code.
+	 * @param out
+	 *            The output buffer.
+	 * @throws IOException
+	 */
+	private void writeCommand(Command command, long commandIndex,
+			OutputStream out) throws IOException {
+		CommandBatch batch = command.batch;
+		if (command.isCancelled()) {
+			if (batch != null && batch.isStopOnError()
+					&& batch.isFirst(command)) {
+				out.write(("\n" + BATCH_FAILED + "=0").getBytes());
+			}
+			out.write(("\necho " + token + " " + commandIndex + " "
+					+ Command.SKIPPED + "\n").getBytes());
+			return;
+		}
+		if (batch == null || !batch.isStopOnError()) {
+			command.writeCommand(out);
+			out.write(("\necho " + token + " " + commandIndex + " $?\n")
+					.getBytes());
+			return;
+		}
+		StringBuilder sb = new StringBuilder();
+		if (batch.isFirst(command)) {
+			sb.append(BATCH_FAILED).append("=0\n");
+		}
+		sb.append("if [ $").append(BATCH_FAILED).append(" = 0 ]; then\n{\n");
+		sb.append(command.getCommand());
+		sb.append("}\n").append(BATCH_CODE).append("=$?\n");
+		sb.append("[ $").append(BATCH_CODE).append(" = 0 ] || ")
+				.append(BATCH_FAILED).append("=1\n");
+		sb.append("else\n").append(BATCH_CODE).append('=')
+				.append(Command.SKIPPED).append("\nfi\n");
+		sb.append("echo ").append(token).append(' ').append(commandIndex)
+				.append(" $").append(BATCH_CODE).append('\n');
+		out.write(sb.toString().getBytes());
+	}
+
 	/**
 	 * Method used to read the command response from the root process console.
+	 * The lines are given to the current command until the token echoed with
+	 * its index and exit code, then the command is released from the queue
+	 * and the next one takes the output.
 	 * 
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
 	private void readOutput() throws IOException, InterruptedException {
-		int commandIndex = 0;
+		long commandIndex = 0;
 		Command command = null;
 		String line, fields[];
-		int pos, id;
+		int pos;
 		while (true) {
 			line = consoleOut.readLine();
 			if (line == null) {
 				break;
 			}
 			if (command == null) {
-				if (commandIndex >= commands.size()) {
-					if (closing)
+				command = queue.current();
+				if (command == null) {
+					if (queue.isClosing())
 						break;
 					continue;
 				}
-				command = commands.get(commandIndex);
+				commandIndex = queue.completed();
 			}
-			System.out.println(line);
 			pos = line.indexOf(token);
 			if (pos >= 0) {
-				line = line.substring(pos);
-				fields = line.split(" ");
-				id = Integer.parseInt(fields[1]);
-				if (id == commandIndex) {
+				fields = line.substring(pos).split(" ");
+				if (Long.parseLong(fields[1]) == commandIndex) {
+					// the last output line could be not terminated
+					if (pos > 0) {
+						command.addOutput(line.substring(0, pos));
+					}
 					command.setExitCode(Integer.parseInt(fields[2]));
-					commandIndex++;
+					queue.complete();
+					lastActive = System.currentTimeMillis();
 					command = null;
 					continue;
 				}
 			}
+			command.addOutput(line);
 		}
 		rootProcess.waitFor();
 		destroyRootProcess();
 	}
 
 	/**
-	 * Add a command to the command list.
+	 * Add a command to the command queue.
 	 * 
 	 * @param command
 	 *            Command string to be added.
@@ -284,20 +355,60 @@ public class RootShell implements Closeable {
 	}
 
 	/**
-	 * Add a command to the command list.
+	 * Add a command to the command queue. If the queue stays full for the
+	 * command timeout, the command is not added and it is failed.
 	 * 
 	 * @param command
 	 *            Command to be added.
 	 * @return The command object for provided command.
 	 */
 	public Command addCommand(Command command) {
+		submit(Collections.singletonList(command));
+		return command;
+	}
+
+	/**
+	 * Add all the commands of a batch to the command queue, so they are
+	 * written to the shell together.
+	 * 
+	 * @param batch
+	 *            The batch to be added.
+	 * @return The batch.
+	 */
+	public CommandBatch addBatch(CommandBatch batch) {
+		if (submit(batch.getCommands()) == 0) {
+			batch.reject();
+		}
+		return batch;
+	}
+
+	/**
+	 * Submit commands to the queue, waiting for free slots. The commands not
+	 * accepted are failed: timed out if the queue stayed full, abandoned if
+	 * the shell is closed or has no root access.
+	 * 
+	 * @param list
+	 *            The commands to be submitted.
+	 * @return The number of commands accepted.
+	 */
+	private int submit(List<Command> list) {
+		int added = 0;
 		if (rootAccess && !closing) {
-			synchronized (commands) {
-				commands.add(command);
-				commands.notifyAll();
+			lastActive = System.currentTimeMillis();
+			try {
+				added = queue.offer(list, Command.TIMEOUT);
+			} catch (InterruptedException e) {
 			}
 		}
-		return command;
+		boolean available = rootAccess && !queue.isClosing();
+		for (int i = added; i < list.size(); i++) {
+			if (available) {
+				list.get(i).expire();
+			} else {
+				list.get(i).abandon();
+			}
+		}
+		return added;
 	}
 
 	/**
@@ -305,10 +416,36 @@ public class RootShell implements Closeable {
 	 */
 	@Override
 	public void close() throws IOException {
-		synchronized (commands) {
-			closing = true;
-			commands.notifyAll();
-		}
+		closing = true;
+		queue.close();
+	}
+
+	/**
+	 * Check if the root process is running and its threads are serving the
+	 * commands.
+	 * 
+	 * @return True if the shell can run commands.
+	 */
+	public boolean isAlive() {
+		return alive && !closing;
+	}
+
+	/**
+	 * Obtain the number of commands submitted and not answered yet.
+	 * 
+	 * @return The number of pending commands.
+	 */
+	public int getPendingCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Obtain the last time a command was submitted or answered.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public long getLastActive() {
+		return lastActive;
 	}
 
 	/**
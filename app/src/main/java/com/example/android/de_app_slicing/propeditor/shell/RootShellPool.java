@@ -0,0 +1,307 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.shell;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * A pool of root shell sessions. The first session is the primary one, kept
+ * open all the time and used for the ordered work (mount, write, remount),
+ * so the commands are run in the order they were sent. The independent work
+ * is sent to the least loaded extra session, another session being started
+ * when all the open ones are busy, and it reaches the primary session only
+ * when no extra session can be started. The extra sessions are closed when idle and
+ * the dead sessions are replaced when needed.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class RootShellPool implements Closeable {
+	/**
+	 * The default maximum number of sessions.
+	 */
+	public static final int DEFAULT_SIZE = 3;
+	/**
+	 * The default time after an idle extra session is closed, in
+	 * milliseconds.
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+	private final String suPath;
+	private final RootShell[] sessions;
+	/**
+	 * The slots reserved for a session being started. The su process is
+	 * started out of the pool lock, it could take seconds.
+	 */
+	private final boolean[] spawning;
+	private final long idleTimeout;
+	private Timer reaper;
+	private boolean closed;
+
+	/**
+	 * Build a pool with the default size and idle timeout. The primary
+	 * session is started now, the other sessions when they are needed.
+	 * 
+	 * @param suPath
+	 *            The SU path.
+	 */
+	public RootShellPool(String suPath) {
+		this(suPath, DEFAULT_SIZE, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Build a pool of root shells. The primary session is started now, the
+	 * other sessions when they are needed.
+	 * 
+	 * @param suPath
+	 *            The SU path.
+	 * @param size
+	 *            Maximum number of sessions, at least one.
+	 * @param idleTimeout
+	 *            Time after an idle extra session is closed, in milliseconds.
+	 */
+	public RootShellPool(String suPath, int size, long idleTimeout) {
+		this.suPath = suPath;
+		this.sessions = new RootShell[Math.max(1, size)];
+		this.spawning = new boolean[sessions.length];
+		this.idleTimeout = idleTimeout;
+		sessions[0] = new RootShell(suPath);
+	}
+
+	/**
+	 * Obtain the session used for the ordered work. If the root process of
+	 * the session died, a new one is started; the callers asking for the
+	 * primary session meanwhile wait for it.
+	 * 
+	 * @return The primary session.
+	 */
+	public RootShell primary() {
+		RootShell dead;
+		synchronized (this) {
+			while (spawning[0]) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return sessions[0];
+				}
+			}
+			dead = sessions[0];
+			if (closed || !isDead(dead)) {
+				return dead;
+			}
+			spawning[0] = true;
+		}
+		doClose(dead);
+		return publish(0, spawn());
+	}
+
+	/**
+	 * Obtain a session for independent work: an idle extra session, a new one
+	 * if all the extra sessions are busy and the pool is not full, or else the
+	 * least loaded extra session. The primary session is kept for the ordered
+	 * work; it is used only when the pool has a single session or no extra
+	 * session could be started. A new session is started out of the pool
+	 * lock, so the other callers are not blocked by it.
+	 * 
+	 * @return The root shell.
+	 */
+	public RootShell any() {
+		RootShell primary = primary();
+		if (!primary.hasRootAccess() || sessions.length == 1) {
+			return primary;
+		}
+		List<RootShell> dead = new ArrayList<RootShell>();
+		RootShell best;
+		int free;
+		synchronized (this) {
+			while (true) {
+				best = null;
+				free = -1;
+				boolean starting = false;
+				for (int i = 1; i < sessions.length; i++) {
+					RootShell shell = sessions[i];
+					if (shell != null && isDead(shell)) {
+						dead.add(shell);
+						shell = sessions[i] = null;
+					}
+					if (shell == null) {
+						if (spawning[i]) {
+							starting = true;
+						} else if (free < 0) {
+							free = i;
+						}
+					} else if (shell.isAlive()
+							&& (best == null || shell.getPendingCount() < best
+									.getPendingCount())) {
+						best = shell;
+					}
+				}
+				if (closed || best != null || free > 0 || !starting) {
+					break;
+				}
+				// all the extra slots are being started by other callers
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			if (!closed && free > 0
+					&& (best == null || best.getPendingCount() > 0)) {
+				spawning[free] = true;
+			} else {
+				free = -1;
+			}
+		}
+		for (RootShell shell : dead) {
+			doClose(shell);
+		}
+		if (free > 0) {
+			RootShell shell = publish(free, spawn());
+			if (shell.isAlive()) {
+				return shell;
+			}
+		}
+		return best != null ? best : primary;
+	}
+
+	/**
+	 * Start a new session, invoked with a reserved slot and without the pool
+	 * lock.
+	 */
+	private RootShell spawn() {
+		return new RootShell(suPath);
+	}
+
+	/**
+	 * Release the reserved slot and store the new session on it. An extra
+	 * session without root access is not kept, and the session is closed if
+	 * the pool was closed while it was starting.
+	 * 
+	 * @param slot
+	 *            The reserved slot.
+	 * @param shell
+	 *            The new session.
+	 * @return The new session.
+	 */
+	private RootShell publish(int slot, RootShell shell) {
+		boolean discard;
+		synchronized (this) {
+			spawning[slot] = false;
+			notifyAll();
+			discard = closed || (slot > 0 && !shell.isAlive());
+			if (slot == 0 || !discard) {
+				sessions[slot] = shell;
+			}
+			if (slot > 0 && !discard) {
+				scheduleReaper();
+			}
+		}
+		if (discard) {
+			doClose(shell);
+		}
+		return shell;
+	}
+
+	/**
+	 * Check if the session had root access and its root process died.
+	 */
+	private boolean isDead(RootShell shell) {
+		return shell.hasRootAccess() && !shell.isAlive();
+	}
+
+	/**
+	 * Start the timer closing the idle extra sessions.
+	 */
+	private void scheduleReaper() {
+		if (reaper == null) {
+			reaper = new Timer("Shell Reaper", true);
+			reaper.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					reclaimIdle();
+				}
+			}, idleTimeout, idleTimeout);
+		}
+	}
+
+	/**
+	 * Close the extra sessions without pending commands and not used for the
+	 * idle timeout. The timer is stopped when only the primary session is
+	 * left.
+	 */
+	synchronized void reclaimIdle() {
+		long now = System.currentTimeMillis();
+		boolean open = false;
+		for (int i = 1; i < sessions.length; i++) {
+			RootShell shell = sessions[i];
+			if (shell == null) {
+				continue;
+			}
+			if (!shell.isAlive()
+					|| (shell.getPendingCount() == 0 && now
+							- shell.getLastActive() >= idleTimeout)) {
+				doClose(shell);
+				sessions[i] = null;
+			} else {
+				open = true;
+			}
+		}
+		if (!open && reaper != null) {
+			reaper.cancel();
+			reaper = null;
+		}
+	}
+
+	/**
+	 * Close a root shell.
+	 */
+	private void doClose(RootShell shell) {
+		try {
+			shell.close();
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Close all the sessions of the pool.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		if (reaper != null) {
+			reaper.cancel();
+			reaper = null;
+		}
+		for (int i = 0; i < sessions.length; i++) {
+			if (sessions[i] != null) {
+				doClose(sessions[i]);
+				if (i > 0) {
+					sessions[i] = null;
+				}
+			}
+		}
+	}
+}
@@ -23,7 +23,12 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This is an utility class used to launch Unix commands from the application.
@@ -32,23 +37,110 @@ import java.util.List;
  * 
  */
 public class UnixCommands {
-	private List<Partition> partitions;
-	private RootShell rootShell;
+	/**
+	 * The mounted partitions, never changed once published: a reload builds
+	 * a new list, since the reload runs on the shell output thread while the
+	 * other threads read the list.
+	 */
+	private volatile List<Partition> partitions = Collections.emptyList();
+	private RootShellPool shells;
+	/**
+	 * Thread submitting the asynchronous commands, so the callers never wait
+	 * for a shell to be started or for room in its command queue.
+	 */
+	private ExecutorService submitter;
 
 	public UnixCommands(String suPath) {
-		rootShell = new RootShell(suPath);
+		this(suPath, RootShellPool.DEFAULT_SIZE);
+	}
+
+	/**
+	 * Build the Unix commands utility.
+	 * 
+	 * @param suPath
+	 *            The SU path.
+	 * @param poolSize
+	 *            Maximum number of root shells run at once.
+	 */
+	public UnixCommands(String suPath, int poolSize) {
+		shells = new RootShellPool(suPath, poolSize,
+				RootShellPool.DEFAULT_IDLE_TIMEOUT);
+		submitter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Shell Submit");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 		populatePartitions();
 	}
 
+	/**
+	 * Submit a command on the submitter thread and obtain its future. The
+	 * future fails if the shell does not answer in {@link Command#TIMEOUT}
+	 * after the command was queued, or if no shell is available.
+	 * 
+	 * @param command
+	 *            The command to be run.
+	 * @param ordered
+	 *            True to run the command on the primary shell, after the
+	 *            ordered commands sent before, false to run it on any shell.
+	 * @return The command future.
+	 */
+	private CommandFuture<Boolean> submit(final Command command,
+			final boolean ordered) {
+		CommandFuture<Boolean> future = command.toFuture();
+		try {
+			submitter.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (!command.isCancelled()) {
+						RootShell shell = ordered ? shells.primary() : shells
+								.any();
+						shell.addCommand(command);
+						command.expireAfter(Command.TIMEOUT);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			command.abandon();
+		}
+		return future;
+	}
+
+	/**
+	 * Submit a batch on the submitter thread and obtain its future, like
+	 * {@link #submit(Command, boolean)}.
+	 */
+	private CommandFuture<Boolean> submit(final CommandBatch batch,
+			final boolean ordered) {
+		final CommandFuture<Boolean> future = batch.toFuture();
+		try {
+			submitter.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (!future.isCancelled()) {
+						RootShell shell = ordered ? shells.primary() : shells
+								.any();
+						shell.addBatch(batch);
+						batch.expireAfter(Command.TIMEOUT * batch.size());
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).abandon();
+			}
+		}
+		return future;
+	}
+
 	/**
 	 * Scan the device partition and save to the partitions list.
 	 */
 	private void populatePartitions() {
-		if (partitions == null) {
-			partitions = new ArrayList<Partition>();
-		} else {
-			partitions.clear();
-		}
+		List<Partition> partitions = new ArrayList<Partition>();
 		LineNumberReader lnr = null;
 		try {
 			lnr = new LineNumberReader(new FileReader(
@@ -72,6 +164,7 @@ public class UnixCommands {
 				}
 			}
 		}
+		this.partitions = Collections.unmodifiableList(partitions);
 	}
 
 	/**
@@ -83,21 +176,140 @@ public class UnixCommands {
 
 	/**
 	 * Obtain partitions list.
-	 * @return The partitions.
+	 * @return The partitions, read only.
 	 */
 	public List<Partition> getPartitions() {
 		return partitions;
 	}
 
 	/**
-	 * Try to run an Unix command with super user privileges.
+	 * Try to run an Unix command with super user privileges. The command is
+	 * run after all the commands sent before with this method.
 	 * 
 	 * @param command
 	 *            The UNIX command to be run.
 	 * @return True if the command was successfully.
 	 */
 	public boolean runUnixCommand(String command) {
-		return rootShell.addCommand(command).waitForFinish();
+		return shells.primary().addCommand(command).waitForFinish();
+	}
+
+	/**
+	 * Run an Unix command with super user privileges without blocking the
+	 * calling thread. The asynchronous ordered commands are run in the order
+	 * they were sent, after the commands already sent to the primary shell.
+	 * The future fails with a TimeoutException if the shell does not answer
+	 * in time, or with an IOException if no root shell is available.
+	 * 
+	 * @param command
+	 *            The UNIX command to be run.
+	 * @return The future completed with true if the command was successfully.
+	 */
+	public CommandFuture<Boolean> runUnixCommandAsync(String command) {
+		return submit(new Command(command), true);
+	}
+
+	/**
+	 * Run an Unix command and obtain its output without blocking the calling
+	 * thread. The command should not depend on other commands, it is run on
+	 * any root shell of the pool.
+	 * 
+	 * @param command
+	 *            The UNIX command to be run.
+	 * @return The future completed with the command output, or null if the
+	 *         command failed.
+	 */
+	public CommandFuture<String> getUnixCommandOutputAsync(String command) {
+		final Command cmd = new Command(command);
+		return submit(cmd, false).then(
+				new CommandFuture.Function<Boolean, String>() {
+					@Override
+					public String apply(Boolean value) {
+						return value ? cmd.getOutput() : null;
+					}
+				}, CommandFuture.DIRECT);
+	}
+
+	/**
+	 * Try to run an Unix command not depending on other commands, like a
+	 * read, on any root shell of the pool, so it is not delayed by a slow
+	 * command.
+	 * 
+	 * @param command
+	 *            The UNIX command to be run.
+	 * @return True if the command was successfully.
+	 */
+	public boolean runIndependentCommand(String command) {
+		return shells.any().addCommand(command).waitForFinish();
+	}
+
+	/**
+	 * Run an Unix command with super user privileges and obtain its output.
+	 * The command should not depend on other commands, it is run on any root
+	 * shell of the pool.
+	 * 
+	 * @param command
+	 *            The UNIX command to be run.
+	 * @return The command output or null if the command failed.
+	 */
+	public String getUnixCommandOutput(String command) {
+		Command cmd = shells.any().addCommand(command);
+		return cmd.waitForFinish() ? cmd.getOutput() : null;
+	}
+
+	/**
+	 * Run all the commands of a batch with super user privileges, the
+	 * commands are sent together and the method waits only once.
+	 * 
+	 * @param batch
+	 *            The commands to be run.
+	 * @return True if all the commands were successfully.
+	 */
+	public boolean runBatch(CommandBatch batch) {
+		return shells.primary().addBatch(batch).waitForFinish();
+	}
+
+	/**
+	 * Run all the commands of a batch without blocking the calling thread,
+	 * ordered like {@link #runUnixCommandAsync(String)}.
+	 * 
+	 * @param batch
+	 *            The commands to be run.
+	 * @return The future completed with true if all the commands were
+	 *         successfully.
+	 */
+	public CommandFuture<Boolean> runBatchAsync(CommandBatch batch) {
+		return submit(batch, true);
+	}
+
+	/**
+	 * Run a batch not depending on other commands on any root shell of the
+	 * pool. The commands of the batch are still run in order.
+	 * 
+	 * @param batch
+	 *            The commands to be run.
+	 * @return True if all the commands were successfully.
+	 */
+	public boolean runIndependentBatch(CommandBatch batch) {
+		return shells.any().addBatch(batch).waitForFinish();
+	}
+
+	/**
+	 * Try to run a list of Unix commands with super user privileges, sent
+	 * together to the shell.
+	 * 
+	 * @param stopOnError
+	 *            If true, the commands after the first failed one are not run.
+	 * @param commands
+	 *            The UNIX commands to be run.
+	 * @return True if all the commands were successfully.
+	 */
+	public boolean runUnixCommands(boolean stopOnError, String... commands) {
+		CommandBatch batch = new CommandBatch(stopOnError);
+		for (String command : commands) {
+			batch.add(command);
+		}
+		return runBatch(batch);
 	}
 
 	/**
@@ -125,24 +337,52 @@ public class UnixCommands {
 	 * @return True, if the partition was mounted.
 	 */
 	public boolean mountPartition(String partition, String mountType) {
-		Partition p = getPartition(partition);
+		Command cmd = mountCommand(partition, mountType);
 		boolean result = false;
-		if (p != null) {
-			boolean isMountMode = p.getFlags().contains(mountType);
-			if (!isMountMode) {
-				String command = "mount -o " + mountType + ",remount "
-						+ p.getDevice() + " " + p.getMountPoint();
-				Command cmd = new Command(command, "busybox " + command,
-						"toolbox " + command, "/system/bin/toolbox " + command);
-				if (rootShell.addCommand(cmd).waitForFinish()) {
-					result = true;
-					populatePartitions();
-				}
+		if (cmd != null) {
+			if (shells.primary().addCommand(cmd).waitForFinish()) {
+				result = true;
+				populatePartitions();
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Mount a partition without blocking the calling thread.
+	 * 
+	 * @param partition
+	 *            The partition to be mounted.
+	 * @param mountType
+	 *            The mount type.
+	 * @return The future completed with true if the partition was mounted.
+	 */
+	public CommandFuture<Boolean> mountPartitionAsync(String partition,
+			String mountType) {
+		Command cmd = mountCommand(partition, mountType);
+		if (cmd == null) {
+			return CommandFuture.completed(false);
+		}
+		return reloadPartitions(submit(cmd, true));
+	}
+
+	/**
+	 * Build the command mounting a partition.
+	 * 
+	 * @return The command or null if the partition is not found or it is
+	 *         already mounted with the mount type.
+	 */
+	private Command mountCommand(String partition, String mountType) {
+		Partition p = getPartition(partition);
+		if (p == null || p.getFlags().contains(mountType)) {
+			return null;
+		}
+		String command = "mount -o " + mountType + ",remount "
+				+ p.getDevice() + " " + p.getMountPoint();
+		return new Command(command, "busybox " + command,
+				"toolbox " + command, "/system/bin/toolbox " + command);
+	}
+
 	/**
 	 * Unmount a partition.
 	 * 
@@ -151,13 +391,10 @@ public class UnixCommands {
 	 * @return True if the partition was unmounted.
 	 */
 	public boolean unmountPartition(String partition) {
-		Partition p = getPartition(partition);
+		Command cmd = unmountCommand(partition);
 		boolean result = false;
-		if (p != null) {
-			String command = "umount " + p.getMountPoint();
-			Command cmd = new Command(command, "busybox " + command, "toolbox "
-					+ command, "/system/bin/toolbox " + command);
-			if (rootShell.addCommand(cmd).waitForFinish()) {
+		if (cmd != null) {
+			if (shells.primary().addCommand(cmd).waitForFinish()) {
 				result = true;
 				populatePartitions();
 			}
@@ -165,6 +402,52 @@ public class UnixCommands {
 		return result;
 	}
 
+	/**
+	 * Unmount a partition without blocking the calling thread.
+	 * 
+	 * @param partition
+	 *            The partition to be unmounted.
+	 * @return The future completed with true if the partition was unmounted.
+	 */
+	public CommandFuture<Boolean> unmountPartitionAsync(String partition) {
+		Command cmd = unmountCommand(partition);
+		if (cmd == null) {
+			return CommandFuture.completed(false);
+		}
+		return reloadPartitions(submit(cmd, true));
+	}
+
+	/**
+	 * Build the command unmounting a partition.
+	 * 
+	 * @return The command or null if the partition is not found.
+	 */
+	private Command unmountCommand(String partition) {
+		Partition p = getPartition(partition);
+		if (p == null) {
+			return null;
+		}
+		String command = "umount " + p.getMountPoint();
+		return new Command(command, "busybox " + command, "toolbox "
+				+ command, "/system/bin/toolbox " + command);
+	}
+
+	/**
+	 * Reload the partitions info after a successful mount or unmount.
+	 */
+	private CommandFuture<Boolean> reloadPartitions(
+			CommandFuture<Boolean> future) {
+		return future.then(new CommandFuture.Function<Boolean, Boolean>() {
+			@Override
+			public Boolean apply(Boolean value) {
+				if (value) {
+					populatePartitions();
+				}
+				return value;
+			}
+		}, CommandFuture.DIRECT);
+	}
+
 	/**
 	 * Obtain a partition model based on the mount point name.
 	 * 
@@ -182,11 +465,12 @@ public class UnixCommands {
 	}
 
 	/**
-	 * Close the root shell.
+	 * Close the root shells.
 	 */
 	public void closeShell() {
+		submitter.shutdown();
 		try {
-			rootShell.close();
+			shells.close();
 		} catch (IOException e) {
 		}
 	}
@@ -197,7 +481,7 @@ public class UnixCommands {
 	 * @return True if is enabled root access;
 	 */
 	public boolean hasRootAccess() {
-		return rootShell.hasRootAccess();
+		return shells.primary().hasRootAccess();
 	}
 
 	/**
@@ -206,6 +490,6 @@ public class UnixCommands {
 	 * @return The SU path or empty string.
 	 */
 	public String getSuPath() {
-		return rootShell.getSuPath();
+		return shells.primary().getSuPath();
 	}
 }
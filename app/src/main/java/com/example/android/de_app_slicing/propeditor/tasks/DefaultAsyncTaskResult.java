@@ -18,9 +18,14 @@
  */
 package com.example.android.de_app_slicing.propeditor.tasks;
 
+import java.util.List;
+
+import com.example.android.de_app_slicing.propeditor.properties.ValidationProblem;
+
 /**
  * Default result model used on asynchronous tasks to store process results:
- * task ID, result ID (OK or ERROR) and result message string.
+ * task ID, result ID (OK or ERROR), result message string and the validation
+ * problems found before saving, if any.
  * 
  * @author Kaumil Trivedi
  * 
@@ -29,4 +34,5 @@ public class DefaultAsyncTaskResult {
 	public int taskId;
 	public int resultId;
 	public String resultMessage;
+	public List<ValidationProblem> validationProblems;
 }
\ No newline at end of file
@@ -22,12 +22,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 
 import com.example.android.de_app_slicing.propeditor.PropEditorApplication;
 import com.example.android.de_app_slicing.propeditor.R;
 import com.example.android.de_app_slicing.propeditor.models.Constants;
 import com.example.android.de_app_slicing.propeditor.properties.Entities;
+import com.example.android.de_app_slicing.propeditor.properties.EntitiesSnapshot;
+import com.example.android.de_app_slicing.propeditor.shell.Command;
+import com.example.android.de_app_slicing.propeditor.shell.CommandBatch;
 import android.app.Application;
 import android.os.AsyncTask;
 
@@ -84,6 +86,15 @@ public class LoadPropertiesTask extends
 	 */
 	@Override
 	protected DefaultAsyncTaskResult doInBackground(Void... params) {
+		return load();
+	}
+
+	/**
+	 * Load the properties on the current thread.
+	 * 
+	 * @return The loading result.
+	 */
+	DefaultAsyncTaskResult load() {
 		defaultResult = new DefaultAsyncTaskResult();
 		defaultResult.resultId = Constants.OK;
 		loadTheProperties();
@@ -114,6 +125,13 @@ public class LoadPropertiesTask extends
 	 */
 	private void loadTheProperties() {
 		File f = new File(fileName);
+		File snapshotFile = getSnapshotFile();
+		if (f.exists() && f.isFile() && snapshotFile != null
+				&& EntitiesSnapshot.read(properties, f, snapshotFile)) {
+			defaultResult.resultMessage = getStringMessage(R.string.properties_loaded,
+					properties.size());
+			return;
+		}
 		if (f.exists() && f.isFile()) {
 			if (!f.canRead()) {
 				if (application.getUnixShell().hasRootAccess() && privateDir != null) {
@@ -121,12 +139,15 @@ public class LoadPropertiesTask extends
 				}
 			}
 			if (f != null && f.canRead()) {
-				InputStream inputStream = null;
+				FileInputStream inputStream = null;
 				try {
 					inputStream = new FileInputStream(f);
-					properties.load(inputStream);
+					properties.load(inputStream.getChannel());
 					defaultResult.resultMessage = getStringMessage(R.string.properties_loaded,
 									properties.size());
+					if (snapshotFile != null) {
+						saveSnapshot(new File(fileName), snapshotFile);
+					}
 				} catch (IllegalArgumentException e) {
 					defaultResult.resultId = Constants.ERROR_REPORT;
 					defaultResult.resultMessage = getStringMessage(R.string.loading_exception_report,
@@ -180,14 +201,53 @@ public class LoadPropertiesTask extends
 		return responder.getApplication().getString(resId, formatArgs);
 	}
 
+	/**
+	 * Get the file of the parsed properties snapshot, on the private data
+	 * folder.
+	 * 
+	 * @return The snapshot file or null if the private folder is not
+	 *         available.
+	 */
+	private File getSnapshotFile() {
+		if (privateDir == null) {
+			return null;
+		}
+		File folder = new File(privateDir + File.separator + "snapshots");
+		if (!folder.exists()) {
+			folder.mkdirs();
+		}
+		return new File(folder, fileName.replace('/', '_') + ".snap");
+	}
+
+	/**
+	 * Save the snapshot of the loaded properties, used on the next start if
+	 * the file is not changed.
+	 * 
+	 * @param sourceFile
+	 *            The original properties file.
+	 * @param snapshotFile
+	 *            The snapshot file.
+	 */
+	private void saveSnapshot(File sourceFile, File snapshotFile) {
+		try {
+			if (!EntitiesSnapshot.write(properties, sourceFile, snapshotFile)) {
+				snapshotFile.delete();
+			}
+		} catch (IOException e) {
+			snapshotFile.delete();
+			application.logE(TAG, "Unable to save the snapshot of " + fileName, e);
+		}
+	}
+
 	/**
 	 * Create a copy of original file on the private data folder to be read.
 	 * 
 	 * @return The readable file or null if is not available.
 	 */
 	private File prepareOriginalFile() {
+		// named after the full path, more files could be copied at once
 		File destFile = new File(privateDir + File.separator + "tmp"
-				+ File.separator + PropEditorApplication.BUILD_PROP);
+				+ File.separator + fileName.replace('/', '_'));
 		if (destFile.exists()) {
 			destFile.delete();
 		} else {
@@ -195,13 +255,15 @@ public class LoadPropertiesTask extends
 				destFile.getParentFile().getAbsoluteFile().mkdirs();
 			}
 		}
-		if (application.getUnixShell().runUnixCommand(
-				"cat " + fileName + " > " + destFile.getAbsolutePath())) {
-			application.getUnixShell().runUnixCommand(
-					"chmod 644 " + destFile.getAbsolutePath());
-			application.getUnixShell().runUnixCommand(
-					"chcon u:object_r:app_data_file:s0:c512,c768 " + destFile.getAbsolutePath());
-		} else {
+		// chmod and chcon are not run if the copy failed
+		CommandBatch batch = new CommandBatch(true);
+		Command copy = batch.add("cat " + fileName + " > "
+				+ destFile.getAbsolutePath());
+		batch.add("chmod 644 " + destFile.getAbsolutePath());
+		batch.add("chcon u:object_r:app_data_file:s0:c512,c768 "
+				+ destFile.getAbsolutePath());
+		application.getUnixShell().runIndependentBatch(batch);
+		if (!copy.isSuccessful()) {
 			destFile = null;
 		}
 		return destFile;
@@ -0,0 +1,151 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2016 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.tasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.example.android.de_app_slicing.propeditor.PropEditorApplication;
+import com.example.android.de_app_slicing.propeditor.R;
+import com.example.android.de_app_slicing.propeditor.models.Constants;
+import com.example.android.de_app_slicing.propeditor.properties.PropertyLayers;
+import android.os.AsyncTask;
+
+/**
+ * An asynchronous task to load all the properties layers at once. Every
+ * existing file is loaded by its own LoadPropertiesTask job, on a small thread
+ * pool, and the layers of the missing files are left empty. The file edited
+ * by the properties list is always loaded, so its absence is reported.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class LoadPropertyLayersTask extends
+		AsyncTask<Void, Void, DefaultAsyncTaskResult> {
+	private static final String TAG = LoadPropertyLayersTask.class.getName();
+
+	private LoadPropertiesTask.Responder responder;
+	private PropEditorApplication application;
+	private PropertyLayers layers;
+	private List<LoadPropertiesTask> jobs;
+
+	/**
+	 * Constructor of this async task
+	 * 
+	 * @param responder
+	 *            The process responder provided to get some application info
+	 * @param layers
+	 *            The properties layers to be loaded
+	 */
+	public LoadPropertyLayersTask(LoadPropertiesTask.Responder responder,
+			PropertyLayers layers) {
+		this.responder = responder;
+		this.layers = layers;
+		application = (PropEditorApplication) responder.getApplication();
+		jobs = new ArrayList<LoadPropertiesTask>();
+		for (PropertyLayers.Layer layer : layers.getLayers()) {
+			layer.getEntities().clear();
+			if (new File(layer.getPath()).exists()
+					|| layer.getEntities() == application.getEntities()) {
+				jobs.add(new LoadPropertiesTask(responder, layer.getPath(),
+						layer.getEntities()));
+			}
+		}
+	}
+
+	/**
+	 * Method invoked on the background thread.
+	 */
+	@Override
+	protected DefaultAsyncTaskResult doInBackground(Void... params) {
+		DefaultAsyncTaskResult defaultResult = new DefaultAsyncTaskResult();
+		defaultResult.resultId = Constants.OK;
+		StringBuilder errors = new StringBuilder();
+		int threads = Math.min(jobs.size(), Runtime.getRuntime()
+				.availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+				threads));
+		try {
+			List<Future<DefaultAsyncTaskResult>> results = new ArrayList<Future<DefaultAsyncTaskResult>>();
+			for (final LoadPropertiesTask job : jobs) {
+				results.add(executor.submit(new Callable<DefaultAsyncTaskResult>() {
+					@Override
+					public DefaultAsyncTaskResult call() {
+						return job.load();
+					}
+				}));
+			}
+			DefaultAsyncTaskResult result;
+			for (Future<DefaultAsyncTaskResult> future : results) {
+				result = future.get();
+				if (result.resultId != Constants.OK) {
+					defaultResult.resultId = Math.max(defaultResult.resultId,
+							result.resultId);
+					if (errors.length() > 0) {
+						errors.append('\n');
+					}
+					errors.append(result.resultMessage);
+				}
+			}
+		} catch (InterruptedException e) {
+			defaultResult.resultId = Constants.ERROR;
+			errors.append(e.getMessage());
+			application.logE(TAG, "Loading interrupted", e);
+		} catch (ExecutionException e) {
+			defaultResult.resultId = Constants.ERROR;
+			errors.append(e.getCause().getMessage());
+			application.logE(TAG, "Loading failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		layers.invalidate();
+		if (defaultResult.resultId == Constants.OK) {
+			defaultResult.resultMessage = application.getString(
+					R.string.properties_loaded, layers.getEffective().size());
+		} else {
+			defaultResult.resultMessage = errors.toString();
+		}
+		return defaultResult;
+	}
+
+	/**
+	 * Method invoked on the UI thread before the task is executed.
+	 */
+	@Override
+	protected void onPreExecute() {
+		super.onPreExecute();
+		responder.startLoadProperties();
+	}
+
+	/**
+	 * Method invoked on the UI thread after the background computation
+	 * finishes.
+	 */
+	@Override
+	protected void onPostExecute(DefaultAsyncTaskResult result) {
+		super.onPostExecute(result);
+		responder.endLoadProperties(result);
+	}
+}
@@ -18,15 +18,19 @@
  */
 package com.example.android.de_app_slicing.propeditor.tasks;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.List;
 
 import com.example.android.de_app_slicing.propeditor.PropEditorApplication;
 import com.example.android.de_app_slicing.propeditor.R;
 import com.example.android.de_app_slicing.propeditor.models.Constants;
 import com.example.android.de_app_slicing.propeditor.properties.Entities;
+import com.example.android.de_app_slicing.propeditor.properties.PropertyValidator;
+import com.example.android.de_app_slicing.propeditor.properties.ValidationProblem;
+import com.example.android.de_app_slicing.propeditor.shell.Command;
+import com.example.android.de_app_slicing.propeditor.shell.CommandBatch;
 import com.example.android.de_app_slicing.propeditor.util.Utilities;
 import android.app.Application;
 import android.os.AsyncTask;
@@ -40,6 +44,7 @@ import android.os.AsyncTask;
 public class SavePropertiesTask extends
 		AsyncTask<Void, Void, DefaultAsyncTaskResult> {
 	private static final String TAG = LoadPropertiesTask.class.getName();
+	private static final int MAX_REPORTED_PROBLEMS = 5;
 
 	/**
 	 * Responder used on save process.
@@ -59,13 +64,23 @@ public class SavePropertiesTask extends
 	private String fileName;
 	private File destinationFile;
 	private Entities properties;
+	private Entities original;
+	/**
+	 * The state of the original properties when the snapshot was taken, the
+	 * one marked as saved after the file is installed.
+	 */
+	private long savePoint;
 
 	public SavePropertiesTask(Responder responder, String fileName,
 			Entities properties) {
 		this.responder = responder;
 		this.fileName = fileName;
 		destinationFile = new File(fileName);
-		this.properties = properties;
+		// the snapshot is not affected by the edits made while saving, which
+		// stay modified
+		savePoint = properties.savePoint();
+		this.properties = (Entities) properties.clone();
+		original = properties;
 		privateDir = responder.getApplication().getFilesDir() != null ?
 				responder.getApplication().getFilesDir().getAbsolutePath() : null;
 		application = (PropEditorApplication) responder.getApplication();
@@ -76,12 +91,22 @@ public class SavePropertiesTask extends
 	 */
 	@Override
 	protected DefaultAsyncTaskResult doInBackground(Void... params) {
+		return save();
+	}
+
+	/**
+	 * Save the properties on the current thread.
+	 * 
+	 * @return The saving result.
+	 */
+	DefaultAsyncTaskResult save() {
 		defaultResult = new DefaultAsyncTaskResult();
 		defaultResult.resultId = Constants.OK;
-		boolean isSystem = fileName.startsWith(Constants.SYSTEM_PARTITION);
-		boolean continueSave = true;
+		String partition = getPartition();
+		boolean isSystem = partition != null;
+		boolean continueSave = validate();
 		boolean shouldMountSystem = false;
-		if (destinationFile.getParentFile() == null) {
+		if (continueSave && destinationFile.getParentFile() == null) {
 			continueSave = false;
 			defaultResult.resultId = Constants.ERROR;
 			defaultResult.resultMessage = application
@@ -98,12 +123,12 @@ public class SavePropertiesTask extends
 		if (continueSave) {
 			if (isSystem) {
 				shouldMountSystem = !application.getUnixShell()
-						.checkPartitionMountFlags(Constants.SYSTEM_PARTITION,
+						.checkPartitionMountFlags(partition,
 				Constants.READ_WRITE);
 			}
 			if (shouldMountSystem) {
 				continueSave = application.getUnixShell().mountPartition(
-						Constants.SYSTEM_PARTITION, Constants.READ_WRITE);
+						partition, Constants.READ_WRITE);
 			}
 			if (!continueSave) {
 				defaultResult.resultId = Constants.ERROR;
@@ -113,10 +138,9 @@ public class SavePropertiesTask extends
 		}
 		if (continueSave) {
 			if (privateDir != null) {
-				saveTheProperties();
-			}
-			if (privateDir != null && backupOldFile()) {
-				moveNewFile();
+				if (saveTheProperties()) {
+					installNewFile();
+				}
 			} else {
 				defaultResult.resultId = Constants.ERROR;
 				defaultResult.resultMessage = application.getString(
@@ -124,12 +148,62 @@ public class SavePropertiesTask extends
 			}
 			if (isSystem && shouldMountSystem) {
 				application.getUnixShell().mountPartition(
-						Constants.SYSTEM_PARTITION, Constants.READ_ONLY);
+						partition, Constants.READ_ONLY);
 			}
 		}
 		return defaultResult;
 	}
 
+	/**
+	 * Check the properties against the validation rules of the destination
+	 * file, before touching the partition. The problems are kept on the
+	 * result, the warnings do not stop the saving.
+	 * 
+	 * @return False if an error was found.
+	 */
+	private boolean validate() {
+		List<ValidationProblem> problems = PropertyValidator.forFile(fileName)
+				.validate(properties);
+		defaultResult.validationProblems = problems;
+		if (!PropertyValidator.hasErrors(problems)) {
+			return true;
+		}
+		StringBuilder sb = new StringBuilder();
+		int n = Math.min(problems.size(), MAX_REPORTED_PROBLEMS);
+		for (int i = 0; i < n; i++) {
+			sb.append(problems.get(i)).append('\n');
+		}
+		if (problems.size() > n) {
+			sb.append("...");
+		}
+		defaultResult.resultId = Constants.ERROR;
+		defaultResult.resultMessage = application.getString(
+				R.string.validation_failed, fileName, problems.size(),
+				sb.toString().trim());
+		return false;
+	}
+
+	/**
+	 * Find the mount point holding the destination file, if it is one of the
+	 * read only partitions: /system or the other partitions with properties
+	 * files like /vendor, /odm or /product.
+	 * 
+	 * @return The mount point or null if the file is not on such partition.
+	 */
+	private String getPartition() {
+		if (fileName.startsWith(Constants.SYSTEM_PARTITION)) {
+			return Constants.SYSTEM_PARTITION;
+		}
+		int end = fileName.indexOf('/', 1);
+		if (end > 0) {
+			String mountPoint = fileName.substring(0, end);
+			if (application.getUnixShell().getPartition(mountPoint) != null) {
+				return mountPoint;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Method invoked on the UI thread before the task is executed.
 	 */
@@ -151,14 +225,16 @@ public class SavePropertiesTask extends
 
 	/**
 	 * Save the Properties
+	 * 
+	 * @return False if the properties could not be written.
 	 */
-	private void saveTheProperties() {
+	private boolean saveTheProperties() {
 		File file = new File(privateDir + File.separator
 				+ destinationFile.getName());
-		BufferedWriter writer = null;
+		FileOutputStream outputStream = null;
 		try {
-			writer = new BufferedWriter(new FileWriter(file));
-			properties.store(writer);
+			outputStream = new FileOutputStream(file);
+			properties.store(outputStream);
 			defaultResult.resultMessage = application.getString(
 					R.string.file_saved, fileName);
 		} catch (IOException e) {
@@ -168,70 +244,57 @@ public class SavePropertiesTask extends
 					e.getMessage());
 			application.logE(TAG, defaultResult.resultMessage, e);
 		} finally {
-			if (writer != null) {
+			if (outputStream != null) {
 				try {
-					writer.close();
+					outputStream.close();
 				} catch (IOException e) {
 					/* ignored */
 				}
 			}
 		}
-		if (file.exists()) {
-			application.getUnixShell().runUnixCommand(
-					"chmod 644 " + file.getAbsoluteFile()
-			);
-		}
+		return Constants.OK == defaultResult.resultId;
 	}
 
 	/**
-	 * Backup old file.
+	 * Backup the old file and move the new file from the application private
+	 * folder to the right place. All the shell commands are sent as a single
+	 * batch, stopped on the first failed command.
 	 */
-	private boolean backupOldFile() {
-		boolean result = true;
+	private void installNewFile() {
+		File file = new File(privateDir + File.separator
+				+ destinationFile.getName());
+		File folder = destinationFile.getParentFile();
 		String bkFileName = backupOriginalFile();
+		CommandBatch batch = new CommandBatch(true);
+		if (file.exists()) {
+			batch.add("chmod 644 " + file.getAbsolutePath());
+		}
+		Command backup = null;
 		if (bkFileName != null) {
-			result = application.getUnixShell().runUnixCommand(
-					"mv " + fileName + " " + bkFileName);
+			backup = batch.add("mv " + fileName + " " + bkFileName);
 		}
-		return result;
-	}
-
-	/**
-	 * Move the file from the application private folder to the right place.
-	 */
-	private void moveNewFile() {
-		String prvFile = privateDir + File.separator
-				+ destinationFile.getName();
-		if (existDestinationFolder()) {
-			if (application.getUnixShell().runUnixCommand(
-					"cat " + prvFile + " > " + fileName)) {
-				application.getEntities().setModified(false);
-			} else {
-				defaultResult.resultId = Constants.ERROR;
-				defaultResult.resultMessage = application.getString(
-						R.string.new_file_failed);
-			}
-		} else {
+		Command mkdir = null;
+		if (!folder.exists()) {
+			mkdir = batch.add("mkdir -p " + folder.getAbsolutePath());
+		}
+		Command move = batch.add("cat " + file.getAbsolutePath() + " > "
+				+ fileName);
+		if (application.getUnixShell().runBatch(batch)) {
+			original.setSaved(savePoint);
+		} else if (backup != null && !backup.isSuccessful()) {
 			defaultResult.resultId = Constants.ERROR;
 			defaultResult.resultMessage = application.getString(
-					R.string.destination_folder_not_exist, destinationFile
-							.getParentFile().getAbsolutePath());
-		}
-	}
-
-	/**
-	 * If destination folder does not exist it will be created.
-	 */
-	private boolean existDestinationFolder() {
-		boolean exist = destinationFile.getParentFile().exists();
-		if (!exist) {
-			exist = application.getUnixShell()
-					.runUnixCommand(
-							"mkdir -p "
-									+ destinationFile.getParentFile()
-											.getAbsolutePath());
+					R.string.backup_failed);
+		} else if (mkdir != null && !mkdir.isSuccessful()) {
+			defaultResult.resultId = Constants.ERROR;
+			defaultResult.resultMessage = application.getString(
+					R.string.destination_folder_not_exist,
+					folder.getAbsolutePath());
+		} else if (!move.isSuccessful()) {
+			defaultResult.resultId = Constants.ERROR;
+			defaultResult.resultMessage = application.getString(
+					R.string.new_file_failed);
 		}
-		return exist;
 	}
 
 	/**
@@ -0,0 +1,111 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2016 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.android.de_app_slicing.propeditor.R;
+import com.example.android.de_app_slicing.propeditor.models.Constants;
+import com.example.android.de_app_slicing.propeditor.properties.PropertyLayers;
+import android.os.AsyncTask;
+
+/**
+ * An asynchronous task used to save the changed properties layers. The
+ * layers are saved one after another, each one by a SavePropertiesTask job,
+ * and the unchanged layers are not written at all.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class SavePropertyLayersTask extends
+		AsyncTask<Void, Void, DefaultAsyncTaskResult> {
+
+	private SavePropertiesTask.Responder responder;
+	private List<SavePropertiesTask> jobs;
+
+	/**
+	 * Constructor of this async task, it takes a snapshot of every changed
+	 * layer.
+	 * 
+	 * @param responder
+	 *            The process responder provided to get some application info
+	 * @param layers
+	 *            The properties layers to be saved
+	 */
+	public SavePropertyLayersTask(SavePropertiesTask.Responder responder,
+			PropertyLayers layers) {
+		this.responder = responder;
+		jobs = new ArrayList<SavePropertiesTask>();
+		for (PropertyLayers.Layer layer : layers.getModifiedLayers()) {
+			jobs.add(new SavePropertiesTask(responder, layer.getPath(), layer
+					.getEntities()));
+		}
+	}
+
+	/**
+	 * Method invoked on the background thread.
+	 */
+	@Override
+	protected DefaultAsyncTaskResult doInBackground(Void... params) {
+		DefaultAsyncTaskResult defaultResult = new DefaultAsyncTaskResult();
+		defaultResult.resultId = Constants.OK;
+		StringBuilder messages = new StringBuilder();
+		if (jobs.isEmpty()) {
+			defaultResult.resultMessage = responder.getApplication().getString(
+					R.string.no_changed_files);
+			return defaultResult;
+		}
+		DefaultAsyncTaskResult result;
+		for (SavePropertiesTask job : jobs) {
+			result = job.save();
+			if (result.resultId != Constants.OK) {
+				defaultResult.resultId = Math.max(defaultResult.resultId,
+						result.resultId);
+			}
+			if (result.resultMessage != null) {
+				if (messages.length() > 0) {
+					messages.append('\n');
+				}
+				messages.append(result.resultMessage);
+			}
+		}
+		defaultResult.resultMessage = messages.toString();
+		return defaultResult;
+	}
+
+	/**
+	 * Method invoked on the UI thread before the task is executed.
+	 */
+	@Override
+	protected void onPreExecute() {
+		super.onPreExecute();
+		responder.startSaveProperties();
+	}
+
+	/**
+	 * Method invoked on the UI thread after the background computation
+	 * finishes.
+	 */
+	@Override
+	protected void onPostExecute(DefaultAsyncTaskResult result) {
+		super.onPostExecute(result);
+		responder.endSaveProperties(result);
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the copy-on-write clones and of the read only properties
+ * view.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class EntitiesCloneTest {
+	private static final String FILE = "a=1\nb=2\n# c\nc=3\n";
+
+	@Test
+	public void changedCloneDoesNotChangeTheOriginal() throws IOException {
+		Entities original = EntitiesTest.loadBuffer(FILE);
+		Entities clone = (Entities) original.clone();
+		assertTrue(clone.entities == original.entities);
+		// the entity objects are shared, only the lists are copied
+		clone.remove(1);
+		clone.put("d", "4");
+		clone.add(new Entity(Type.PROPERTY, "a", "9"));
+		assertEquals("1", original.get("a").getContent());
+		assertEquals("2", original.get("b").getContent());
+		assertNull(original.get("d"));
+		assertEquals(3, original.size());
+		assertEquals(FILE, EntitiesStoreTest.store(original));
+		assertEquals("1", clone.get("a").getContent());
+		assertEquals(2, clone.duplicates().get("a").size());
+		assertNull(clone.get("b"));
+		assertEquals(4, clone.size());
+		EntitiesTest.assertConsistent(original);
+		EntitiesTest.assertConsistent(clone);
+	}
+
+	@Test
+	public void changedOriginalDoesNotChangeTheClone() throws IOException {
+		Entities original = EntitiesTest.loadBuffer(FILE);
+		assertTrue(original.containsKey("c"));
+		Entities clone = (Entities) original.clone();
+		original.remove(0);
+		original.clear();
+		assertEquals(3, clone.size());
+		assertEquals("1", clone.get("a").getContent());
+		assertEquals(FILE, EntitiesStoreTest.store(clone));
+		EntitiesTest.assertConsistent(clone);
+		assertFalse(clone.canUndo());
+	}
+
+	@Test
+	public void updatedOriginalDoesNotChangeTheClone() throws IOException {
+		for (Entities original : new Entities[] {
+				EntitiesTest.loadBuffer(FILE), EntitiesTest.loadStream(FILE) }) {
+			assertTrue(original.containsKey("b"));
+			Entities clone = (Entities) original.clone();
+			Entity b = clone.get("b");
+			assertTrue(original.update(original.get("b"), "ro.x", "9"));
+			assertEquals("1", original.put("a", "8"));
+			assertEquals("ro.x", original.get("ro.x").getKey());
+			assertSame(b, clone.get("b"));
+			assertEquals("b", b.getKey());
+			assertEquals("2", b.getContent());
+			assertEquals("1", clone.get("a").getContent());
+			assertNull(clone.get("ro.x"));
+			assertEquals(FILE, EntitiesStoreTest.store(clone));
+			// the journal follows the copies
+			assertEquals(2, original.dirtyEntities().size());
+			original.undo();
+			original.undo();
+			assertEquals(FILE, EntitiesStoreTest.store(original));
+			assertEquals(FILE, EntitiesStoreTest.store(clone));
+			EntitiesTest.assertConsistent(original);
+			EntitiesTest.assertConsistent(clone);
+		}
+	}
+
+	@Test
+	public void updatedCloneDoesNotChangeTheOriginal() throws IOException {
+		Entities original = EntitiesTest.loadStream(FILE);
+		original.getKeyTrie();
+		Entities clone = (Entities) original.clone();
+		clone.put("c", "7");
+		clone.update(clone.get("a"), "e", "5");
+		assertEquals("3", original.get("c").getContent());
+		assertEquals("a", original.get("a").getKey());
+		assertEquals(1, original.getKeyTrie().count("a"));
+		assertEquals(0, original.getKeyTrie().count("e"));
+		assertEquals(1, clone.getKeyTrie().count("e"));
+		assertEquals(FILE, EntitiesStoreTest.store(original));
+	}
+
+	@Test
+	public void updateOfAStaleEntityChangesItsCopy() throws IOException {
+		Entities original = EntitiesTest.loadBuffer(FILE);
+		Entities clone = (Entities) original.clone();
+		Entity a = original.get("a");
+		assertTrue(original.update(a, "a", "5"));
+		// a is the clone entity now, the copy on the original is changed
+		assertTrue(original.update(a, "a", "6"));
+		assertEquals("6", original.get("a").getContent());
+		assertEquals("1", clone.get("a").getContent());
+		assertFalse(original.update(new Entity("z", "1"), "z", "2"));
+	}
+
+	/**
+	 * Random changes of the original, or of the clone, never show on the
+	 * other side.
+	 */
+	@Test
+	public void randomChangesDoNotLeak() throws IOException {
+		String[] keys = { "a", "b", "c", "ro.x" };
+		Random random = new Random(42);
+		for (int run = 0; run < 500; run++) {
+			Entities original = run % 2 == 0 ? EntitiesTest.loadBuffer(FILE)
+					: EntitiesTest.loadStream(FILE);
+			Entities[] sides = { original, null };
+			for (int op = 0; op < 12; op++) {
+				if (sides[1] == null && random.nextInt(4) == 0) {
+					sides[1] = (Entities) original.clone();
+				}
+				Entities changed = sides[1] != null && random.nextBoolean() ? sides[1]
+						: original;
+				Entities other = changed == original ? sides[1] : original;
+				String before = other != null ? PropertiesParserTest
+						.dump(other) : null;
+				String key = keys[random.nextInt(keys.length)];
+				switch (random.nextInt(6)) {
+				case 0:
+					changed.put(key, Integer.toString(op));
+					break;
+				case 1:
+					Entity entity = changed.get(key);
+					if (entity != null) {
+						changed.update(entity, keys[random.nextInt(keys.length)],
+								Integer.toString(op));
+					}
+					break;
+				case 2:
+					changed.remove(random.nextInt(changed.size() + 1));
+					break;
+				case 3:
+					changed.add(new Entity(key, Integer.toString(op)));
+					break;
+				case 4:
+					changed.undo();
+					break;
+				default:
+					changed.redo();
+					break;
+				}
+				if (other != null) {
+					assertEquals(before, PropertiesParserTest.dump(other));
+					for (String k : keys) {
+						Entity entity = other.get(k);
+						assertTrue(entity == null || k.equals(entity.getKey()));
+					}
+					EntitiesTest.assertConsistent(other);
+				}
+				EntitiesTest.assertConsistent(changed);
+			}
+		}
+	}
+
+	@Test
+	public void clonesOfAClone() throws IOException {
+		Entities original = EntitiesTest.loadBuffer(FILE);
+		Entities first = (Entities) original.clone();
+		Entities second = (Entities) first.clone();
+		assertEquals(3, original.share.owners);
+		first.put("e", "5");
+		assertEquals(2, original.share.owners);
+		assertNull(original.get("e"));
+		assertNull(second.get("e"));
+		second.clear();
+		assertEquals(1, original.share.owners);
+		assertEquals(3, original.size());
+	}
+
+	@Test
+	public void propertiesViewDoesNotShareTheList() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer(FILE);
+		List<Entity> view = entities.getProperties();
+		assertEquals(4, view.size());
+		assertEquals(1, entities.share.owners);
+		List<Entity> list = entities.entities;
+		entities.put("d", "4");
+		// changed in place, no copy
+		assertTrue(list == entities.entities);
+		assertEquals(5, view.size());
+		assertEquals("d", view.get(4).getKey());
+	}
+
+	@Test
+	public void storeReleasesTheList() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer(FILE);
+		EntitiesStoreTest.store(entities);
+		assertEquals(1, entities.share.owners);
+		List<Entity> list = entities.entities;
+		entities.remove(0);
+		assertTrue(list == entities.entities);
+	}
+
+	@Test
+	public void viewIteratorSeesAShorterList() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer(FILE);
+		Iterator<Entity> iterator = entities.getProperties().iterator();
+		assertTrue(iterator.hasNext());
+		assertEquals("a", iterator.next().getKey());
+		entities.remove(2);
+		entities.remove(1);
+		assertTrue(iterator.hasNext());
+		assertEquals(Type.COMMENT, iterator.next().getType());
+		assertFalse(iterator.hasNext());
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the change journal: undo and redo with duplicate keys, and
+ * the entities built without a journal.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class EntitiesJournalTest {
+	private static final String DUPLICATES = "a=1\nb=2\n\na=3\nc=4\n";
+
+	@Test
+	public void undoAndRedoRemoveOfDuplicates() throws IOException {
+		for (Entities entities : new Entities[] {
+				EntitiesTest.loadBuffer(DUPLICATES),
+				EntitiesTest.loadStream(DUPLICATES) }) {
+			assertEquals("1", entities.get("a").getContent());
+			Entity first = entities.get("a");
+			entities.remove(first);
+			assertEquals("3", entities.get("a").getContent());
+			EntitiesTest.assertConsistent(entities);
+			assertTrue(entities.undo() != null);
+			assertTrue(first == entities.get("a"));
+			assertTrue(first == entities.getProperty(0));
+			EntitiesTest.assertConsistent(entities);
+			assertTrue(entities.redo() != null);
+			assertEquals("3", entities.get("a").getContent());
+			assertFalse(entities.canRedo());
+			EntitiesTest.assertConsistent(entities);
+			entities.undo();
+			assertFalse(entities.isModified());
+		}
+	}
+
+	@Test
+	public void undoRestoresTheOriginalBytes() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer(DUPLICATES);
+		entities.remove(2);
+		entities.put("a", "5");
+		entities.add(new Entity("a", "6"));
+		entities.update(entities.getProperty(1), "a", "7");
+		assertEquals(3, entities.duplicates().get("a").size());
+		EntitiesTest.assertConsistent(entities);
+		assertEquals(4, entities.changeCount());
+		assertEquals(4, entities.dirtyEntities().size());
+		while (entities.undo() != null) {
+			EntitiesTest.assertConsistent(entities);
+		}
+		assertEquals(DUPLICATES, EntitiesStoreTest.store(entities));
+		assertEquals(2, entities.duplicates().get("a").size());
+		while (entities.redo() != null) {
+			EntitiesTest.assertConsistent(entities);
+		}
+		assertEquals("5", entities.get("a").getContent());
+		assertEquals("a=5\na=7\n\nc=4\na=6\n", EntitiesStoreTest
+				.store(entities).replace(
+						System.getProperty("line.separator"), "\n"));
+	}
+
+	@Test
+	public void newChangeDropsTheRedo() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer(DUPLICATES);
+		entities.remove(0);
+		entities.undo();
+		assertTrue(entities.canRedo());
+		entities.put("d", "5");
+		assertFalse(entities.canRedo());
+		assertNull(entities.redo());
+		assertEquals(5, entities.size());
+	}
+
+	@Test
+	public void changesMadeWhileSavingStayModified() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer(DUPLICATES);
+		entities.put("b", "5");
+		long savePoint = entities.savePoint();
+		Entities snapshot = (Entities) entities.clone();
+		entities.put("c", "6");
+		entities.setSaved(savePoint);
+		assertTrue(entities.isModified());
+		assertEquals(1, entities.dirtyEntities().size());
+		assertEquals("c", entities.dirtyEntities().get(0).getKey());
+		entities.undo();
+		assertFalse(entities.isModified());
+		assertEquals("5", snapshot.get("b").getContent());
+		assertEquals("4", snapshot.get("c").getContent());
+	}
+
+	@Test
+	public void unreachableSavePointIsNotMarked() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer(DUPLICATES);
+		entities.put("b", "5");
+		long savePoint = entities.savePoint();
+		entities.undo();
+		entities.put("c", "6");
+		// same journal position, other state
+		assertEquals((int) savePoint, entities.changeCount());
+		entities.setSaved(savePoint);
+		assertTrue(entities.isModified());
+		entities.setSaved(entities.savePoint());
+		assertFalse(entities.isModified());
+		entities.setSaved(0);
+		assertTrue(entities.isModified());
+	}
+
+	@Test
+	public void listConstructorHasNoJournal() throws IOException {
+		Entities loaded = EntitiesTest.loadBuffer(DUPLICATES);
+		List<Entity> list = new ArrayList<Entity>(loaded.getProperties());
+		Entities entities = new Entities(list);
+		assertEquals(4, entities.size());
+		assertFalse(entities.canUndo());
+		assertFalse(entities.isModified());
+		assertEquals("1", entities.get("a").getContent());
+		EntitiesTest.assertConsistent(entities);
+		list.clear();
+		assertEquals(4, entities.size());
+		entities.remove(0);
+		assertEquals(4, loaded.size());
+		assertTrue(entities.canUndo());
+	}
+}
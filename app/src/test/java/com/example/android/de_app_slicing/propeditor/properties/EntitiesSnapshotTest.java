@@ -0,0 +1,151 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of the entities snapshot: it loads the same entities as the
+ * file and it is not used once the file changed.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class EntitiesSnapshotTest {
+	private static final String FILE = "# comment\r\na=1\r\n\r\nb\\\r\n  =\\u00e9\r\nc = 3 \r\n";
+	private static final long LENGTH = FILE.length();
+	private static final long MODIFIED = 1000000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File writeSnapshot(String text) throws IOException {
+		File snapshot = folder.newFile();
+		assertTrue(EntitiesSnapshot.write(EntitiesTest.loadBuffer(text),
+				text.length(), MODIFIED, snapshot));
+		return snapshot;
+	}
+
+	@Test
+	public void snapshotLoadsTheSameEntities() throws IOException {
+		for (String text : new String[] { FILE, "   ", "" }) {
+			File snapshot = writeSnapshot(text);
+			Entities entities = new Entities();
+			assertTrue(EntitiesSnapshot.read(entities, text.length(),
+					MODIFIED, snapshot));
+			Entities loaded = EntitiesTest.loadBuffer(text);
+			assertEquals(loaded.size(), entities.size());
+			for (int i = 0; i < loaded.size(); i++) {
+				assertEquals(loaded.getProperty(i).getKey(), entities
+						.getProperty(i).getKey());
+				assertEquals(loaded.getProperty(i).getContent(), entities
+						.getProperty(i).getContent());
+			}
+			assertEquals(text, EntitiesStoreTest.store(entities));
+			entities.put("d", "4");
+			loaded.put("d", "4");
+			assertEquals(EntitiesStoreTest.store(loaded),
+					EntitiesStoreTest.store(entities));
+		}
+	}
+
+	@Test
+	public void changedFileInvalidatesTheSnapshot() throws IOException {
+		File snapshot = writeSnapshot(FILE);
+		Entities entities = new Entities();
+		assertFalse(EntitiesSnapshot.read(entities, LENGTH + 1, MODIFIED,
+				snapshot));
+		assertFalse(EntitiesSnapshot.read(entities, LENGTH, MODIFIED + 1,
+				snapshot));
+		assertTrue(EntitiesSnapshot.read(entities, LENGTH, MODIFIED, snapshot));
+	}
+
+	@Test
+	public void damagedSnapshotIsNotLoaded() throws IOException {
+		File snapshot = writeSnapshot(FILE);
+		RandomAccessFile file = new RandomAccessFile(snapshot, "rw");
+		try {
+			// a byte of the embedded file
+			file.seek(file.length() / 2);
+			int b = file.read();
+			file.seek(file.length() / 2);
+			file.write(b ^ 0x20);
+		} finally {
+			file.close();
+		}
+		Entities entities = EntitiesTest.loadBuffer("x=1");
+		assertFalse(EntitiesSnapshot.read(entities, LENGTH, MODIFIED, snapshot));
+		// checked before the entities are cleared
+		assertEquals("1", entities.get("x").getContent());
+
+		file = new RandomAccessFile(snapshot, "rw");
+		try {
+			file.setLength(file.length() - 3);
+		} finally {
+			file.close();
+		}
+		assertFalse(EntitiesSnapshot.read(entities, LENGTH, MODIFIED, snapshot));
+	}
+
+	@Test
+	public void changedEntitiesAreNotSaved() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer(FILE);
+		entities.put("a", "2");
+		assertFalse(EntitiesSnapshot.write(entities, LENGTH, MODIFIED,
+				folder.newFile()));
+		assertFalse(EntitiesSnapshot.write(EntitiesTest.loadStream(FILE),
+				LENGTH, MODIFIED, folder.newFile()));
+	}
+
+	@Test
+	public void readableFileHasNoSnapshot() throws IOException {
+		File source = folder.newFile();
+		FileOutputStream out = new FileOutputStream(source);
+		try {
+			out.write(FILE.getBytes("ISO-8859-1"));
+		} finally {
+			out.close();
+		}
+		File snapshot = writeSnapshot(FILE);
+		Entities entities = EntitiesTest.loadBuffer(FILE);
+		assertFalse(EntitiesSnapshot.write(entities, source, folder.newFile()));
+		assertFalse(EntitiesSnapshot.read(entities, source, snapshot));
+	}
+
+	@Test
+	public void recordsAreSmallerThanTheLines() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append("ro.key.").append(i).append('=').append(i).append('\n');
+		}
+		File snapshot = writeSnapshot(text.toString());
+		assertTrue(snapshot.length() < text.length() + 3 * 1000 + 64);
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the Entities store: the loaded bytes are written back
+ * unchanged.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class EntitiesStoreTest {
+	private static final String[] FILES = { "", "   ", "\t", " \t\f", "\\",
+			" \\\n", "\n", "\r\n", "a=1", "a=1\n", "a=1\n  ", "  a = 1 \n\n",
+			"# comment\r\nb\\\r\n  =2\r\n", "c=\\u00e9\\n\n" };
+	private static final String LS = System.getProperty("line.separator");
+
+	static String store(Entities entities) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entities.store(out);
+		return out.toString("ISO-8859-1");
+	}
+
+	@Test
+	public void unchangedFilesRoundTrip() throws IOException {
+		for (String file : FILES) {
+			assertEquals(file, store(EntitiesTest.loadBuffer(file)));
+		}
+	}
+
+	@Test
+	public void blanksOfAFileWithoutLinesAreKept() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer("   ");
+		assertEquals(0, entities.size());
+		entities.put("a", "1");
+		assertEquals("   " + LS + "a=1" + LS, store(entities));
+		entities.undo();
+		assertEquals("   ", store(entities));
+	}
+
+	@Test
+	public void clearDropsTheBlanks() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer("\t");
+		entities.clear();
+		assertEquals("", store(entities));
+		entities.load(ByteBuffer.wrap("a=1".getBytes("ISO-8859-1")));
+		assertEquals("a=1", store(entities));
+	}
+
+	@Test
+	public void newLinesUseTheLineBreakOfTheFile() throws IOException {
+		String[] breaks = { "\r\n", "\r", "\n" };
+		for (String br : breaks) {
+			Entities entities = EntitiesTest.loadBuffer("a=1" + br + "b=2");
+			entities.put("c", "3");
+			entities.add(new Entity(Type.COMMENT, "#", "x" + br + "y"));
+			entities.update(entities.getProperty(0), "a", "4");
+			assertEquals("a=4" + br + "b=2" + br + "c=3" + br + "# x" + br
+					+ "#y" + br, store(entities));
+		}
+	}
+
+	@Test
+	public void decodedFileUsesItsLineBreak() throws IOException {
+		Entities entities = new Entities();
+		entities.load(ByteBuffer.wrap("a=1\rb=2".getBytes("UTF-16")));
+		entities.put("c", "3");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entities.store(out);
+		assertEquals("a=1\rb=2\rc=3\r", out.toString("UTF-16"));
+	}
+
+	@Test
+	public void fileWithoutLineBreakUsesTheSystemOne() throws IOException {
+		Entities entities = EntitiesTest.loadBuffer("a=1");
+		entities.put("b", "2");
+		assertEquals("a=1" + LS + "b=2" + LS, store(entities));
+	}
+}
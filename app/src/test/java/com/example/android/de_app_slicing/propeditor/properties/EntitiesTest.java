@@ -0,0 +1,148 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the Entities editing: key index, property index and journal.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class EntitiesTest {
+	private static final String DUPLICATES = "a=1\nb=2\n\na=3\nc=4\n";
+
+	/**
+	 * Load the text from a byte buffer, the columns path.
+	 */
+	static Entities loadBuffer(String text) throws IOException {
+		Entities entities = new Entities();
+		entities.load(ByteBuffer.wrap(text.getBytes("ISO-8859-1")));
+		return entities;
+	}
+
+	/**
+	 * Load the text from a stream, the parser path.
+	 */
+	static Entities loadStream(String text) throws IOException {
+		Entities entities = new Entities();
+		entities.load(new ByteArrayInputStream(text.getBytes("ISO-8859-1")));
+		return entities;
+	}
+
+	/**
+	 * Check that the property index and the key index agree with a scan of
+	 * the properties.
+	 */
+	static void assertConsistent(Entities entities) {
+		int properties = 0;
+		for (Entity entity : entities.getProperties()) {
+			if (Type.PROPERTY == entity.getType()) {
+				assertTrue(entity == entities.getProperty(properties));
+				properties++;
+				Entity first = entities.get(entity.getKey());
+				assertTrue(first != null);
+				assertEquals(entity.getKey(), first.getKey());
+			}
+		}
+		assertEquals(properties, entities.size());
+	}
+
+	@Test
+	public void removeFirstDuplicateAfterKeyLookup() throws IOException {
+		for (Entities entities : new Entities[] { loadBuffer(DUPLICATES),
+				loadStream(DUPLICATES) }) {
+			assertTrue(entities.containsKey("a"));
+			entities.remove(0);
+			assertEquals(3, entities.size());
+			assertEquals("3", entities.get("a").getContent());
+			assertConsistent(entities);
+			assertEquals("3", entities.put("a", "5"));
+			assertEquals("5", entities.get("a").getContent());
+			assertConsistent(entities);
+		}
+	}
+
+	@Test
+	public void removeLastDuplicateAfterKeyLookup() throws IOException {
+		Entities entities = loadBuffer(DUPLICATES);
+		assertEquals("1", entities.get("a").getContent());
+		entities.remove(2);
+		assertEquals("1", entities.get("a").getContent());
+		entities.remove(0);
+		assertFalse(entities.containsKey("a"));
+		assertNull(entities.put("a", "6"));
+		assertConsistent(entities);
+	}
+
+	@Test
+	public void renameFirstDuplicate() throws IOException {
+		Entities entities = loadBuffer(DUPLICATES);
+		Entity first = entities.get("a");
+		entities.update(first, "d", "1");
+		assertEquals("3", entities.get("a").getContent());
+		// a loaded line is replaced by a changed copy
+		assertEquals("1", entities.get("d").getContent());
+		assertEquals("a", first.getKey());
+		assertConsistent(entities);
+	}
+
+	@Test
+	public void evictedViewsStandForTheirLines() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append("k").append(i).append("=v").append(i).append('\n');
+			text.append("\u00e9\u20ac\ud83d\ude00").append(i).append("=w\n");
+		}
+		text.append("k7=again\n");
+		Entities entities = new Entities();
+		entities.load(ByteBuffer.wrap(text.toString().getBytes("UTF-8")),
+				Charsets.UTF_8);
+		Entity first = entities.getProperty(0);
+		Entity second = entities.getProperty(2);
+		for (int i = 0; i < entities.size(); i++) {
+			entities.getProperty(i).getKey();
+		}
+		// the views of the first lines were dropped, a new one is built
+		assertTrue(first.sameAs(entities.getProperty(0)));
+		assertFalse(first.sameAs(second));
+		assertEquals("w", entities.get("\u00e9\u20ac\ud83d\ude00999")
+				.getContent());
+		assertEquals(2, entities.duplicates().get("k7").size());
+		assertTrue(entities.update(first, "k0", "changed"));
+		assertEquals("changed", entities.get("k0").getContent());
+		entities.remove(second);
+		assertFalse(entities.containsKey("k1"));
+		assertEquals(2000, entities.size());
+		assertConsistent(entities);
+		assertTrue(entities.undo() != null);
+		assertEquals("v1", entities.get("k1").getContent());
+		assertConsistent(entities);
+	}
+}
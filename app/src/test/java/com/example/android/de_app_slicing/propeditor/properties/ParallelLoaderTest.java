@@ -0,0 +1,146 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Parity of the parallel chunked loader with the sequential one.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class ParallelLoaderTest {
+	private static final String[] FRAGMENTS = { "a", "ro.b", "=", ":", " ",
+			"\t", "\\", "\\\\", "\n", "\n", "\n", "\r\n", "\r", "#", "!",
+			"\\u00e9", "\\t", "x.y.z", "\f", "\\\n", "\\\r\n" };
+
+	private static ExecutorService executor;
+
+	@BeforeClass
+	public static void startExecutor() {
+		executor = Executors.newFixedThreadPool(3);
+	}
+
+	@AfterClass
+	public static void stopExecutor() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Load the bytes in the specified number of chunks, like a large file.
+	 */
+	private static Entities loadChunks(byte[] source, int chunks)
+			throws IOException {
+		Entities entities = new Entities();
+		entities.charset = Charsets.detect(source);
+		assertTrue(ParallelLoader.load(entities, source, Charsets
+				.bomLength(source), executor, chunks));
+		return entities;
+	}
+
+	private static void assertSameLoad(byte[] source, int chunks)
+			throws IOException {
+		String text = new String(source, "ISO-8859-1");
+		Entities sequential = new Entities();
+		sequential.load(ByteBuffer.wrap(source), (ExecutorService) null);
+		Entities parallel = loadChunks(source, chunks);
+		String dump = PropertiesParserTest.dump(sequential);
+		assertEquals(dump, PropertiesParserTest.dump(parallel));
+		Entities stream = new Entities();
+		stream.load(new ByteArrayInputStream(source));
+		assertEquals(dump, PropertiesParserTest.dump(stream));
+		assertEquals(sequential.size(), parallel.size());
+		for (int i = 0; i < parallel.size(); i++) {
+			assertTrue(parallel.getProperty(i) == parallel.get(parallel
+					.getProperty(i).getKey())
+					|| parallel.duplicates().containsKey(
+							parallel.getProperty(i).getKey()));
+		}
+		assertEquals(text, EntitiesStoreTest.store(parallel));
+	}
+
+	@Test
+	public void sampleInChunks() throws IOException {
+		byte[] sample = PropertiesParserTest.resource("parser-sample.prop");
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			text.append(new String(sample, "ISO-8859-1")).append("\n");
+		}
+		byte[] source = text.toString().getBytes("ISO-8859-1");
+		for (int chunks = 2; chunks <= 16; chunks++) {
+			assertSameLoad(source, chunks);
+		}
+	}
+
+	@Test
+	public void randomLinesInChunks() throws IOException {
+		Random random = new Random(19);
+		StringBuilder text = new StringBuilder();
+		for (int round = 0; round < 200; round++) {
+			text.setLength(0);
+			int fragments = 200 + random.nextInt(800);
+			for (int i = 0; i < fragments; i++) {
+				text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+			byte[] source = text.toString().getBytes("ISO-8859-1");
+			int[] ends = ParallelLoader.split(source, 0, 2 + round % 7);
+			if (ends.length > 1) {
+				assertSameLoad(source, 2 + round % 7);
+			}
+		}
+	}
+
+	@Test
+	public void chunksEndAfterWholeLines() throws IOException {
+		byte[] source = "a=1\\\n  2\n\n   \nb=3\r\nc=4\\\r\n\\\n5\nd=6\n"
+				.getBytes("ISO-8859-1");
+		for (int pos = 0; pos < source.length; pos++) {
+			int end = ParallelLoader.safeEnd(source, pos);
+			assertTrue(end == 9 || end == 19 || end == 29
+					|| end == source.length);
+		}
+	}
+
+	@Test
+	public void utf8InChunks() throws IOException {
+		StringBuilder text = new StringBuilder("\ufeff");
+		for (int i = 0; i < 2000; i++) {
+			text.append("k").append(i).append("=caf\u00e9 \u4e2d").append(i)
+					.append('\n');
+		}
+		byte[] source = text.toString().getBytes("UTF-8");
+		Entities parallel = loadChunks(source, 5);
+		assertEquals(2000, parallel.size());
+		assertEquals("caf\u00e9 \u4e2d1999", parallel.get("k1999")
+				.getContent());
+	}
+}
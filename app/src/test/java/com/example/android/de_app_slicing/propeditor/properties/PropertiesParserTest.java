@@ -0,0 +1,223 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Parity of the parser paths with the original parser. The expected entities
+ * of parser-sample.prop were dumped by the Entities loader this parser
+ * replaced.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class PropertiesParserTest {
+
+	static byte[] resource(String name) throws IOException {
+		InputStream in = PropertiesParserTest.class.getResourceAsStream(name);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	static String escape(String text) {
+		if (text == null) {
+			return "null";
+		}
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c < 0x20 || c > 0x7e || c == '\\' || c == '|') {
+				result.append(String.format("\\u%04x", (int) c));
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * One line per entity: type, key and content.
+	 */
+	static String dump(Entities entities) {
+		StringBuilder result = new StringBuilder();
+		for (Entity entity : entities.getProperties()) {
+			append(result, entity.getType(), entity.getKey(),
+					entity.getContent());
+		}
+		return result.toString();
+	}
+
+	private static void append(StringBuilder result, Type type, String key,
+			String content) {
+		result.append(type).append('|').append(escape(key)).append('|')
+				.append(escape(content)).append('\n');
+	}
+
+	private static String expected() throws IOException {
+		return new String(resource("parser-sample.expected"), "ISO-8859-1");
+	}
+
+	private static byte[] sample() throws IOException {
+		return resource("parser-sample.prop");
+	}
+
+	@Test
+	public void streamLoaderMatchesTheOriginalParser() throws IOException {
+		Entities entities = new Entities();
+		entities.load(new ByteArrayInputStream(sample()));
+		assertEquals(expected(), dump(entities));
+	}
+
+	@Test
+	public void bufferLoaderMatchesTheOriginalParser() throws IOException {
+		Entities entities = new Entities();
+		entities.load(ByteBuffer.wrap(sample()));
+		assertEquals(Charsets.ISO_8859_1, entities.getCharset());
+		assertEquals(expected(), dump(entities));
+	}
+
+	@Test
+	public void utf8LoadersMatchTheOriginalParser() throws IOException {
+		byte[] utf8 = new String(sample(), "ISO-8859-1").getBytes("UTF-8");
+		Entities entities = new Entities();
+		entities.load(ByteBuffer.wrap(utf8));
+		assertEquals(Charsets.UTF_8, entities.getCharset());
+		assertEquals(expected(), dump(entities));
+		entities.load(new ByteArrayInputStream(utf8), Charsets.UTF_8);
+		assertEquals(expected(), dump(entities));
+	}
+
+	@Test
+	public void readerMatchesTheOriginalParser() throws IOException {
+		final StringBuilder result = new StringBuilder();
+		new PropertiesParser(new PropertiesParser.Listener() {
+			@Override
+			public boolean property(String key, String value) {
+				append(result, Type.PROPERTY, key, value);
+				return true;
+			}
+
+			@Override
+			public boolean comment(String key, String value) {
+				append(result, Type.COMMENT, key, value);
+				return true;
+			}
+
+			@Override
+			public boolean emptyLine() {
+				append(result, Type.EMPTY, "", "");
+				return true;
+			}
+		}).parse(new StringReader(new String(sample(), "ISO-8859-1")));
+		assertEquals(expected(), result.toString());
+	}
+
+	@Test
+	public void listenerStopsTheParsing() throws IOException {
+		final int[] properties = new int[1];
+		PropertiesParser parser = new PropertiesParser(
+				new PropertiesParser.Listener() {
+					@Override
+					public boolean property(String key, String value) {
+						return ++properties[0] < 2;
+					}
+
+					@Override
+					public boolean comment(String key, String value) {
+						return true;
+					}
+
+					@Override
+					public boolean emptyLine() {
+						return true;
+					}
+				});
+		parser.parse(new ByteArrayInputStream(sample()));
+		assertTrue(parser.isStopped());
+		assertEquals(2, properties[0]);
+		assertEquals("1", PropertiesParser.findProperty(
+				new ByteArrayInputStream(sample()), "dup"));
+		assertEquals("\u00e9\u4e2dA", PropertiesParser.findProperty(
+				new ByteArrayInputStream(sample()), "unicode"));
+		properties[0] = -1;
+		parser.parse(new ByteArrayInputStream("a=1".getBytes("ISO-8859-1")));
+		assertFalse(parser.isStopped());
+	}
+
+	@Test
+	public void escapedLinesRoundTrip() throws IOException {
+		Entities entities = new Entities();
+		entities.load(ByteBuffer.wrap(sample()));
+		assertEquals(new String(sample(), "ISO-8859-1"),
+				EntitiesStoreTest.store(entities));
+		Entities copy = new Entities();
+		for (Entity entity : entities.getProperties()) {
+			// the separators are not escaped in the keys, like the original
+			// writer did
+			if (Type.PROPERTY == entity.getType()
+					&& !entity.getKey().matches(".*[=:#!].*")) {
+				copy.add(new Entity(entity.getKey(), entity.getContent()));
+			}
+		}
+		// written from the strings, then parsed back
+		Entities reloaded = new Entities();
+		reloaded.load(ByteBuffer.wrap(EntitiesStoreTest.store(copy).getBytes(
+				"ISO-8859-1")));
+		assertEquals(copy.size(), reloaded.size());
+		for (int i = 0; i < copy.size(); i++) {
+			assertEquals(copy.getProperty(i).getKey(), reloaded.getProperty(i)
+					.getKey());
+			assertEquals(copy.getProperty(i).getContent(), reloaded
+					.getProperty(i).getContent());
+		}
+	}
+
+	@Test
+	public void lastBackslashOfTheFileIsDropped() throws IOException {
+		for (String text : new String[] { "a=x\\", "a=x\\\n", "a=x\\\r\n",
+				"b=1\na=x\\\n" }) {
+			assertEquals("x", EntitiesTest.loadStream(text).get("a")
+					.getContent());
+			Entities entities = EntitiesTest.loadBuffer(text);
+			assertEquals("x", entities.get("a").getContent());
+			assertEquals(text, EntitiesStoreTest.store(entities));
+		}
+	}
+}
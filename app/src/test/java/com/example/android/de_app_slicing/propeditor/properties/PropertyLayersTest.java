@@ -0,0 +1,120 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the effective properties of several files.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class PropertyLayersTest {
+
+	private static PropertyLayers load(String... files) throws IOException {
+		String[] paths = new String[files.length];
+		for (int i = 0; i < files.length; i++) {
+			paths[i] = "/layer" + i + ".prop";
+		}
+		PropertyLayers layers = new PropertyLayers(paths);
+		for (int i = 0; i < files.length; i++) {
+			layers.getLayers().get(i).getEntities()
+					.load(ByteBuffer.wrap(files[i].getBytes("ISO-8859-1")));
+		}
+		return layers;
+	}
+
+	@Test
+	public void readOnlyKeysKeepTheFirstDefinition() throws IOException {
+		PropertyLayers layers = load("ro.a=1\nro.a=2\n", "ro.a=3\nro.b=4\n");
+		assertEquals("1", layers.get("ro.a").getContent());
+		assertEquals("/layer0.prop",
+				layers.getSource(layers.get("ro.a")).getPath());
+		assertEquals("4", layers.get("ro.b").getContent());
+	}
+
+	@Test
+	public void otherKeysTakeTheLastDefinition() throws IOException {
+		PropertyLayers layers = load("a=1\na=2\nb=5\n", "a=3\n");
+		assertEquals("3", layers.get("a").getContent());
+		assertEquals("5", layers.get("b").getContent());
+		layers = load("a=1\na=2\n");
+		assertEquals("2", layers.get("a").getContent());
+	}
+
+	@Test
+	public void singleLayerAgreesWithEntitiesForReadOnlyKeys()
+			throws IOException {
+		String file = "ro.x=1\ny=2\nro.x=3\n";
+		PropertyLayers layers = load(file);
+		assertTrue(layers.get("ro.x") == layers.getLayers().get(0)
+				.getEntities().get("ro.x"));
+	}
+
+	@Test
+	public void effectiveKeysInTheOrderOfTheFirstDefinition()
+			throws IOException {
+		PropertyLayers layers = load("b=1\nro.a=2\n", "c=3\nb=4\nro.a=5\n");
+		Map<String, Entity> effective = layers.getEffective();
+		assertEquals(Arrays.asList("b", "ro.a", "c"),
+				Arrays.asList(effective.keySet().toArray()));
+		assertEquals("4", effective.get("b").getContent());
+		assertEquals("2", effective.get("ro.a").getContent());
+	}
+
+	@Test
+	public void changesGoToTheOwningLayer() throws IOException {
+		PropertyLayers layers = load("ro.a=1\n", "ro.a=2\nb=3\n");
+		assertEquals("1", layers.put("ro.a", "9", layers.getLayers().get(1)));
+		assertTrue(layers.getLayers().get(0).isModified());
+		assertEquals(1, layers.getModifiedLayers().size());
+		assertEquals("2", layers.getLayers().get(1).getEntities().get("ro.a")
+				.getContent());
+		assertNull(layers.put("c", "4", layers.getLayers().get(1)));
+		assertEquals("4", layers.get("c").getContent());
+		assertTrue(layers.remove(layers.get("ro.a")));
+		assertEquals("2", layers.get("ro.a").getContent());
+	}
+
+	@Test
+	public void directChangesOfASharedLayerAreNoticed() throws IOException {
+		PropertyLayers layers = load("a=1\n", "");
+		Entities edited = EntitiesTest.loadBuffer("b=2\n");
+		layers.setEntities("/layer1.prop", edited);
+		assertEquals("2", layers.get("b").getContent());
+		edited.put("a", "3");
+		assertEquals("3", layers.get("a").getContent());
+		assertEquals("/layer1.prop", layers.getSource(layers.get("a"))
+				.getPath());
+		edited.update(edited.get("b"), "c", "4");
+		assertNull(layers.get("b"));
+		assertTrue(layers.getSource(layers.get("c")).getEntities() == edited);
+		assertEquals(1, layers.getModifiedLayers().size());
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the compiled validation rules.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class PropertyValidatorTest {
+
+	private static List<ValidationProblem> validate(
+			PropertyValidator validator, String text) throws IOException {
+		return validator.validate(EntitiesTest.loadBuffer(text));
+	}
+
+	private static void assertProblem(ValidationProblem problem,
+			ValidationProblem.Severity severity, ValidationProblem.Kind kind,
+			String key) {
+		assertEquals(severity, problem.getSeverity());
+		assertEquals(kind, problem.getKind());
+		assertEquals(key, problem.getKey());
+	}
+
+	@Test
+	public void validValuesHaveNoProblem() throws IOException {
+		PropertyValidator validator = new PropertyValidator(
+				PropertyValidator.DEFAULT_RULES);
+		assertTrue(validate(validator,
+				"ro.sf.lcd_density=240\ndalvik.vm.heapsize=256m\n"
+						+ "ro.secure=1\nro.debuggable = false\n"
+						+ "ro.HOME_APP_ADJ=-17\nother=anything\n# ro.secure=x\n")
+				.isEmpty());
+	}
+
+	@Test
+	public void typesAndRanges() throws IOException {
+		PropertyValidator validator = new PropertyValidator(new String[] {
+				"a int 1..10", "b long ..0", "c size 1k..1m", "d boolean",
+				"e text" });
+		List<ValidationProblem> problems = validate(validator,
+				"a=11\na=x\nb=1\nb=-5\nc=2g\nc=512\nc=64k\nd=maybe\nd=On\ne=\n");
+		StringBuilder kinds = new StringBuilder();
+		for (ValidationProblem problem : problems) {
+			kinds.append(problem.getKind()).append(' ').append(problem.getKey())
+					.append('\n');
+		}
+		assertEquals("OUT_OF_RANGE a\nDUPLICATE a\nINVALID_VALUE a\n"
+				+ "OUT_OF_RANGE b\nDUPLICATE b\nOUT_OF_RANGE c\n"
+				+ "DUPLICATE c\nOUT_OF_RANGE c\nDUPLICATE c\n"
+				+ "INVALID_VALUE d\nDUPLICATE d\n", kinds.toString());
+		assertProblem(problems.get(1), ValidationProblem.Severity.WARNING,
+				ValidationProblem.Kind.DUPLICATE, "a");
+		assertProblem(problems.get(2), ValidationProblem.Severity.ERROR,
+				ValidationProblem.Kind.INVALID_VALUE, "a");
+		assertTrue(problems.get(5).getMessage().contains("1024..1048576"));
+		assertTrue(PropertyValidator.hasErrors(problems));
+	}
+
+	@Test
+	public void changedPropertiesAreChecked() throws IOException {
+		PropertyValidator validator = new PropertyValidator(
+				PropertyValidator.DEFAULT_RULES);
+		Entities entities = EntitiesTest
+				.loadBuffer("ro.sf.lcd_density=240\nro.secure=1\nother=1\n");
+		assertTrue(validator.validate(entities).isEmpty());
+		entities.put("ro.sf.lcd_density", "10");
+		entities.update(entities.get("other"),
+				"a.key.longer.than.thirty.one.chars", "1");
+		entities.add(new Entity("ro.secure", "maybe"));
+		List<ValidationProblem> problems = validator.validate(entities);
+		assertEquals(4, problems.size());
+		assertProblem(problems.get(0), ValidationProblem.Severity.ERROR,
+				ValidationProblem.Kind.OUT_OF_RANGE, "ro.sf.lcd_density");
+		assertProblem(problems.get(1), ValidationProblem.Severity.WARNING,
+				ValidationProblem.Kind.TOO_LONG,
+				"a.key.longer.than.thirty.one.chars");
+		assertProblem(problems.get(2), ValidationProblem.Severity.WARNING,
+				ValidationProblem.Kind.DUPLICATE, "ro.secure");
+		assertProblem(problems.get(3), ValidationProblem.Severity.ERROR,
+				ValidationProblem.Kind.INVALID_VALUE, "ro.secure");
+	}
+
+	@Test
+	public void namespaceRuleOfTheNearestNamespace() throws IOException {
+		PropertyValidator validator = new PropertyValidator(new String[] {
+				"persist.* text", "persist.sys.* boolean",
+				"persist.sys.timeout int 0.." });
+		List<ValidationProblem> problems = validate(validator,
+				"persist.sys.ui=x\npersist.sys.timeout=5\npersist.a=x\n"
+						+ "persist.sys.x.y=maybe\npersistent=maybe\n");
+		assertEquals(2, problems.size());
+		assertEquals("persist.sys.ui", problems.get(0).getKey());
+		assertEquals("persist.sys.x.y", problems.get(1).getKey());
+	}
+
+	@Test
+	public void requiredKeysOfBuildProp() throws IOException {
+		PropertyValidator validator = PropertyValidator
+				.forFile("/system/build.prop");
+		assertTrue(validator == PropertyValidator
+				.forFile("/system/build.prop"));
+		List<ValidationProblem> problems = validate(validator,
+				"ro.build.version.sdk=17\n");
+		assertEquals(1, problems.size());
+		assertProblem(problems.get(0), ValidationProblem.Severity.ERROR,
+				ValidationProblem.Kind.MISSING, "ro.build.version.release");
+		assertNull(problems.get(0).getEntity());
+		assertTrue(validate(PropertyValidator.forFile("/data/local.prop"),
+				"a=1\n").isEmpty());
+	}
+
+	@Test
+	public void longKeysAndValuesAreWarnings() throws IOException {
+		PropertyValidator validator = new PropertyValidator();
+		StringBuilder longValue = new StringBuilder();
+		for (int i = 0; i <= PropertyValidator.VALUE_MAX; i++) {
+			longValue.append('v');
+		}
+		List<ValidationProblem> problems = validate(validator,
+				"a.key.longer.than.thirty.one.chars=1\nshort=" + longValue
+						+ "\nro.fingerprint=" + longValue + "\n");
+		assertEquals(3, problems.size());
+		assertProblem(problems.get(0), ValidationProblem.Severity.WARNING,
+				ValidationProblem.Kind.TOO_LONG,
+				"a.key.longer.than.thirty.one.chars");
+		assertProblem(problems.get(1), ValidationProblem.Severity.WARNING,
+				ValidationProblem.Kind.TOO_LONG, "short");
+		// the limit applied to the read only properties too before Android 8
+		assertProblem(problems.get(2), ValidationProblem.Severity.WARNING,
+				ValidationProblem.Kind.TOO_LONG, "ro.fingerprint");
+		assertFalse(PropertyValidator.hasErrors(problems));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownTypeIsRejected() {
+		new PropertyValidator(new String[] { "a float" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rangeOfBooleanIsRejected() {
+		new PropertyValidator(new String[] { "a boolean 0..1" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidBoundIsRejected() {
+		new PropertyValidator(new String[] { "a size 1x.." });
+	}
+}
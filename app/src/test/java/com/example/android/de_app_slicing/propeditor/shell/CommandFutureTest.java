@@ -0,0 +1,225 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.shell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the command futures, the commands are answered directly
+ * instead of by a root shell.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class CommandFutureTest {
+
+	@Test
+	public void everyFutureOfACommandIsCompleted() throws Exception {
+		Command command = new Command("true");
+		CommandFuture<Boolean> first = command.toFuture();
+		CommandFuture<Boolean> second = command.toFuture();
+		command.setExitCode(0);
+		assertTrue(first.get(1, TimeUnit.SECONDS));
+		assertTrue(second.get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void batchAndLastCommandFuturesAreCompleted() throws Exception {
+		CommandBatch batch = new CommandBatch(false);
+		Command first = batch.add("true");
+		Command last = batch.add("false");
+		CommandFuture<Boolean> batchFuture = batch.toFuture();
+		CommandFuture<Boolean> lastFuture = last.toFuture();
+		first.setExitCode(0);
+		last.setExitCode(1);
+		assertFalse(batchFuture.get(1, TimeUnit.SECONDS));
+		assertFalse(lastFuture.get(1, TimeUnit.SECONDS));
+		assertEquals(1, batch.getExitCodes()[1]);
+	}
+
+	@Test
+	public void unansweredCommandFailsWithTimeout() throws Exception {
+		Command command = new Command("sleep 100");
+		CommandFuture<Boolean> future = command.toFuture();
+		command.expireAfter(50);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertFalse(command.isSuccessful());
+	}
+
+	@Test
+	public void abandonedBatchFailsWithIOException() throws Exception {
+		CommandBatch batch = new CommandBatch(true);
+		batch.add("true");
+		batch.add("true");
+		CommandFuture<Boolean> future = batch.toFuture();
+		batch.get(0).abandon();
+		batch.get(1).abandon();
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	@Test
+	public void cancelPropagatesToCommandAndChain() throws Exception {
+		Command command = new Command("true");
+		CommandFuture<Boolean> future = command.toFuture();
+		CommandFuture<String> chained = future.then(
+				new CommandFuture.Function<Boolean, String>() {
+					@Override
+					public String apply(Boolean value) {
+						return String.valueOf(value);
+					}
+				}, CommandFuture.DIRECT);
+		assertTrue(chained.cancel(false));
+		assertTrue(future.isCancelled());
+		assertTrue(command.isCancelled());
+		try {
+			chained.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (CancellationException e) {
+			// expected
+		}
+		// the late answer does not change the cancelled future
+		command.setExitCode(0);
+		assertTrue(future.isCancelled());
+	}
+
+	@Test
+	public void callbackRunsOnTheExecutor() throws Exception {
+		final String[] seen = new String[1];
+		final Thread[] thread = new Thread[1];
+		CommandFuture<Integer> future = new CommandFuture<Integer>();
+		future.addCallback(new CommandFuture.Callback<Integer>() {
+			@Override
+			public void onSuccess(Integer value) {
+				seen[0] = "ok " + value;
+				thread[0] = Thread.currentThread();
+			}
+
+			@Override
+			public void onFailure(Throwable failure) {
+				seen[0] = "failed";
+			}
+		}, CommandFuture.DIRECT);
+		future.complete(3);
+		assertEquals("ok 3", seen[0]);
+		assertTrue(thread[0] == Thread.currentThread());
+		assertFalse(future.fail(new IOException()));
+		assertEquals(Integer.valueOf(3), future.get());
+	}
+
+	@Test
+	public void composedFutureWaitsForTheInnerOne() throws Exception {
+		final Command second = new Command("false");
+		Command first = new Command("true");
+		CommandFuture<Boolean> composed = first.toFuture().thenCompose(
+				new CommandFuture.Function<Boolean, CommandFuture<Boolean>>() {
+					@Override
+					public CommandFuture<Boolean> apply(Boolean value) {
+						return second.toFuture();
+					}
+				}, CommandFuture.DIRECT);
+		first.setExitCode(0);
+		assertFalse(composed.isDone());
+		second.setExitCode(1);
+		assertFalse(composed.get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void cancelReachesTheComposedOperation() throws Exception {
+		final CommandFuture<Boolean> inner = new CommandFuture<Boolean>();
+		CommandFuture<Boolean> composed = CommandFuture.completed(true)
+				.thenCompose(
+						new CommandFuture.Function<Boolean, CommandFuture<Boolean>>() {
+							@Override
+							public CommandFuture<Boolean> apply(Boolean value) {
+								return inner;
+							}
+						}, CommandFuture.DIRECT);
+		assertFalse(composed.isDone());
+		assertTrue(composed.cancel(false));
+		assertTrue(inner.isCancelled());
+	}
+
+	@Test
+	public void operationStartedAfterCancelIsCancelled() throws Exception {
+		final CommandFuture<Boolean> inner = new CommandFuture<Boolean>();
+		final CommandFuture<Boolean> first = new CommandFuture<Boolean>();
+		final CommandFuture<Boolean>[] composed = newArray();
+		composed[0] = first.thenCompose(
+				new CommandFuture.Function<Boolean, CommandFuture<Boolean>>() {
+					@Override
+					public CommandFuture<Boolean> apply(Boolean value) {
+						// the chained future is cancelled while starting
+						composed[0].cancel(false);
+						return inner;
+					}
+				}, CommandFuture.DIRECT);
+		first.complete(true);
+		assertTrue(composed[0].isCancelled());
+		assertTrue(inner.isCancelled());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static CommandFuture<Boolean>[] newArray() {
+		return new CommandFuture[1];
+	}
+
+	@Test
+	public void missingComposedOperationFails() throws Exception {
+		CommandFuture<Boolean> composed = CommandFuture.completed(true)
+				.thenCompose(
+						new CommandFuture.Function<Boolean, CommandFuture<Boolean>>() {
+							@Override
+							public CommandFuture<Boolean> apply(Boolean value) {
+								return null;
+							}
+						}, CommandFuture.DIRECT);
+		try {
+			composed.get(1, TimeUnit.SECONDS);
+			fail("The composed future should fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NullPointerException);
+		}
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void getTimesOut() throws Exception {
+		new CommandFuture<Boolean>().get(10, TimeUnit.MILLISECONDS);
+	}
+}
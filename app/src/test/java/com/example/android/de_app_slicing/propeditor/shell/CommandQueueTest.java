@@ -0,0 +1,156 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.propeditor.shell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the command ring buffer: order, capacity and release of the
+ * commands.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class CommandQueueTest {
+
+	private static List<Command> commands(String prefix, int count) {
+		List<Command> result = new ArrayList<Command>();
+		for (int i = 0; i < count; i++) {
+			result.add(new Command(prefix + i));
+		}
+		return result;
+	}
+
+	@Test
+	public void commandsAreWrittenAndCompletedInOrder() throws Exception {
+		CommandQueue queue = new CommandQueue(4);
+		List<Command> first = commands("a", 3);
+		assertEquals(3, queue.offer(first, 0));
+		List<Command> unwritten = new ArrayList<Command>();
+		assertEquals(0, queue.takeUnwritten(unwritten));
+		assertEquals(first, unwritten);
+		List<Command> second = commands("b", 2);
+		// the commands of a call are added together or not at all
+		assertEquals(0, queue.offer(second, 0));
+		assertEquals(1, queue.offer(second.subList(0, 1), 0));
+		unwritten.clear();
+		assertEquals(3, queue.takeUnwritten(unwritten));
+		assertEquals(second.subList(0, 1), unwritten);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(first.get(i) == queue.current());
+			assertEquals(i, queue.completed());
+			queue.complete();
+		}
+		assertTrue(second.get(0) == queue.current());
+		assertEquals(1, queue.size());
+	}
+
+	@Test
+	public void fullQueueWaitsForACompletedCommand() throws Exception {
+		final CommandQueue queue = new CommandQueue(2);
+		List<Command> first = commands("a", 2);
+		assertEquals(2, queue.offer(first, 0));
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				queue.complete();
+			}
+		}.start();
+		long start = System.currentTimeMillis();
+		assertEquals(1, queue.offer(commands("b", 1), 5000));
+		assertTrue(System.currentTimeMillis() - start < 4000);
+		assertEquals(2, queue.size());
+		// the slot of the first command is reused
+		assertTrue(first.get(1) == queue.current());
+	}
+
+	@Test
+	public void concurrentCallersDoNotInterleave() throws Exception {
+		final CommandQueue queue = new CommandQueue(64);
+		final List<List<Command>> batches = new ArrayList<List<Command>>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			final List<Command> batch = commands("t" + t + ".", 5);
+			batches.add(batch);
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						queue.offer(batch, 5000);
+					} catch (InterruptedException e) {
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		List<Command> unwritten = new ArrayList<Command>();
+		queue.takeUnwritten(unwritten);
+		assertEquals(40, unwritten.size());
+		for (int i = 0; i < unwritten.size(); i += 5) {
+			List<Command> block = unwritten.subList(i, i + 5);
+			assertTrue(batches.contains(block));
+		}
+	}
+
+	@Test
+	public void releaseAllReturnsThePendingCommands() throws Exception {
+		CommandQueue queue = new CommandQueue(8);
+		List<Command> pending = commands("a", 5);
+		queue.offer(pending, 0);
+		queue.complete();
+		queue.complete();
+		assertEquals(pending.subList(2, 5), queue.releaseAll());
+		assertNull(queue.current());
+		assertEquals(0, queue.size());
+		assertEquals(Collections.emptyList(), queue.releaseAll());
+	}
+
+	@Test
+	public void closedQueueRejectsCommands() throws Exception {
+		CommandQueue queue = new CommandQueue(8);
+		List<Command> pending = commands("a", 2);
+		queue.offer(pending, 0);
+		queue.close();
+		assertTrue(queue.isClosing());
+		assertEquals(0, queue.offer(commands("b", 1), 1000));
+		List<Command> unwritten = new ArrayList<Command>();
+		// the pending commands are still written
+		assertEquals(0, queue.takeUnwritten(unwritten));
+		assertEquals(2, unwritten.size());
+		assertEquals(-1, queue.takeUnwritten(unwritten));
+		assertEquals(pending, unwritten);
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.android.de_app_slicing.benchmark.PropertiesGenerator.Profile;
+import com.example.android.de_app_slicing.propeditor.properties.Entities;
+import com.example.android.de_app_slicing.propeditor.properties.Entity;
+
+/**
+ * JMH benchmarks of the Entities load, store, positional access and clone,
+ * for every file size and profile of the {@link PropertiesGenerator}.
+ * <p>
+ * The throughput and the latency distribution are measured by the benchmark
+ * modes, the allocation rate by the GC profiler added by the jmh task. Run
+ * all of them with: gradlew :benchmark:jmh, or a part of them with, for
+ * example: gradlew :benchmark:jmh -Pjmh="EntitiesBenchmark.store -p
+ * lines=20000 -p profile=CAPTURED"
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class EntitiesBenchmark {
+
+	@Param({ "100", "1000", "20000", "100000", "1000000" })
+	public int lines;
+
+	@Param({ "SYNTHETIC", "ESCAPE_HEAVY", "COMMENT_HEAVY", "CAPTURED" })
+	public Profile profile;
+
+	private byte[] data;
+	private Entities loaded;
+	private Entities edited;
+
+	/**
+	 * An output stream dropping the bytes, so the store benchmarks do not
+	 * measure the growth of a buffer.
+	 */
+	private static final OutputStream NULL_OUTPUT = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		data = PropertiesGenerator.generate(lines, profile);
+		loaded = new Entities();
+		loaded.load(ByteBuffer.wrap(data));
+		// the same lines as objects, written by the escaping writer instead
+		// of being copied from the loaded source
+		edited = new Entities();
+		for (int i = 0; i < loaded.size(); i++) {
+			Entity entity = loaded.getProperty(i);
+			edited.add(new Entity(entity.getType(), entity.getKey(), entity
+					.getContent()));
+		}
+	}
+
+	/**
+	 * A freshly loaded list for the first access benchmark, where no entity
+	 * has been built yet.
+	 */
+	@State(Scope.Thread)
+	public static class FreshEntities {
+		Entities entities;
+
+		@Setup(Level.Invocation)
+		public void setUp(EntitiesBenchmark benchmark) throws IOException {
+			entities = new Entities();
+			entities.load(ByteBuffer.wrap(benchmark.data));
+		}
+	}
+
+	@Benchmark
+	public Entities loadStream() throws IOException {
+		Entities entities = new Entities();
+		entities.load(new ByteArrayInputStream(data));
+		return entities;
+	}
+
+	@Benchmark
+	public Entities loadBuffer() throws IOException {
+		Entities entities = new Entities();
+		entities.load(ByteBuffer.wrap(data));
+		return entities;
+	}
+
+	@Benchmark
+	public void storeLoaded() throws IOException {
+		loaded.store(NULL_OUTPUT);
+	}
+
+	@Benchmark
+	public void storeEdited() throws IOException {
+		edited.store(NULL_OUTPUT);
+	}
+
+	@Benchmark
+	public void getProperty(Blackhole blackhole) {
+		int size = loaded.size();
+		for (int i = 0; i < size; i++) {
+			blackhole.consume(loaded.getProperty(i));
+		}
+	}
+
+	@Benchmark
+	public void getPropertyFirstAccess(FreshEntities fresh, Blackhole blackhole) {
+		Entities entities = fresh.entities;
+		int size = entities.size();
+		for (int i = 0; i < size; i++) {
+			blackhole.consume(entities.getProperty(i));
+		}
+	}
+
+	@Benchmark
+	public Object cloneOnly() {
+		return loaded.clone();
+	}
+
+	@Benchmark
+	public Object cloneAndWrite() {
+		// the first change on the clone copies the shared lists
+		Entities clone = (Entities) loaded.clone();
+		clone.put("benchmark.clone", "1");
+		return clone;
+	}
+}
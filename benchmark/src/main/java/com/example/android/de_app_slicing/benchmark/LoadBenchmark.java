@@ -0,0 +1,112 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import com.example.android.de_app_slicing.propeditor.properties.Entities;
+
+/**
+ * Measure the Entities.load(InputStream) time on a generated build.prop.
+ * <p>
+ * The same properties are loaded twice: as a realistic file, where almost no
+ * line has escapes and the parser builds the strings straight from the line
+ * buffer, and with the dots of every key escaped, which forces the full
+ * decoding of every line.
+ * <p>
+ * Run it with: gradlew :benchmark:loadBenchmark
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class LoadBenchmark {
+	private static final String[] PREFIXES = { "ro.build.", "ro.product.",
+			"ro.vendor.", "dalvik.vm.", "persist.sys.", "ro.config.",
+			"ro.telephony.", "debug.sf.", "media.stagefright.", "net.tcp." };
+	private static final String[] VALUES = { "true", "false", "0", "480",
+			"256m", "user", "release-keys", "com.android.phone",
+			"4096,87380,524288,4096,16384,262144", "generic_x86_64" };
+
+	private static final int WARMUP = 200;
+	private static final int ITERATIONS = 200;
+
+	public static void main(String[] args) throws IOException {
+		int[] sizes = { 5000, 20000 };
+		for (int lines : sizes) {
+			byte[] plain = generate(lines, false);
+			byte[] escaped = generate(lines, true);
+			report(lines, "escape free", measure(plain));
+			report(lines, "all escaped", measure(escaped));
+		}
+	}
+
+	/**
+	 * Generate a build.prop with the specified number of lines. About one line
+	 * out of twenty is a comment and one out of forty is empty, the rest are
+	 * properties. A small part of the values contain an escape, like on the
+	 * real files.
+	 */
+	static byte[] generate(int lines, boolean escapeKeys) {
+		Random random = new Random(lines);
+		StringBuilder sb = new StringBuilder(lines * 40);
+		String key;
+		for (int i = 0; i < lines; i++) {
+			int kind = random.nextInt(40);
+			if (kind < 2) {
+				sb.append("# section ").append(i).append(" generated properties");
+			} else if (kind == 2) {
+				// empty line
+			} else {
+				key = PREFIXES[random.nextInt(PREFIXES.length)] + "key" + i;
+				if (escapeKeys) {
+					key = key.replace(".", "\\.");
+				}
+				sb.append(key).append('=');
+				sb.append(VALUES[random.nextInt(VALUES.length)]);
+				if (random.nextInt(100) == 0) {
+					sb.append("\\u00e9");
+				}
+			}
+			sb.append('\n');
+		}
+		return sb.toString().getBytes();
+	}
+
+	/**
+	 * Load the data several times and return the average time in nanoseconds.
+	 */
+	static long measure(byte[] data) throws IOException {
+		Entities entities = new Entities();
+		for (int i = 0; i < WARMUP; i++) {
+			entities.load(new ByteArrayInputStream(data));
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			entities.load(new ByteArrayInputStream(data));
+		}
+		return (System.nanoTime() - start) / ITERATIONS;
+	}
+
+	private static void report(int lines, String variant, long nanos) {
+		System.out.println(String.format("%6d lines, %-11s: %8.3f ms, %6d ns/line",
+				lines, variant, nanos / 1e6, nanos / lines));
+	}
+}
@@ -0,0 +1,235 @@
+/**
+ * This file is part of PropEditor application.
+ * 
+ * Copyright (C) 2013 Claudiu Ciobotariu
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.example.android.de_app_slicing.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generate build.prop files of any size for the benchmarks. The output only
+ * depends on the profile and the number of lines, so the runs are
+ * comparable.
+ * 
+ * @author Kaumil Trivedi
+ * 
+ */
+public class PropertiesGenerator {
+
+	/**
+	 * The kind of file to be generated.
+	 */
+	public enum Profile {
+		/**
+		 * Mostly properties, one line out of twenty is a comment and one out
+		 * of forty is empty. One value out of a hundred has an escape.
+		 */
+		SYNTHETIC,
+		/**
+		 * Every line needs decoding: escaped separators in the keys, unicode
+		 * and control escapes in the values and continuation lines.
+		 */
+		ESCAPE_HEAVY,
+		/**
+		 * Half of the lines are long comments, like the heavily documented
+		 * vendor files.
+		 */
+		COMMENT_HEAVY,
+		/**
+		 * A build.prop captured from a device, repeated up to the requested
+		 * size. The keys of the repeated copies get a suffix, so they stay
+		 * unique.
+		 */
+		CAPTURED
+	}
+
+	private static final String CAPTURED_RESOURCE = "captured-build.prop";
+
+	private static final String[] PREFIXES = { "ro.build.", "ro.product.",
+			"ro.vendor.", "dalvik.vm.", "persist.sys.", "ro.config.",
+			"ro.telephony.", "debug.sf.", "media.stagefright.", "net.tcp." };
+	private static final String[] VALUES = { "true", "false", "0", "480",
+			"256m", "user", "release-keys", "com.android.phone",
+			"4096,87380,524288,4096,16384,262144", "generic_x86_64" };
+
+	private static List<String> capturedLines;
+
+	private PropertiesGenerator() {
+	}
+
+	/**
+	 * Generate a properties file.
+	 * 
+	 * @param lines
+	 *            The number of physical lines.
+	 * @param profile
+	 *            The kind of file.
+	 * @return The file content, encoded as ISO 8859-1.
+	 */
+	public static byte[] generate(int lines, Profile profile) {
+		StringBuilder sb = new StringBuilder(lines * 48);
+		Random random = new Random(lines);
+		switch (profile) {
+		case ESCAPE_HEAVY:
+			generateEscaped(sb, lines, random);
+			break;
+		case COMMENT_HEAVY:
+			generateCommented(sb, lines, random);
+			break;
+		case CAPTURED:
+			generateCaptured(sb, lines);
+			break;
+		default:
+			generateSynthetic(sb, lines, random);
+			break;
+		}
+		return toBytes(sb);
+	}
+
+	private static void generateSynthetic(StringBuilder sb, int lines,
+			Random random) {
+		for (int i = 0; i < lines; i++) {
+			int kind = random.nextInt(40);
+			if (kind < 2) {
+				sb.append("# section ").append(i).append(" generated properties");
+			} else if (kind > 2) {
+				appendKey(sb, i, random).append('=');
+				sb.append(VALUES[random.nextInt(VALUES.length)]);
+				if (random.nextInt(100) == 0) {
+					sb.append("\\u00e9");
+				}
+			}
+			sb.append('\n');
+		}
+	}
+
+	private static void generateEscaped(StringBuilder sb, int lines,
+			Random random) {
+		int i = 0;
+		while (i < lines) {
+			String key = PREFIXES[random.nextInt(PREFIXES.length)] + "key" + i;
+			sb.append(key.replace(".", "\\.")).append("\\:x = ");
+			sb.append("\\u00e9t\\u00e9\\t").append(
+					VALUES[random.nextInt(VALUES.length)]);
+			sb.append("\\u20ac\\n");
+			i++;
+			if (i < lines && random.nextInt(4) == 0) {
+				// a value continued on the next physical line
+				sb.append(",\\\n    ").append(
+						VALUES[random.nextInt(VALUES.length)]);
+				i++;
+			}
+			sb.append('\n');
+		}
+	}
+
+	private static void generateCommented(StringBuilder sb, int lines,
+			Random random) {
+		for (int i = 0; i < lines; i++) {
+			if ((i & 1) == 0) {
+				sb.append(random.nextBoolean() ? "# " : "! ");
+				sb.append("The property below is read by the vendor service ")
+						.append(i).append(", change it only if you know what")
+						.append(" you are doing: the device may not boot.");
+			} else {
+				appendKey(sb, i, random).append('=').append(
+						VALUES[random.nextInt(VALUES.length)]);
+			}
+			sb.append('\n');
+		}
+	}
+
+	private static void generateCaptured(StringBuilder sb, int lines) {
+		List<String> captured = getCapturedLines();
+		int size = captured.size();
+		for (int i = 0; i < lines; i++) {
+			String line = captured.get(i % size);
+			int round = i / size;
+			int sep = line.indexOf('=');
+			if (round > 0 && sep > 0 && line.charAt(0) != '#') {
+				sb.append(line, 0, sep).append('.').append(round);
+				sb.append(line, sep, line.length());
+			} else {
+				sb.append(line);
+			}
+			sb.append('\n');
+		}
+	}
+
+	private static StringBuilder appendKey(StringBuilder sb, int i,
+			Random random) {
+		return sb.append(PREFIXES[random.nextInt(PREFIXES.length)])
+				.append("key").append(i);
+	}
+
+	private static synchronized List<String> getCapturedLines() {
+		if (capturedLines == null) {
+			InputStream in = PropertiesGenerator.class
+					.getResourceAsStream(CAPTURED_RESOURCE);
+			if (in == null) {
+				throw new IllegalStateException("Missing resource: "
+						+ CAPTURED_RESOURCE);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			try {
+				while ((n = in.read(buffer)) > 0) {
+					out.write(buffer, 0, n);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			} finally {
+				try {
+					in.close();
+				} catch (IOException e) {
+					/* ignored */
+				}
+			}
+			List<String> lines = new ArrayList<String>();
+			for (String line : toString(out.toByteArray()).split("\n", -1)) {
+				lines.add(line);
+			}
+			if (lines.get(lines.size() - 1).isEmpty()) {
+				lines.remove(lines.size() - 1);
+			}
+			capturedLines = lines;
+		}
+		return capturedLines;
+	}
+
+	private static byte[] toBytes(StringBuilder sb) {
+		byte[] bytes = new byte[sb.length()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) sb.charAt(i);
+		}
+		return bytes;
+	}
+
+	private static String toString(byte[] bytes) {
+		char[] chars = new char[bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i] = (char) (bytes[i] & 0xff);
+		}
+		return new String(chars);
+	}
+}